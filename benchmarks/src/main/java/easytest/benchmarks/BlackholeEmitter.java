@@ -0,0 +1,38 @@
+package easytest.benchmarks;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.InvalidEntry;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+
+/**
+ * Emitter that hands every record to a {@link Blackhole}, unlike the mock emitter it does not
+ * retain them, so the allocation profile only shows what the stage itself allocates.
+ */
+final class BlackholeEmitter implements Emitter<StructuredRecord> {
+
+  private final Blackhole blackhole;
+
+  BlackholeEmitter(Blackhole blackhole) {
+    this.blackhole = blackhole;
+  }
+
+  @Override
+  public void emit(StructuredRecord value) {
+    this.blackhole.consume(value);
+  }
+
+  @Override
+  public void emitAlert(Map<String, String> payload) {
+    this.blackhole.consume(payload);
+  }
+
+  @Override
+  public void emitError(InvalidEntry<StructuredRecord> invalidEntry) {
+    this.blackhole.consume(invalidEntry);
+  }
+}
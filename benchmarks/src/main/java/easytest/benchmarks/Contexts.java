@@ -0,0 +1,27 @@
+package easytest.benchmarks;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import io.cdap.cdap.etl.api.TransformContext;
+import io.cdap.cdap.etl.mock.transform.MockTransformContext;
+
+import java.util.Map;
+
+final class Contexts {
+
+  private Contexts() {
+    // no-op
+  }
+
+  /**
+   * @return a stage context with the given runtime arguments, whose input schema is the benchmark schema.
+   */
+  static TransformContext transform(String stageName, Schema inputSchema, Map<String, String> arguments) {
+    return new MockTransformContext(stageName, arguments) {
+      @Override
+      public Schema getInputSchema() {
+        return inputSchema;
+      }
+    };
+  }
+}
@@ -0,0 +1,110 @@
+package easytest.benchmarks;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import easytest.expression.Context;
+import easytest.expression.ContextBuilder;
+import easytest.expression.Engine;
+import easytest.expression.Expression;
+import easytest.expression.ExpressionException;
+import easytest.expression.Global;
+import easytest.expression.Namespace;
+import easytest.expression.VariableType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating an expression, building a context for a record and evaluating the expression
+ * against it, with both engines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpressionBenchmark {
+
+  // the functions available to assertions
+  private static final Namespace FUNCTIONS = () -> {
+    Map<String, Object> functions = new HashMap<>();
+    functions.put(null, Global.class);
+    functions.put("math", Math.class);
+    return functions;
+  };
+
+  @Param({"jexl", "compiled"})
+  public String engine;
+
+  @Param({"8", "32", "128"})
+  public int width;
+
+  private Expression expression;
+  private StructuredRecord[] records;
+  private Context[] contexts;
+  private int next = 0;
+
+  @Setup
+  public void setup() throws ExpressionException {
+    this.expression = new Expression(FUNCTIONS, Engine.fromString(this.engine));
+    this.expression.create(Records.EXPRESSION);
+
+    Schema schema = Records.schema(this.width);
+    this.records = Records.generate(schema);
+    this.contexts = new Context[this.records.length];
+    for (int i = 0; i < this.records.length; i++) {
+      this.contexts[i] = build(this.records[i]);
+    }
+  }
+
+  /**
+   * Creating an expression whose text is already in the expression cache, as every stage instance does.
+   */
+  @Benchmark
+  public Expression create() throws ExpressionException {
+    Expression created = new Expression(FUNCTIONS, Engine.fromString(this.engine));
+    created.create(Records.EXPRESSION);
+    return created;
+  }
+
+  @Benchmark
+  public Context buildContext() {
+    return build(nextRecord());
+  }
+
+  @Benchmark
+  public boolean evaluateAsBoolean() throws ExpressionException {
+    Context context = this.contexts[this.next];
+    this.next = (this.next + 1) % this.contexts.length;
+    return this.expression.evaluateAsBoolean(context);
+  }
+
+  private StructuredRecord nextRecord() {
+    StructuredRecord record = this.records[this.next];
+    this.next = (this.next + 1) % this.records.length;
+    return record;
+  }
+
+  private static Context build(StructuredRecord record) {
+    ContextBuilder builder = new ContextBuilder();
+    for (Schema.Field field : record.getSchema().getFields()) {
+      builder.addVariable(VariableType.INPUT, field.getName(), record.get(field.getName()));
+    }
+    return builder.build();
+  }
+}
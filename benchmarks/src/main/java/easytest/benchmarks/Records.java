@@ -0,0 +1,77 @@
+package easytest.benchmarks;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic records for the benchmarks. Field {@code f<i>} is an int, long, double or string
+ * depending on {@code i % 4}, so every width has the first four fields the expressions refer to.
+ */
+final class Records {
+
+  // records are cycled through, enough of them to defeat branch prediction on the values
+  static final int COUNT = 1024;
+
+  static final String EXPRESSION =
+      "input['f0'] >= 0 && input['f1'] < 10000000000 && input['f2'] < 1000.0 && strlen(input['f3']) > 0";
+
+  private static final long SEED = 0x5EEDL;
+
+  private Records() {
+    // no-op
+  }
+
+  static Schema schema(int width) {
+    if (width < 4) {
+      throw new IllegalArgumentException("The schema must have at least 4 fields.");
+    }
+    List<Schema.Field> fields = new ArrayList<>();
+    for (int i = 0; i < width; i++) {
+      fields.add(Schema.Field.of("f" + i, Schema.of(type(i))));
+    }
+    return Schema.recordOf("benchmark", fields);
+  }
+
+  static StructuredRecord[] generate(Schema schema) {
+    SplittableRandom random = new SplittableRandom(SEED);
+    StructuredRecord[] records = new StructuredRecord[COUNT];
+    for (int r = 0; r < COUNT; r++) {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (int i = 0; i < schema.getFields().size(); i++) {
+        builder.set("f" + i, value(type(i), random));
+      }
+      records[r] = builder.build();
+    }
+    return records;
+  }
+
+  private static Schema.Type type(int field) {
+    switch (field % 4) {
+      case 0:
+        return Schema.Type.INT;
+      case 1:
+        return Schema.Type.LONG;
+      case 2:
+        return Schema.Type.DOUBLE;
+      default:
+        return Schema.Type.STRING;
+    }
+  }
+
+  private static Object value(Schema.Type type, SplittableRandom random) {
+    switch (type) {
+      case INT:
+        return random.nextInt(1000);
+      case LONG:
+        return random.nextLong(10_000_000_000L);
+      case DOUBLE:
+        return random.nextDouble() * 1000;
+      default:
+        return Long.toString(random.nextLong(), 36);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package easytest.benchmarks;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import easytest.plugin.assertion.AssertTransformConfig;
+import easytest.plugin.assertion.AssertTransformPlugin;
+import easytest.plugin.fixture.FixtureTransformConfig;
+import easytest.plugin.fixture.FixtureTransformPlugin;
+import easytest.plugin.mutation.MutateTransformConfig;
+import easytest.plugin.mutation.MutateTransformPlugin;
+import easytest.shared.Constants;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per record cost of the transform of each plugin, once initialized. Each operation transforms a
+ * single record, so with '-prof gc' the normalized allocation rate is the allocation per record.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+  /**
+   * Records of a given width, cycled through by the benchmarks.
+   */
+  @State(Scope.Thread)
+  public static class Input {
+
+    @Param({"8", "32", "128"})
+    public int width;
+
+    Schema schema;
+    BlackholeEmitter emitter;
+    private StructuredRecord[] records;
+    private int next = 0;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+      this.schema = Records.schema(this.width);
+      this.records = Records.generate(this.schema);
+      this.emitter = new BlackholeEmitter(blackhole);
+    }
+
+    StructuredRecord next() {
+      StructuredRecord record = this.records[this.next];
+      this.next = (this.next + 1) % this.records.length;
+      return record;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Assertion {
+
+    @Param({"jexl", "compiled"})
+    public String engine;
+
+    AssertTransformPlugin plugin;
+
+    @Setup
+    public void setup(Input input) throws Exception {
+      this.plugin = new AssertTransformPlugin(new AssertTransformConfig("benchmark", Records.EXPRESSION, this.engine));
+      this.plugin.initialize(Contexts.transform("assertion", input.schema, new HashMap<>()));
+    }
+
+    @TearDown
+    public void tearDown() {
+      this.plugin.destroy();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Fixture {
+
+    FixtureTransformPlugin plugin;
+
+    @Setup
+    public void setup(Input input) throws Exception {
+      this.plugin = new FixtureTransformPlugin(new FixtureTransformConfig("benchmark", "limit:1000", null));
+      this.plugin.initialize(Contexts.transform("fixture", input.schema, new HashMap<>()));
+    }
+
+    @TearDown
+    public void tearDown() {
+      this.plugin.destroy();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Mutation {
+
+    // the sampler is exhausted after this many records, so it is reset for every iteration
+    private static final long POPULATION = Integer.MAX_VALUE;
+
+    @Param({"0.01", "0.5"})
+    public double fraction;
+
+    MutateTransformPlugin plugin;
+
+    @Setup(Level.Iteration)
+    public void setup(Input input) throws Exception {
+      String mutations = String.join(",",
+          "f0:" + Constants.MUTATION_ZERO,
+          "f1:" + Constants.MUTATION_NEGATIVE,
+          "f2:" + Constants.MUTATION_LARGE_POSITIVE,
+          "f3:" + Constants.MUTATION_TRUNCATE);
+      MutateTransformConfig config = new MutateTransformConfig(null, (int) (POPULATION * this.fraction),
+          POPULATION, 42L, null, null, mutations, null);
+
+      this.plugin = new MutateTransformPlugin(config);
+      this.plugin.initialize(Contexts.transform("mutation", input.schema, new HashMap<>()));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+      this.plugin.destroy();
+    }
+  }
+
+  @Benchmark
+  public void assertTransform(Input input, Assertion assertion) throws Exception {
+    assertion.plugin.transform(input.next(), input.emitter);
+  }
+
+  @Benchmark
+  public void fixtureTransform(Input input, Fixture fixture) throws Exception {
+    fixture.plugin.transform(input.next(), input.emitter);
+  }
+
+  @Benchmark
+  public void mutateTransform(Input input, Mutation mutation) throws Exception {
+    mutation.plugin.transform(input.next(), input.emitter);
+  }
+}
@@ -0,0 +1,71 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.JexlScript;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable, parsed expression along with the variables it references. Instances are shared
+ * across plugin instances and threads through the {@link ExpressionCache}.
+ */
+public final class CompiledScript {
+
+  private final Namespace ns;
+  private final String text;
+  private final JexlScript script;
+  private final Set<List<String>> variables;
+
+  // lazily compiled tree, or the reason the expression could not be compiled
+  private volatile Object tree = null;
+
+  CompiledScript(Namespace ns, String text, JexlScript script) {
+    this.ns = ns;
+    this.text = text;
+    this.script = script;
+
+    Set<List<String>> vars = new HashSet<>();
+    for (List<String> variable : script.getVariables()) {
+      vars.add(Collections.unmodifiableList(variable));
+    }
+    this.variables = Collections.unmodifiableSet(vars);
+  }
+
+  public String getText() {
+    return this.text;
+  }
+
+  public Set<List<String>> getVariables() {
+    return this.variables;
+  }
+
+  Object execute(JexlContext context) {
+    return this.script.execute(context);
+  }
+
+  /**
+   * Returns the expression compiled into a tree of nodes, compiling it on first use. Concurrent
+   * first calls may both compile, which is harmless since the trees are immutable.
+   *
+   * @throws ExpressionException if the expression uses a construct the compiler does not support.
+   */
+  Node getTree() throws ExpressionException {
+    Object compiled = this.tree;
+    if (compiled == null) {
+      try {
+        compiled = new ExpressionCompiler(this.ns).compile(this.text);
+      } catch (ExpressionException e) {
+        compiled = String.valueOf(e.getMessage());
+      }
+      this.tree = compiled;
+    }
+
+    if (compiled instanceof Node) {
+      return (Node) compiled;
+    }
+    throw new ExpressionException((String) compiled);
+  }
+}
@@ -0,0 +1,157 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlContext;
+
+import java.util.List;
+
+/**
+ * Partially evaluates a compiled expression. The 'global', 'runtime' and 'token' variables do not
+ * change while a stage runs, so they are replaced by their values, and every operation whose
+ * operands are all constant is evaluated once. Boolean operators and the ternary operator are
+ * short-circuited on a constant operand. An operation that fails on its constant operands is left
+ * as is, so the error is still raised when records are evaluated. Constant operations are evaluated
+ * by the engine the expression runs on, so a folded expression gives the result of the original.
+ */
+final class ConstantFolder {
+
+  private static final Node TRUE = new Node.Literal(true);
+  private static final Node FALSE = new Node.Literal(false);
+
+  private final Namespace ns;
+  private final Engine engine;
+  private final JexlContext constants;
+
+  ConstantFolder(Namespace ns, Engine engine, JexlContext constants) {
+    this.ns = ns;
+    this.engine = engine;
+    this.constants = constants;
+  }
+
+  Node fold(Node node) {
+    if (node instanceof Node.Access) {
+      VariableType type = ((Node.Access) node).type();
+      if (type == VariableType.GLOBAL || type == VariableType.RUNTIME || type == VariableType.TOKEN) {
+        return evaluate(node);
+      }
+      return node;
+    } else if (node instanceof Node.Not) {
+      return evaluateIfConstant(new Node.Not(fold(((Node.Not) node).operand())));
+    } else if (node instanceof Node.Negate) {
+      return evaluateIfConstant(new Node.Negate(fold(((Node.Negate) node).operand())));
+    } else if (node instanceof Node.And) {
+      return and(fold(((Node.And) node).left()), ((Node.And) node).right());
+    } else if (node instanceof Node.Or) {
+      return or(fold(((Node.Or) node).left()), ((Node.Or) node).right());
+    } else if (node instanceof Node.Conditional) {
+      return conditional(node.children());
+    } else if (node instanceof Node.Binary) {
+      Node.Binary binary = (Node.Binary) node;
+      return evaluateIfConstant(Node.Binary.of(binary.operator(), fold(binary.left()), fold(binary.right())));
+    } else if (node instanceof Node.In) {
+      return evaluateIfConstant(node.withChildren(new Node[] {fold(((Node.In) node).operand())}));
+    } else if (node instanceof Node.Call) {
+      Node.Call call = (Node.Call) node;
+      List<Node> children = call.children();
+      Node[] arguments = new Node[children.size()];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = fold(children.get(i));
+      }
+      // a call without arguments is not assumed to be deterministic, e.g. math:random()
+      Node folded = call.withArguments(arguments);
+      return arguments.length == 0 ? folded : evaluateIfConstant(folded);
+    }
+    return node;
+  }
+
+  private Node and(Node left, Node right) {
+    Boolean constant = constant(left);
+    if (constant == null) {
+      Node folded = fold(right);
+      return Boolean.TRUE.equals(constant(folded)) && isBoolean(left) ? left : new Node.And(left, folded);
+    }
+    if (!constant) {
+      return FALSE;
+    }
+    Node folded = fold(right);
+    return isBoolean(folded) ? folded : evaluateIfConstant(new Node.And(TRUE, folded));
+  }
+
+  private Node or(Node left, Node right) {
+    Boolean constant = constant(left);
+    if (constant == null) {
+      Node folded = fold(right);
+      return Boolean.FALSE.equals(constant(folded)) && isBoolean(left) ? left : new Node.Or(left, folded);
+    }
+    if (constant) {
+      return TRUE;
+    }
+    Node folded = fold(right);
+    return isBoolean(folded) ? folded : evaluateIfConstant(new Node.Or(FALSE, folded));
+  }
+
+  private Node conditional(List<Node> children) {
+    Node condition = fold(children.get(0));
+    Boolean constant = constant(condition);
+    if (constant != null) {
+      return fold(children.get(constant ? 1 : 2));
+    }
+    if (condition instanceof Node.Literal && ((Node.Literal) condition).value() == null) {
+      // a null condition selects the second branch
+      return fold(children.get(2));
+    }
+    return new Node.Conditional(condition, fold(children.get(1)), fold(children.get(2)));
+  }
+
+  private Node evaluateIfConstant(Node node) {
+    for (Node child : node.children()) {
+      if (!(child instanceof Node.Literal)) {
+        return node;
+      }
+    }
+    return evaluate(node);
+  }
+
+  private Node evaluate(Node node) {
+    try {
+      return new Node.Literal(value(node));
+    } catch (RuntimeException e) {
+      // the value cannot be computed or written as a literal, it is evaluated with every record
+      return node;
+    }
+  }
+
+  private Object value(Node node) {
+    if (this.engine == Engine.JEXL) {
+      // the source of a node is a valid expression, parsed without filling the cache of expressions
+      return ExpressionCache.getInstance().engine(this.ns).createScript(node.toString()).execute(this.constants);
+    }
+    return node.eval(this.constants);
+  }
+
+  /**
+   * @return the truth of a constant node, or null if the node is not constant or has no truth value.
+   */
+  private static Boolean constant(Node node) {
+    if (!(node instanceof Node.Literal)) {
+      return null;
+    }
+    try {
+      return Values.toBoolean(((Node.Literal) node).value());
+    } catch (ArithmeticException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the node always evaluates to a boolean, so it can replace a boolean operation.
+   */
+  private static boolean isBoolean(Node node) {
+    if (node instanceof Node.Literal) {
+      return ((Node.Literal) node).value() instanceof Boolean;
+    } else if (node instanceof Node.Binary) {
+      Operator operator = ((Node.Binary) node).operator();
+      return operator.isComparison();
+    }
+    return node instanceof Node.Not || node instanceof Node.And || node instanceof Node.Or || node instanceof Node.In;
+  }
+}
@@ -0,0 +1,26 @@
+package easytest.expression;
+
+public enum Engine {
+  JEXL("jexl"),
+  COMPILED("compiled");
+
+  public static Engine fromString(String value) {
+    if (value.equalsIgnoreCase(JEXL.toString())) {
+      return Engine.JEXL;
+    } else if (value.equalsIgnoreCase(COMPILED.toString())) {
+      return Engine.COMPILED;
+    } else {
+      throw new IllegalArgumentException(String.format("Unknown expression engine: %s", value));
+    }
+  }
+
+  private final String identifier;
+
+  Engine(String identifier) {
+    this.identifier = identifier;
+  }
+
+  public String toString() {
+    return this.identifier;
+  }
+}
@@ -1,56 +1,94 @@
 package easytest.expression;
 
-import org.apache.commons.jexl3.JexlBuilder;
-import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlException;
-import org.apache.commons.jexl3.JexlScript;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public final class Expression {
 
-  private final Set<List<String>> variables;
-  private final JexlEngine engine;
+  private final Namespace ns;
+  private final Engine engine;
 
-  private JexlScript script = null;
+  private CompiledScript script = null;
+  // script evaluated by JEXL, the created one or its folded form
+  private CompiledScript executable = null;
+  private Node tree = null;
+  private String fallbackReason = null;
 
   public Expression(Namespace ns) {
-    this.variables = new HashSet<>();
-
-    this.engine = new JexlBuilder()
-        .namespaces(ns.functions())
-        .silent(false)
-        .cache(1024)
-        .strict(true)
-        .logger(new NullLogger())
-        .create();
+    this(ns, Engine.JEXL);
   }
 
+  public Expression(Namespace ns, Engine engine) {
+    this.ns = ns;
+    this.engine = engine;
+  }
+
+  /**
+   * @return the engine actually used for evaluation. An expression created for the compiled
+   *         engine falls back to JEXL if it uses constructs the compiler does not support.
+   */
+  public Engine getEngine() {
+    return this.tree != null ? Engine.COMPILED : Engine.JEXL;
+  }
+
+  /**
+   * @return why the expression could not be compiled, or null if it was not requested or succeeded.
+   */
+  public String getFallbackReason() {
+    return this.fallbackReason;
+  }
+
+  /**
+   * @return source of the expression as it is evaluated, which differs from the created one once folded.
+   */
+  public String getText() {
+    if (this.tree != null) {
+      return this.tree.toString();
+    }
+    return this.executable == null ? null : this.executable.getText();
+  }
+
+  /**
+   * @return the compiled tree evaluated by the compiled engine, or null if the expression is evaluated with JEXL.
+   */
+  Node getTree() {
+    return this.tree;
+  }
+
+  /**
+   * @return the variables referenced by the expression as created, folding does not remove any.
+   */
   public Set<List<String>> getVariables() {
-    return this.variables;
+    if (this.script == null) {
+      return Collections.emptySet();
+    }
+    return this.script.getVariables();
   }
 
   public void create(String expression) throws ExpressionException {
-    this.variables.clear();
+    this.executable = null;
+    this.tree = null;
+    this.fallbackReason = null;
 
-    try {
-      this.script = this.engine.createScript(expression);
-      this.variables.addAll(this.script.getVariables());
-    } catch (JexlException e) {
-      if (e.getCause() != null) {
-        throw new ExpressionException(e.getCause().getMessage());
-      } else {
-        throw new ExpressionException(e.getMessage());
+    this.script = ExpressionCache.getInstance().compile(this.ns, expression);
+    this.executable = this.script;
+
+    if (this.engine == Engine.COMPILED) {
+      try {
+        this.tree = this.script.getTree();
+      } catch (ExpressionException e) {
+        this.fallbackReason = e.getMessage();
       }
-    } catch (Exception e) {
-      throw new ExpressionException(e.getMessage());
     }
   }
 
   public void validate() throws ExpressionException {
-    for (List<String> vars : this.variables) {
+    for (List<String> vars : this.getVariables()) {
       try {
         VariableType type = VariableType.fromString(vars.get(0));
 
@@ -79,24 +117,114 @@ public final class Expression {
                   "Incorrect 'input' access, input values could be accessed as input['<field-name>']");
             }
             break;
+          case AGGREGATE:
+            if (vars.size() != 2) {
+              throw new ExpressionException(
+                  "Incorrect 'aggregate' access, aggregates could be accessed as aggregate['<aggregate-name>']");
+            }
+            break;
           default:
             break;
         }
       } catch (IllegalArgumentException e) {
         throw new ExpressionException(
-            "Expression can only specify either 'input', 'global', 'runtime', or 'token'.");
+            "Expression can only specify either 'input', 'global', 'runtime', 'token', or 'aggregate'.");
       }
     }
   }
 
-  public boolean evaluateAsBoolean(Context context) throws ExpressionException {
+  /**
+   * Partially evaluates the expression with the values of its 'global', 'runtime' and 'token'
+   * variables, which do not change while a stage runs, so that only the parts depending on 'input'
+   * and 'aggregate' variables are evaluated for every record. With the JEXL engine the constant
+   * parts are evaluated by JEXL and the folded expression is parsed again. Expressions using
+   * constructs the compiler does not support are left as they are.
+   *
+   * @param constants context holding the non-input variables of the expression.
+   * @return the result of the expression if it does not depend on 'input' or 'aggregate' variables,
+   *         null otherwise.
+   */
+  public Boolean fold(JexlContext constants) {
+    if (this.script == null) {
+      return null;
+    }
+    Node node;
+    try {
+      node = this.tree != null ? this.tree : this.executable.getTree();
+    } catch (ExpressionException e) {
+      return null;
+    }
+
+    Node folded = new ConstantFolder(this.ns, getEngine(), constants).fold(node);
+    if (this.tree != null) {
+      this.tree = folded;
+    } else if (!folded.equals(node)) {
+      try {
+        this.executable = ExpressionCache.getInstance().compile(this.ns, folded.toString());
+      } catch (ExpressionException e) {
+        // the original expression is still valid
+        return null;
+      }
+    }
+
+    if (folded instanceof Node.Literal && ((Node.Literal) folded).value() instanceof Boolean) {
+      return (Boolean) ((Node.Literal) folded).value();
+    }
+    return null;
+  }
+
+  /**
+   * Translates the expression into a Spark SQL predicate. Values of 'global', 'runtime' and 'token'
+   * variables are read from the given context and inlined as literals.
+   *
+   * @param constants context holding the non-input variables of the expression.
+   * @param columns   Java type of the values of the non-nullable input fields that can be translated.
+   * @return the predicate, or null if the expression cannot be translated.
+   */
+  public String toSqlPredicate(JexlContext constants, Map<String, Class<?>> columns) {
+    if (this.script == null) {
+      return null;
+    }
+    try {
+      Node node = this.tree != null ? this.tree : this.executable.getTree();
+      return new SqlTranslator(constants, columns).translate(node);
+    } catch (ExpressionException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  public boolean evaluateAsBoolean(JexlContext context) throws ExpressionException {
+    if (this.tree != null) {
+      return this.test(context);
+    }
     Result result = this.execute(context);
-    return result.getBoolean();
+    Boolean value = result.getBoolean();
+    if (value == null) {
+      throw new ExpressionException(
+          String.format("Expression evaluates to '%s', not to a boolean.", result.getObject()));
+    }
+    return value;
+  }
+
+  private boolean test(JexlContext context) throws ExpressionException {
+    try {
+      return this.tree.holds(context);
+    } catch (NumberFormatException e) {
+      throw new ExpressionException("Type mismatch. Change type of constant " +
+          "or convert to right data type using conversion functions available. Reason : "
+          + e.getMessage());
+    } catch (Exception e) {
+      if (e.getCause() != null) {
+        throw new ExpressionException(e.getCause().getMessage());
+      } else {
+        throw new ExpressionException(e.getMessage());
+      }
+    }
   }
 
-  private Result execute(Context context) throws ExpressionException {
+  private Result execute(JexlContext context) throws ExpressionException {
     try {
-      Result variable = new Result(script.execute(context));
+      Result variable = new Result(this.executable.execute(context));
       return variable;
     } catch (JexlException e) {
       // Generally JexlException wraps the original exception, so it's good idea
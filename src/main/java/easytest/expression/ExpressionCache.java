@@ -0,0 +1,138 @@
+package easytest.expression;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import org.apache.commons.jexl3.JexlBuilder;
+import org.apache.commons.jexl3.JexlEngine;
+import org.apache.commons.jexl3.JexlException;
+import org.apache.commons.jexl3.JexlScript;
+
+/**
+ * Process-wide cache of compiled expressions, keyed by the identity of the {@link Namespace} and
+ * the expression text. A single {@link JexlEngine} is built per namespace, so plugin instances
+ * running in the same JVM only pay for engine construction and parsing once.
+ */
+public final class ExpressionCache {
+
+  private static final int MAXIMUM_SIZE = 1024;
+
+  private static final ExpressionCache INSTANCE = new ExpressionCache(MAXIMUM_SIZE);
+
+  public static ExpressionCache getInstance() {
+    return INSTANCE;
+  }
+
+  private final LoadingCache<Namespace, JexlEngine> engines;
+  private final Cache<Key, CompiledScript> scripts;
+
+  private ExpressionCache(int maximumSize) {
+    // namespaces are long-lived constants, compared by identity as they do not override equals
+    this.engines = CacheBuilder.newBuilder()
+        .build(new CacheLoader<Namespace, JexlEngine>() {
+          @Override
+          public JexlEngine load(Namespace ns) {
+            return new JexlBuilder()
+                .namespaces(ns.functions())
+                .silent(false)
+                .cache(maximumSize)
+                .strict(true)
+                .logger(new NullLogger())
+                .create();
+          }
+        });
+
+    this.scripts = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the compiled form of the expression, parsing it only if it is not already cached.
+   *
+   * @param ns         namespace providing the functions available to the expression.
+   * @param expression text of the expression.
+   * @return compiled expression, shared with every other caller using the same namespace and text.
+   * @throws ExpressionException if the expression cannot be parsed.
+   */
+  public CompiledScript compile(Namespace ns, String expression) throws ExpressionException {
+    Key key = new Key(ns, expression);
+
+    CompiledScript compiled = this.scripts.getIfPresent(key);
+    if (compiled != null) {
+      return compiled;
+    }
+
+    try {
+      JexlScript script = this.engines.getUnchecked(ns).createScript(expression);
+      compiled = new CompiledScript(ns, expression, script);
+    } catch (JexlException e) {
+      if (e.getCause() != null) {
+        throw new ExpressionException(e.getCause().getMessage());
+      } else {
+        throw new ExpressionException(e.getMessage());
+      }
+    } catch (Exception e) {
+      throw new ExpressionException(e.getMessage());
+    }
+
+    // a concurrent miss on the same key compiles an equivalent script, either one may win
+    this.scripts.put(key, compiled);
+    return compiled;
+  }
+
+  /**
+   * @return the engine evaluating the expressions of the namespace, whose introspection and
+   *         arithmetic compiled expressions share.
+   */
+  JexlEngine engine(Namespace ns) {
+    return this.engines.getUnchecked(ns);
+  }
+
+  public long size() {
+    return this.scripts.size();
+  }
+
+  public long hitCount() {
+    return this.scripts.stats().hitCount();
+  }
+
+  public long missCount() {
+    return this.scripts.stats().missCount();
+  }
+
+  public long evictionCount() {
+    return this.scripts.stats().evictionCount();
+  }
+
+  private static final class Key {
+
+    private final Namespace ns;
+    private final String expression;
+
+    Key(Namespace ns, String expression) {
+      this.ns = ns;
+      this.expression = expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.ns == other.ns && this.expression.equals(other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(this.ns) + this.expression.hashCode();
+    }
+  }
+}
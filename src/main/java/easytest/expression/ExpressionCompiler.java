@@ -0,0 +1,536 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlEngine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the subset of JEXL used by assertions into a tree of {@link Node}s: literals, access to
+ * the 'input', 'global', 'runtime', 'token' and 'aggregate' maps, boolean logic, comparisons,
+ * arithmetic, the ternary operator, namespace functions and membership in a collection of literals
+ * with '=~' and '!~'. Anything else, such as regular expression matching, is rejected with an
+ * {@link ExpressionException} so the caller can fall back to the JEXL interpreter.
+ */
+final class ExpressionCompiler {
+
+  private final Map<String, Object> functions;
+  private final JexlEngine engine;
+
+  private String text;
+  private int position;
+
+  // current token
+  private TokenType type;
+  private String token;
+  private Object literal;
+  // whether the current token is an integer literal without suffix
+  private boolean natural;
+
+  private enum TokenType {
+    NUMBER,
+    STRING,
+    IDENTIFIER,
+    SYMBOL,
+    END
+  }
+
+  ExpressionCompiler(Namespace ns) {
+    this.functions = ns.functions();
+    this.engine = ExpressionCache.getInstance().engine(ns);
+  }
+
+  Node compile(String expression) throws ExpressionException {
+    this.text = expression;
+    this.position = 0;
+
+    try {
+      next();
+      Node node = conditional();
+      if (isSymbol(";")) {
+        next();
+      }
+      if (this.type != TokenType.END) {
+        throw unsupported();
+      }
+      return node;
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      throw new ExpressionException(e.getMessage());
+    }
+  }
+
+  private Node conditional() throws ExpressionException {
+    Node condition = or();
+    if (!isSymbol("?")) {
+      return condition;
+    }
+    next();
+    Node then = conditional();
+    expect(":");
+    Node otherwise = conditional();
+    return new Node.Conditional(condition, then, otherwise);
+  }
+
+  private Node or() throws ExpressionException {
+    Node node = and();
+    while (isSymbol("||") || isKeyword("or")) {
+      next();
+      node = new Node.Or(node, and());
+    }
+    return node;
+  }
+
+  private Node and() throws ExpressionException {
+    Node node = equality();
+    while (isSymbol("&&") || isKeyword("and")) {
+      next();
+      node = new Node.And(node, equality());
+    }
+    return node;
+  }
+
+  private Node equality() throws ExpressionException {
+    Node node = relational();
+    while (true) {
+      Operator operator;
+      if (isSymbol("==") || isKeyword("eq")) {
+        operator = Operator.EQ;
+      } else if (isSymbol("!=") || isKeyword("ne")) {
+        operator = Operator.NE;
+      } else if (isSymbol("=~") || isSymbol("!~")) {
+        boolean negated = isSymbol("!~");
+        next();
+        node = new Node.In(node, literalSet(), negated);
+        continue;
+      } else {
+        return node;
+      }
+      next();
+      node = Node.Binary.of(operator, node, relational());
+    }
+  }
+
+  private Node relational() throws ExpressionException {
+    Node node = additive();
+    while (true) {
+      Operator operator;
+      if (isSymbol("<") || isKeyword("lt")) {
+        operator = Operator.LT;
+      } else if (isSymbol("<=") || isKeyword("le")) {
+        operator = Operator.LE;
+      } else if (isSymbol(">") || isKeyword("gt")) {
+        operator = Operator.GT;
+      } else if (isSymbol(">=") || isKeyword("ge")) {
+        operator = Operator.GE;
+      } else {
+        return node;
+      }
+      next();
+      node = Node.Binary.of(operator, node, additive());
+    }
+  }
+
+  private Node additive() throws ExpressionException {
+    Node node = multiplicative();
+    while (true) {
+      Operator operator;
+      if (isSymbol("+")) {
+        operator = Operator.ADD;
+      } else if (isSymbol("-")) {
+        operator = Operator.SUB;
+      } else {
+        return node;
+      }
+      next();
+      node = Node.Binary.of(operator, node, multiplicative());
+    }
+  }
+
+  private Node multiplicative() throws ExpressionException {
+    Node node = unary();
+    while (true) {
+      Operator operator;
+      if (isSymbol("*")) {
+        operator = Operator.MUL;
+      } else if (isSymbol("/") || isKeyword("div")) {
+        operator = Operator.DIV;
+      } else if (isSymbol("%") || isKeyword("mod")) {
+        operator = Operator.MOD;
+      } else {
+        return node;
+      }
+      next();
+      node = Node.Binary.of(operator, node, unary());
+    }
+  }
+
+  private Node unary() throws ExpressionException {
+    if (isSymbol("!") || isKeyword("not")) {
+      next();
+      return new Node.Not(unary());
+    }
+    if (isSymbol("-")) {
+      next();
+      boolean natural = this.type == TokenType.NUMBER && this.natural;
+      Node operand = unary();
+      if (operand instanceof Node.Literal && ((Node.Literal) operand).value() instanceof Number) {
+        Object value = Values.negate(((Node.Literal) operand).value());
+        // JEXL narrows a negated integer literal to an Integer, so -2147483648 is not a Long
+        if (natural && value instanceof Long && (Long) value >= Integer.MIN_VALUE) {
+          value = ((Long) value).intValue();
+        }
+        return new Node.Literal(value);
+      }
+      return new Node.Negate(operand);
+    }
+    return primary();
+  }
+
+  private Node primary() throws ExpressionException {
+    switch (this.type) {
+      case NUMBER:
+      case STRING: {
+        Node node = new Node.Literal(this.literal);
+        next();
+        return node;
+      }
+      case IDENTIFIER:
+        return identifier();
+      case SYMBOL:
+        if (isSymbol("(")) {
+          next();
+          Node node = conditional();
+          expect(")");
+          return node;
+        }
+        throw unsupported();
+      default:
+        throw unsupported();
+    }
+  }
+
+  private Node identifier() throws ExpressionException {
+    String name = this.token;
+    next();
+
+    switch (name) {
+      case "true":
+        return new Node.Literal(true);
+      case "false":
+        return new Node.Literal(false);
+      case "null":
+        return new Node.Literal(null);
+      default:
+        break;
+    }
+
+    if (isSymbol("(")) {
+      return call(null, name);
+    }
+
+    if (isSymbol(":")) {
+      next();
+      if (this.type != TokenType.IDENTIFIER) {
+        throw unsupported();
+      }
+      String function = this.token;
+      next();
+      return call(name, function);
+    }
+
+    VariableType variable;
+    try {
+      variable = VariableType.fromString(name);
+    } catch (IllegalArgumentException e) {
+      throw unsupported();
+    }
+
+    List<String> path = new ArrayList<>();
+    while (true) {
+      if (isSymbol("[")) {
+        next();
+        if (this.type != TokenType.STRING) {
+          throw unsupported();
+        }
+        path.add((String) this.literal);
+        next();
+        expect("]");
+      } else if (isSymbol(".")) {
+        next();
+        if (this.type != TokenType.IDENTIFIER) {
+          throw unsupported();
+        }
+        path.add(this.token);
+        next();
+      } else {
+        break;
+      }
+    }
+
+    int expected = variable == VariableType.TOKEN ? 2 : 1;
+    if (path.size() != expected) {
+      throw unsupported();
+    }
+    return new Node.Access(variable, path.toArray(new String[0]));
+  }
+
+  /**
+   * Parses a collection of literals, e.g. ['A01', 'A02'], the right operand of '=~' and '!~'.
+   */
+  private LiteralSet literalSet() throws ExpressionException {
+    expect("[");
+    List<Object> elements = new ArrayList<>();
+    if (!isSymbol("]")) {
+      elements.add(literal());
+      while (isSymbol(",")) {
+        next();
+        elements.add(literal());
+      }
+    }
+    expect("]");
+    return new LiteralSet(elements.toArray());
+  }
+
+  private Object literal() throws ExpressionException {
+    Node node = unary();
+    if (!(node instanceof Node.Literal)) {
+      throw new ExpressionException("Only collections of literals can be compiled on the right of '=~' and '!~'.");
+    }
+    return ((Node.Literal) node).value();
+  }
+
+  private Node call(String prefix, String name) throws ExpressionException {
+    expect("(");
+    List<Node> arguments = new ArrayList<>();
+    if (!isSymbol(")")) {
+      arguments.add(conditional());
+      while (isSymbol(",")) {
+        next();
+        arguments.add(conditional());
+      }
+    }
+    expect(")");
+
+    Object namespace = this.functions.get(prefix);
+    if (namespace == null) {
+      throw new ExpressionException(String.format("Unknown function namespace '%s'.", prefix));
+    }
+    if (!Functions.exists(namespace, name, arguments.size())) {
+      throw new ExpressionException(String.format("Unknown function '%s' with %d argument(s).",
+          prefix == null ? name : prefix + ":" + name, arguments.size()));
+    }
+    return new Node.Call(prefix, name, namespace, this.engine.getUberspect(), this.engine.getArithmetic(),
+        arguments.toArray(new Node[0]));
+  }
+
+  private boolean isSymbol(String symbol) {
+    return this.type == TokenType.SYMBOL && this.token.equals(symbol);
+  }
+
+  private boolean isKeyword(String keyword) {
+    return this.type == TokenType.IDENTIFIER && this.token.equals(keyword);
+  }
+
+  private void expect(String symbol) throws ExpressionException {
+    if (!isSymbol(symbol)) {
+      throw unsupported();
+    }
+    next();
+  }
+
+  private ExpressionException unsupported() {
+    String near = this.type == TokenType.END ? "end of expression" : String.format("'%s'", this.token);
+    return new ExpressionException(String.format("Expression construct near %s cannot be compiled.", near));
+  }
+
+  private void next() throws ExpressionException {
+    while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+      this.position++;
+    }
+    this.literal = null;
+    this.natural = false;
+
+    if (this.position >= this.text.length()) {
+      this.type = TokenType.END;
+      this.token = "";
+      return;
+    }
+
+    int start = this.position;
+    char c = this.text.charAt(this.position);
+
+    if (Character.isDigit(c)) {
+      number();
+    } else if (c == '\'' || c == '"') {
+      string(c);
+    } else if (Character.isJavaIdentifierStart(c)) {
+      while (this.position < this.text.length() && Character.isJavaIdentifierPart(this.text.charAt(this.position))) {
+        this.position++;
+      }
+      this.type = TokenType.IDENTIFIER;
+      this.token = this.text.substring(start, this.position);
+    } else {
+      String two = this.text.substring(start, Math.min(start + 2, this.text.length()));
+      switch (two) {
+        case "==":
+        case "!=":
+        case "<=":
+        case ">=":
+        case "&&":
+        case "||":
+        case "=~":
+        case "!~":
+          this.position += 2;
+          break;
+        default:
+          this.position += 1;
+          break;
+      }
+      this.type = TokenType.SYMBOL;
+      this.token = this.text.substring(start, this.position);
+    }
+  }
+
+  private void number() throws ExpressionException {
+    int start = this.position;
+    String str = this.text;
+
+    if (str.startsWith("0x", start) || str.startsWith("0X", start)) {
+      this.position += 2;
+      while (this.position < str.length() && Character.digit(str.charAt(this.position), 16) >= 0) {
+        this.position++;
+      }
+      long value = Long.parseLong(str.substring(start + 2, this.position), 16);
+      this.literal = hexLiteral(value);
+      this.type = TokenType.NUMBER;
+      this.token = str.substring(start, this.position);
+      return;
+    }
+
+    boolean floating = false;
+    while (this.position < str.length() && Character.isDigit(str.charAt(this.position))) {
+      this.position++;
+    }
+    if (this.position + 1 < str.length() && str.charAt(this.position) == '.'
+        && Character.isDigit(str.charAt(this.position + 1))) {
+      floating = true;
+      this.position++;
+      while (this.position < str.length() && Character.isDigit(str.charAt(this.position))) {
+        this.position++;
+      }
+    }
+    if (this.position < str.length() && (str.charAt(this.position) == 'e' || str.charAt(this.position) == 'E')) {
+      floating = true;
+      this.position++;
+      if (this.position < str.length() && (str.charAt(this.position) == '+' || str.charAt(this.position) == '-')) {
+        this.position++;
+      }
+      while (this.position < str.length() && Character.isDigit(str.charAt(this.position))) {
+        this.position++;
+      }
+    }
+
+    String digits = str.substring(start, this.position);
+    // as in JEXL, an integer with a leading zero is octal
+    int radix = !floating && digits.length() > 1 && digits.charAt(0) == '0' ? 8 : 10;
+    char suffix = this.position < str.length() ? Character.toLowerCase(str.charAt(this.position)) : 0;
+    switch (suffix) {
+      case 'l':
+        this.literal = Long.parseLong(digits, radix);
+        break;
+      case 'h':
+        this.literal = new BigInteger(digits, radix);
+        break;
+      case 'f':
+        this.literal = Float.parseFloat(digits);
+        break;
+      case 'd':
+        this.literal = Double.parseDouble(digits);
+        break;
+      case 'b':
+        this.literal = new BigDecimal(digits);
+        break;
+      default:
+        suffix = 0;
+        this.natural = !floating;
+        if (floating) {
+          this.literal = Double.parseDouble(digits);
+        } else {
+          BigInteger value = new BigInteger(digits, radix);
+          if (value.bitLength() < 32) {
+            this.literal = value.intValue();
+          } else if (value.bitLength() < 64) {
+            this.literal = value.longValue();
+          } else {
+            this.literal = value;
+          }
+        }
+        break;
+    }
+    if (suffix != 0) {
+      this.position++;
+    }
+    this.type = TokenType.NUMBER;
+    this.token = str.substring(start, this.position);
+  }
+
+  private Object hexLiteral(long value) {
+    if (this.position < this.text.length() && Character.toLowerCase(this.text.charAt(this.position)) == 'l') {
+      this.position++;
+      return value;
+    }
+    this.natural = true;
+    if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      return (int) value;
+    }
+    return value;
+  }
+
+  private void string(char quote) throws ExpressionException {
+    int start = this.position;
+    StringBuilder builder = new StringBuilder();
+    this.position++;
+
+    while (this.position < this.text.length()) {
+      char c = this.text.charAt(this.position++);
+      if (c == quote) {
+        this.type = TokenType.STRING;
+        this.token = this.text.substring(start, this.position);
+        this.literal = builder.toString();
+        return;
+      }
+      if (c == '\\' && this.position < this.text.length()) {
+        // as in JEXL, only the quote, the backslash and unicode escapes are unescaped, so 'a\nb'
+        // keeps its backslash
+        char escaped = this.text.charAt(this.position++);
+        if (escaped == 'u' && isUnicodeEscape(this.position)) {
+          builder.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+          this.position += 4;
+        } else {
+          if (escaped != quote && escaped != '\\') {
+            builder.append('\\');
+          }
+          builder.append(escaped);
+        }
+      } else {
+        builder.append(c);
+      }
+    }
+    throw new ExpressionException("Unterminated string literal.");
+  }
+
+  private boolean isUnicodeEscape(int start) {
+    if (start + 4 > this.text.length()) {
+      return false;
+    }
+    for (int i = start; i < start + 4; i++) {
+      if (Character.digit(this.text.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
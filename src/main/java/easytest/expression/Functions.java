@@ -0,0 +1,35 @@
+package easytest.expression;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Resolution of the functions called by compiled expressions. A call is only checked when it is
+ * compiled, the method is picked when it is called, with the introspection of the JEXL engine.
+ */
+final class Functions {
+
+  private Functions() {
+    // no-op
+  }
+
+  /**
+   * Tells whether a namespace entry has a public method that could be called with the given number
+   * of arguments. Static methods are used when the namespace is a class, instance methods otherwise.
+   */
+  static boolean exists(Object namespace, String name, int arity) {
+    boolean statics = namespace instanceof Class;
+    Class<?> type = statics ? (Class<?>) namespace : namespace.getClass();
+
+    for (Method method : type.getMethods()) {
+      if (!method.getName().equals(name) || statics != Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      int params = method.getParameterTypes().length;
+      if (params == arity || (method.isVarArgs() && arity >= params - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,5 +1,7 @@
 package easytest.expression;
 
+import easytest.shared.LookupIndex;
+
 public final class Global {
 
   private Global() {
@@ -46,6 +48,46 @@ public final class Global {
     return Integer.parseInt(value);
   }
 
+  /**
+   * Converts a numeric value, such as a typed fixture value, to double.
+   *
+   * @param value of type Number to be converted to double.
+   * @return double value of the number passed.
+   */
+  public static double toDouble(Number value) {
+    return value.doubleValue();
+  }
+
+  /**
+   * Converts a numeric value to float.
+   *
+   * @param value of type Number to be converted to float.
+   * @return float value of the number passed.
+   */
+  public static float toFloat(Number value) {
+    return value.floatValue();
+  }
+
+  /**
+   * Converts a numeric value to long, truncating any fractional part.
+   *
+   * @param value of type Number to be converted to long.
+   * @return long value of the number passed.
+   */
+  public static long toLong(Number value) {
+    return value.longValue();
+  }
+
+  /**
+   * Converts a numeric value to integer, truncating any fractional part.
+   *
+   * @param value of type Number to be converted to integer.
+   * @return integer value of the number passed.
+   */
+  public static int toInteger(Number value) {
+    return value.intValue();
+  }
+
   /**
    * Converts a String value to byte array.
    *
@@ -188,4 +230,27 @@ public final class Global {
     }
     return string;
   }
+
+  /**
+   * Tells whether a lookup fixture holds a key, e.g.
+   * contains(token['reference']['countries'], input['country']). Keys are compared as strings.
+   *
+   * @param lookup fixture value of type 'lookup' or 'lookup-bloom'.
+   * @param key    value to look for.
+   * @return true if the lookup holds the key, false if it does not or the key is null.
+   */
+  public static boolean contains(LookupIndex lookup, Object key) {
+    return key != null && lookup.contains(key.toString());
+  }
+
+  /**
+   * Returns the value of a key in a lookup fixture, keys are compared as strings.
+   *
+   * @param lookup fixture value of type 'lookup' or 'lookup-bloom'.
+   * @param key    value to look for.
+   * @return value of the key, empty if the key has no value, null if the lookup does not hold the key.
+   */
+  public static String lookup(LookupIndex lookup, Object key) {
+    return key == null ? null : lookup.get(key.toString());
+  }
 }
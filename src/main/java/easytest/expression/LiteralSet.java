@@ -0,0 +1,51 @@
+package easytest.expression;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable set of the literals of a collection, e.g. ['A01', 'A02'], built once when an
+ * expression is compiled so that membership is not tested by scanning the collection for every
+ * record. A value is a member if it equals one of the literals, the way JEXL compares the elements
+ * of a collection with '=~', so both engines agree: unlike '==', values are not coerced, 5 does
+ * not match '5' nor 5L, and null is not a member of any collection.
+ */
+final class LiteralSet {
+
+  private final Object[] elements;
+  // literals are strings, booleans and numbers, whose equals and hashCode agree across the set
+  private final Set<Object> members;
+
+  LiteralSet(Object[] elements) {
+    this.elements = elements.clone();
+    this.members = new HashSet<>();
+    for (Object element : elements) {
+      if (element != null) {
+        this.members.add(element);
+      }
+    }
+  }
+
+  /**
+   * @return the literals of the collection, in their original order.
+   */
+  Object[] elements() {
+    return this.elements.clone();
+  }
+
+  boolean contains(Object value) {
+    return value != null && this.members.contains(value);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < this.elements.length; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(new Node.Literal(this.elements[i]));
+    }
+    return builder.append(']').toString();
+  }
+}
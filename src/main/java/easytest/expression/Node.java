@@ -0,0 +1,739 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlArithmetic;
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.introspection.JexlMethod;
+import org.apache.commons.jexl3.introspection.JexlUberspect;
+
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node of a compiled expression tree. Nodes are immutable, but for the method a function call
+ * remembers, and can be shared between threads.
+ * Two nodes are equal when they print to the same canonical source, which is itself a valid JEXL
+ * expression.
+ */
+abstract class Node {
+
+  private final String source;
+
+  Node(String source) {
+    this.source = source;
+  }
+
+  abstract Object eval(JexlContext context);
+
+  boolean test(JexlContext context) {
+    return Values.toBoolean(eval(context));
+  }
+
+  /**
+   * Evaluates the node as a whole expression, whose result is read as the result of a JEXL script
+   * is: a boolean as is, a string parsed as a boolean, and anything else is not a result.
+   */
+  boolean holds(JexlContext context) {
+    Object value = eval(context);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof String) {
+      return Boolean.parseBoolean((String) value);
+    }
+    throw new IllegalArgumentException(String.format("Expression evaluates to '%s', not to a boolean.", value));
+  }
+
+  List<Node> children() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return a node of the same kind over other children, in the order of {@link #children()}.
+   */
+  Node withChildren(Node[] children) {
+    return this;
+  }
+
+  @Override
+  public final boolean equals(Object o) {
+    return this == o || (o instanceof Node && this.source.equals(((Node) o).source));
+  }
+
+  @Override
+  public final int hashCode() {
+    return this.source.hashCode();
+  }
+
+  @Override
+  public final String toString() {
+    return this.source;
+  }
+
+  static final class Literal extends Node {
+
+    private final Object value;
+
+    Literal(Object value) {
+      super(format(value));
+      this.value = value;
+    }
+
+    Object value() {
+      return this.value;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return this.value;
+    }
+
+    /**
+     * Writes a value as a literal JEXL reads back as the same value of the same type.
+     */
+    private static String format(Object value) {
+      if (value == null || value instanceof Boolean || value instanceof Integer) {
+        return String.valueOf(value);
+      } else if (value instanceof Long) {
+        // the literal of the smallest long would be out of range before its negation
+        return (Long) value == Long.MIN_VALUE ? "(-9223372036854775807L - 1L)" : value + "L";
+      } else if (value instanceof BigInteger) {
+        return value + "H";
+      } else if (value instanceof BigDecimal) {
+        return ((BigDecimal) value).toPlainString() + "B";
+      } else if (value instanceof Double || value instanceof Float) {
+        double d = ((Number) value).doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+          throw new IllegalArgumentException(String.format("Value '%s' cannot be written as a literal.", value));
+        }
+        // the shortest decimal form of the float or double, which parses back to the same value
+        String str = new BigDecimal(value.toString()).toPlainString();
+        if (str.indexOf('.') < 0) {
+          str = str + ".0";
+        }
+        if (d == 0 && 1 / d < 0) {
+          str = "-" + str;
+        }
+        return str + (value instanceof Float ? "F" : "D");
+      } else if (value instanceof String) {
+        return quote((String) value);
+      }
+      throw new IllegalArgumentException(
+          String.format("Value of type '%s' cannot be written as a literal.", value.getClass().getSimpleName()));
+    }
+
+    /**
+     * Quotes a string. JEXL only unescapes quotes, backslashes and unicode escapes, the characters
+     * it does not read raw, such as line breaks, are written as unicode escapes.
+     */
+    private static String quote(String str) {
+      StringBuilder builder = new StringBuilder(str.length() + 2).append('\'');
+      for (int i = 0; i < str.length(); i++) {
+        char c = str.charAt(i);
+        if (c == '\\' || c == '\'') {
+          builder.append('\\').append(c);
+        } else if (c < ' ' || c > '~') {
+          builder.append(String.format("\\u%04x", (int) c));
+        } else {
+          builder.append(c);
+        }
+      }
+      return builder.append('\'').toString();
+    }
+  }
+
+  /**
+   * Access to one of the variable maps, e.g. input['field'] or token['fixture']['key'].
+   */
+  static final class Access extends Node {
+
+    private final VariableType type;
+    private final String[] path;
+
+    Access(VariableType type, String... path) {
+      super(format(type, path));
+      this.type = type;
+      this.path = path;
+    }
+
+    VariableType type() {
+      return this.type;
+    }
+
+    String[] path() {
+      return this.path.clone();
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      Object value = context.get(this.type.toString());
+      for (String key : this.path) {
+        if (!(value instanceof Map)) {
+          throw new IllegalArgumentException(String.format("Variable '%s' is undefined.", this));
+        }
+        value = ((Map<?, ?>) value).get(key);
+      }
+      return value;
+    }
+
+    private static String format(VariableType type, String[] path) {
+      StringBuilder builder = new StringBuilder(type.toString());
+      for (String key : path) {
+        builder.append('[').append(Literal.format(key)).append(']');
+      }
+      return builder.toString();
+    }
+  }
+
+  static final class Not extends Node {
+
+    private final Node operand;
+
+    Not(Node operand) {
+      super("!" + operand);
+      this.operand = operand;
+    }
+
+    Node operand() {
+      return this.operand;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return !this.operand.test(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      return !this.operand.test(context);
+    }
+
+    @Override
+    boolean holds(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Collections.singletonList(this.operand);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new Not(children[0]);
+    }
+  }
+
+  static final class Negate extends Node {
+
+    private final Node operand;
+
+    Negate(Node operand) {
+      super("-(" + operand + ")");
+      this.operand = operand;
+    }
+
+    Node operand() {
+      return this.operand;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return Values.negate(this.operand.eval(context));
+    }
+
+    @Override
+    List<Node> children() {
+      return Collections.singletonList(this.operand);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new Negate(children[0]);
+    }
+  }
+
+  static final class And extends Node {
+
+    private final Node left;
+    private final Node right;
+
+    And(Node left, Node right) {
+      super("(" + left + " && " + right + ")");
+      this.left = left;
+      this.right = right;
+    }
+
+    Node left() {
+      return this.left;
+    }
+
+    Node right() {
+      return this.right;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      return this.left.test(context) && this.right.test(context);
+    }
+
+    @Override
+    boolean holds(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Arrays.asList(this.left, this.right);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new And(children[0], children[1]);
+    }
+  }
+
+  static final class Or extends Node {
+
+    private final Node left;
+    private final Node right;
+
+    Or(Node left, Node right) {
+      super("(" + left + " || " + right + ")");
+      this.left = left;
+      this.right = right;
+    }
+
+    Node left() {
+      return this.left;
+    }
+
+    Node right() {
+      return this.right;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      return this.left.test(context) || this.right.test(context);
+    }
+
+    @Override
+    boolean holds(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Arrays.asList(this.left, this.right);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new Or(children[0], children[1]);
+    }
+  }
+
+  /**
+   * The ternary operator. As in JEXL, a null condition selects the second branch rather than fail.
+   */
+  static final class Conditional extends Node {
+
+    private final Node condition;
+    private final Node then;
+    private final Node otherwise;
+
+    Conditional(Node condition, Node then, Node otherwise) {
+      super("(" + condition + " ? " + then + " : " + otherwise + ")");
+      this.condition = condition;
+      this.then = then;
+      this.otherwise = otherwise;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return holds(this.condition.eval(context)) ? this.then.eval(context) : this.otherwise.eval(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      return holds(this.condition.eval(context)) ? this.then.test(context) : this.otherwise.test(context);
+    }
+
+    private static boolean holds(Object condition) {
+      return condition != null && Values.toBoolean(condition);
+    }
+
+    @Override
+    List<Node> children() {
+      return Arrays.asList(this.condition, this.then, this.otherwise);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new Conditional(children[0], children[1], children[2]);
+    }
+  }
+
+  static class Binary extends Node {
+
+    final Operator operator;
+    final Node left;
+    final Node right;
+
+    Binary(Operator operator, Node left, Node right) {
+      super("(" + left + " " + operator + " " + right + ")");
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * @return the binary operation, specialized into a constant comparison when it applies.
+     */
+    static Binary of(Operator operator, Node left, Node right) {
+      if (CompareConstant.applies(operator, left, right)) {
+        return new CompareConstant(operator, left, right);
+      }
+      return new Binary(operator, left, right);
+    }
+
+    Operator operator() {
+      return this.operator;
+    }
+
+    Node left() {
+      return this.left;
+    }
+
+    Node right() {
+      return this.right;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return this.operator.apply(this.left.eval(context), this.right.eval(context));
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      if (this.operator.isComparison()) {
+        return Values.compare(this.operator, this.left.eval(context), this.right.eval(context));
+      }
+      return super.test(context);
+    }
+
+    @Override
+    boolean holds(JexlContext context) {
+      if (this.operator.isComparison()) {
+        return test(context);
+      }
+      return super.holds(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Arrays.asList(this.left, this.right);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return of(this.operator, children[0], children[1]);
+    }
+  }
+
+  /**
+   * A comparison of an operand against a numeric constant. Boxed integral and floating point
+   * operands are compared as primitives against the pre-converted constant, in the order JEXL
+   * uses, where NaN is smaller than any number. Other operands are compared as a {@link Binary}.
+   */
+  static final class CompareConstant extends Binary {
+
+    private final Node operand;
+    private final Object constant;
+    private final boolean constantOnLeft;
+    private final Operator comparison;
+    private final boolean integral;
+    private final long longValue;
+    private final double doubleValue;
+
+    CompareConstant(Operator operator, Node left, Node right) {
+      super(operator, left, right);
+
+      this.constantOnLeft = left instanceof Literal;
+      this.constant = ((Literal) (this.constantOnLeft ? left : right)).value();
+      this.operand = this.constantOnLeft ? right : left;
+      this.comparison = this.constantOnLeft ? operator.mirror() : operator;
+      this.integral = !Values.isFloating(this.constant);
+      this.longValue = ((Number) this.constant).longValue();
+      this.doubleValue = Values.toDouble(this.constant);
+    }
+
+    /**
+     * @return true if the binary operation can be specialized into a constant comparison.
+     */
+    static boolean applies(Operator operator, Node left, Node right) {
+      if (!operator.isComparison()) {
+        return false;
+      }
+      Node constant = left instanceof Literal ? left : right instanceof Literal ? right : null;
+      if (constant == null) {
+        return false;
+      }
+      Object value = ((Literal) constant).value();
+      return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+          || value instanceof Double || value instanceof Float;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      Object value = this.operand.eval(context);
+
+      if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+        long l = ((Number) value).longValue();
+        if (this.integral) {
+          return this.comparison.matches(Long.compare(l, this.longValue));
+        }
+        return this.comparison.matches(Values.order((double) l, this.doubleValue));
+      } else if (value instanceof Double || value instanceof Float) {
+        return this.comparison.matches(Values.order(Values.toDouble(value), this.doubleValue));
+      }
+
+      if (this.constantOnLeft) {
+        return Values.compare(this.operator, this.constant, value);
+      }
+      return Values.compare(this.operator, value, this.constant);
+    }
+  }
+
+  /**
+   * Membership of an operand in a collection of literals, e.g. input['code'] =~ ['A01', 'A02'].
+   * The literals are put in a {@link LiteralSet} once, when the expression is compiled.
+   */
+  static final class In extends Node {
+
+    private final Node operand;
+    private final LiteralSet set;
+    private final boolean negated;
+
+    In(Node operand, LiteralSet set, boolean negated) {
+      super("(" + operand + (negated ? " !~ " : " =~ ") + set + ")");
+      this.operand = operand;
+      this.set = set;
+      this.negated = negated;
+    }
+
+    Node operand() {
+      return this.operand;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    boolean test(JexlContext context) {
+      return this.set.contains(this.operand.eval(context)) != this.negated;
+    }
+
+    @Override
+    boolean holds(JexlContext context) {
+      return test(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Collections.singletonList(this.operand);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new In(children[0], this.set, this.negated);
+    }
+  }
+
+  /**
+   * A function call on a namespace entry. The method is looked up when the function is called, with
+   * the introspection and argument narrowing of the JEXL engine, so an overloaded function resolves
+   * to the same method as with JEXL. The last method found is reused while the arguments fit it.
+   */
+  static final class Call extends Node {
+
+    private final String prefix;
+    private final String name;
+    private final Object target;
+    private final JexlUberspect uberspect;
+    private final JexlArithmetic arithmetic;
+    private final Node[] arguments;
+
+    private volatile Invocation invocation = null;
+
+    Call(String prefix, String name, Object target, JexlUberspect uberspect, JexlArithmetic arithmetic,
+         Node[] arguments) {
+      super(format(prefix, name, arguments));
+      this.prefix = prefix;
+      this.name = name;
+      this.target = target;
+      this.uberspect = uberspect;
+      this.arithmetic = arithmetic;
+      this.arguments = arguments;
+    }
+
+    String prefix() {
+      return this.prefix;
+    }
+
+    String name() {
+      return this.name;
+    }
+
+    /**
+     * @return the same function called with other arguments.
+     */
+    Call withArguments(Node[] arguments) {
+      return new Call(this.prefix, this.name, this.target, this.uberspect, this.arithmetic, arguments);
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      Object[] values = new Object[this.arguments.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = this.arguments[i].eval(context);
+      }
+
+      Invocation cached = this.invocation;
+      if (cached != null) {
+        if (cached.narrow) {
+          this.arithmetic.narrowArguments(values);
+        }
+        Object result = cached.method.tryInvoke(this.name, this.target, values);
+        if (!cached.method.tryFailed(result)) {
+          return result;
+        }
+      }
+
+      boolean narrow = false;
+      while (true) {
+        JexlMethod method = this.uberspect.getMethod(this.target, this.name, values);
+        if (method != null) {
+          Object result = invoke(method, values);
+          if (method.isCacheable()) {
+            this.invocation = new Invocation(method, narrow);
+          }
+          return result;
+        }
+        if (!this.arithmetic.narrowArguments(values)) {
+          throw new IllegalArgumentException(
+              String.format("Function '%s' cannot be called with arguments %s.", this, Arrays.toString(values)));
+        }
+        narrow = true;
+      }
+    }
+
+    private Object invoke(JexlMethod method, Object[] values) {
+      try {
+        return method.invoke(this.target, values);
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    List<Node> children() {
+      return Arrays.asList(this.arguments);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return withArguments(children);
+    }
+
+    private static String format(String prefix, String name, Node[] arguments) {
+      StringBuilder builder = new StringBuilder();
+      if (prefix != null) {
+        builder.append(prefix).append(':');
+      }
+      builder.append(name).append('(');
+      for (int i = 0; i < arguments.length; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(arguments[i]);
+      }
+      return builder.append(')').toString();
+    }
+
+    /**
+     * A method found for the call, and whether the arguments had to be narrowed to find it.
+     */
+    private static final class Invocation {
+
+      private final JexlMethod method;
+      private final boolean narrow;
+
+      Invocation(JexlMethod method, boolean narrow) {
+        this.method = method;
+        this.narrow = narrow;
+      }
+    }
+  }
+
+  /**
+   * A sub-expression shared by several expressions of a {@link SharedPlan}. Within the plan it is
+   * evaluated at most once per record, anywhere else it is evaluated as the node it wraps.
+   */
+  static final class Memo extends Node {
+
+    private final int slot;
+    private final Node node;
+
+    Memo(int slot, Node node) {
+      super(node.toString());
+      this.slot = slot;
+      this.node = node;
+    }
+
+    @Override
+    Object eval(JexlContext context) {
+      if (context instanceof SharedPlan.MemoContext) {
+        return ((SharedPlan.MemoContext) context).get(this.slot, this.node);
+      }
+      return this.node.eval(context);
+    }
+
+    @Override
+    List<Node> children() {
+      return Collections.singletonList(this.node);
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+      return new Memo(this.slot, children[0]);
+    }
+  }
+}
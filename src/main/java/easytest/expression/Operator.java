@@ -0,0 +1,84 @@
+package easytest.expression;
+
+enum Operator {
+  EQ("=="),
+  NE("!="),
+  LT("<"),
+  LE("<="),
+  GT(">"),
+  GE(">="),
+  ADD("+"),
+  SUB("-"),
+  MUL("*"),
+  DIV("/"),
+  MOD("%");
+
+  private final String symbol;
+
+  Operator(String symbol) {
+    this.symbol = symbol;
+  }
+
+  boolean isComparison() {
+    return this.ordinal() <= GE.ordinal();
+  }
+
+  /**
+   * @return the operator to use when the operands of a comparison are swapped.
+   */
+  Operator mirror() {
+    switch (this) {
+      case LT:
+        return GT;
+      case LE:
+        return GE;
+      case GT:
+        return LT;
+      case GE:
+        return LE;
+      default:
+        return this;
+    }
+  }
+
+  boolean matches(int comparison) {
+    switch (this) {
+      case EQ:
+        return comparison == 0;
+      case NE:
+        return comparison != 0;
+      case LT:
+        return comparison < 0;
+      case LE:
+        return comparison <= 0;
+      case GT:
+        return comparison > 0;
+      case GE:
+        return comparison >= 0;
+      default:
+        throw new IllegalStateException(String.format("Operator '%s' is not a comparison.", this.symbol));
+    }
+  }
+
+  Object apply(Object left, Object right) {
+    switch (this) {
+      case ADD:
+        return Values.add(left, right);
+      case SUB:
+        return Values.subtract(left, right);
+      case MUL:
+        return Values.multiply(left, right);
+      case DIV:
+        return Values.divide(left, right);
+      case MOD:
+        return Values.modulo(left, right);
+      default:
+        return Values.compare(this, left, right);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.symbol;
+  }
+}
@@ -0,0 +1,192 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a set of expressions over the same records. Sub-expressions that occur more than once
+ * across the compiled expressions, field reads included, are evaluated at most once per record and
+ * their values are reused by every expression referencing them. Sub-expressions are still evaluated
+ * lazily, so the short-circuits of each expression are kept. Sub-expressions calling a function
+ * without arguments, such as math:random(), are evaluated every time, as the constant folder
+ * assumes. Expressions evaluated with JEXL are not shared and are evaluated on their own.
+ *
+ * <p>A plan keeps the values of the current record, each stage instance uses its own plan.</p>
+ */
+public final class SharedPlan {
+
+  private final Expression[] expressions;
+  // compiled expressions over shared nodes, null for expressions evaluated with JEXL
+  private final Node[] trees;
+  private final int shared;
+
+  private final MemoContext memo;
+
+  private SharedPlan(Expression[] expressions, Node[] trees, int shared) {
+    this.expressions = expressions;
+    this.trees = trees;
+    this.shared = shared;
+    this.memo = new MemoContext(shared);
+  }
+
+  /**
+   * @param expressions created expressions, once folded if their constants are known.
+   */
+  public static SharedPlan of(List<Expression> expressions) {
+    Map<Node, Integer> occurrences = new HashMap<>();
+    for (Expression expression : expressions) {
+      if (expression.getTree() != null) {
+        count(expression.getTree(), occurrences);
+      }
+    }
+
+    Map<Node, Node.Memo> memos = new HashMap<>();
+    Node[] trees = new Node[expressions.size()];
+    for (int i = 0; i < trees.length; i++) {
+      Node tree = expressions.get(i).getTree();
+      trees[i] = tree == null ? null : share(tree, occurrences, memos);
+    }
+    return new SharedPlan(expressions.toArray(new Expression[0]), trees, memos.size());
+  }
+
+  public int size() {
+    return this.expressions.length;
+  }
+
+  /**
+   * @return number of sub-expressions evaluated once per record for all the expressions.
+   */
+  public int getSharedCount() {
+    return this.shared;
+  }
+
+  /**
+   * Binds the next record, dropping the values of the previous one.
+   *
+   * @param context context of the record, holding all the variables of the expressions.
+   */
+  public void bind(JexlContext context) {
+    this.memo.bind(context);
+  }
+
+  /**
+   * @return the result of an expression for the bound record.
+   * @throws ExpressionException if the expression cannot be evaluated for the record.
+   */
+  public boolean evaluateAsBoolean(int index) throws ExpressionException {
+    Node tree = this.trees[index];
+    if (tree == null) {
+      return this.expressions[index].evaluateAsBoolean(this.memo.context);
+    }
+    try {
+      return tree.holds(this.memo);
+    } catch (NumberFormatException e) {
+      throw new ExpressionException("Type mismatch. Change type of constant " +
+          "or convert to right data type using conversion functions available. Reason : "
+          + e.getMessage());
+    } catch (Exception e) {
+      if (e.getCause() != null) {
+        throw new ExpressionException(e.getCause().getMessage());
+      } else {
+        throw new ExpressionException(e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Counts the occurrences of the deterministic sub-expressions, the others are never shared.
+   *
+   * @return whether the node is deterministic.
+   */
+  private static boolean count(Node node, Map<Node, Integer> occurrences) {
+    if (node instanceof Node.Literal) {
+      return true;
+    }
+    // a call without arguments is not assumed to be deterministic, e.g. math:random()
+    boolean deterministic = !(node instanceof Node.Call && node.children().isEmpty());
+    for (Node child : node.children()) {
+      deterministic &= count(child, occurrences);
+    }
+    if (deterministic) {
+      occurrences.merge(node, 1, Integer::sum);
+    }
+    return deterministic;
+  }
+
+  private static Node share(Node node, Map<Node, Integer> occurrences, Map<Node, Node.Memo> memos) {
+    if (node instanceof Node.Literal) {
+      return node;
+    }
+    Node.Memo memo = memos.get(node);
+    if (memo != null) {
+      return memo;
+    }
+
+    List<Node> children = node.children();
+    Node[] shared = new Node[children.size()];
+    for (int i = 0; i < shared.length; i++) {
+      shared[i] = share(children.get(i), occurrences, memos);
+    }
+    Node rebuilt = node.withChildren(shared);
+
+    if (occurrences.getOrDefault(node, 0) < 2) {
+      return rebuilt;
+    }
+    memo = new Node.Memo(memos.size(), rebuilt);
+    memos.put(node, memo);
+    return memo;
+  }
+
+  /**
+   * Context of the bound record, along with the values of the shared nodes computed for it. A
+   * generation number tells which values belong to the current record, so binding a record does
+   * not clear the values of the previous one.
+   */
+  static final class MemoContext implements JexlContext {
+
+    private final Object[] values;
+    private final long[] generations;
+
+    private JexlContext context;
+    private long generation = 0;
+
+    MemoContext(int slots) {
+      this.values = new Object[slots];
+      this.generations = new long[slots];
+    }
+
+    void bind(JexlContext context) {
+      this.context = context;
+      this.generation++;
+    }
+
+    Object get(int slot, Node node) {
+      if (this.generations[slot] == this.generation) {
+        return this.values[slot];
+      }
+      // a failure is not kept, every expression referencing the node fails on its own
+      Object value = node.eval(this);
+      this.values[slot] = value;
+      this.generations[slot] = this.generation;
+      return value;
+    }
+
+    @Override
+    public Object get(String name) {
+      return this.context.get(name);
+    }
+
+    @Override
+    public void set(String name, Object value) {
+      this.context.set(name, value);
+    }
+
+    @Override
+    public boolean has(String name) {
+      return this.context.has(name);
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package easytest.expression;
+
+import org.apache.commons.jexl3.JexlContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a compiled expression into an equivalent Spark SQL predicate. 'input' fields become
+ * column references, while 'global', 'runtime' and 'token' values are inlined as literals. Only
+ * constructs whose SQL semantics match the expression semantics are translated:
+ * <ul>
+ *   <li>columns must be non-nullable and constants non-null, as SQL propagates a null where the
+ *   expression fails, and AND, OR and CASE WHEN absorb it;</li>
+ *   <li>operands of a comparison are of the same kind, numbers being ordered with NaN first as the
+ *   expression does, and strings only compared for equality as SQL orders them by UTF-8 bytes;</li>
+ *   <li>arithmetic is only translated with a double operand, since SQL wraps integers around where
+ *   the expression widens them, and concatenates nothing with '+';</li>
+ *   <li>conversions from strings are not translated, as SQL casts an invalid number to null.</li>
+ * </ul>
+ */
+final class SqlTranslator {
+
+  private enum Kind {
+    INTEGRAL, DOUBLE, STRING, BOOLEAN
+  }
+
+  private final JexlContext constants;
+  private final Map<String, Class<?>> columns;
+
+  /**
+   * @param constants context holding the non-input variables of the expression.
+   * @param columns   Java type of the values of the non-nullable input fields that can be translated.
+   */
+  SqlTranslator(JexlContext constants, Map<String, Class<?>> columns) {
+    this.constants = constants;
+    this.columns = columns;
+  }
+
+  /**
+   * @return SQL text for the node, or null if the node cannot be translated into a predicate.
+   */
+  String translate(Node node) {
+    Sql sql = sql(node);
+    return sql != null && sql.kind == Kind.BOOLEAN ? sql.text : null;
+  }
+
+  private Sql sql(Node node) {
+    if (node instanceof Node.Literal) {
+      return literal(((Node.Literal) node).value());
+    } else if (node instanceof Node.Access) {
+      Node.Access access = (Node.Access) node;
+      if (access.type() != VariableType.INPUT) {
+        return literal(access.eval(this.constants));
+      }
+      String[] path = access.path();
+      Kind kind = path.length == 1 ? kind(this.columns.get(path[0])) : null;
+      return kind == null ? null : new Sql(column(path[0]), kind);
+    } else if (node instanceof Node.Not) {
+      Sql operand = sql(((Node.Not) node).operand());
+      return is(operand, Kind.BOOLEAN) ? new Sql("(NOT " + operand.text + ")", Kind.BOOLEAN) : null;
+    } else if (node instanceof Node.Negate) {
+      Sql operand = sql(((Node.Negate) node).operand());
+      return is(operand, Kind.DOUBLE) ? new Sql("(- " + operand.text + ")", Kind.DOUBLE) : null;
+    } else if (node instanceof Node.And) {
+      return logical("AND", ((Node.And) node).left(), ((Node.And) node).right());
+    } else if (node instanceof Node.Or) {
+      return logical("OR", ((Node.Or) node).left(), ((Node.Or) node).right());
+    } else if (node instanceof Node.Conditional) {
+      return conditional(node.children());
+    } else if (node instanceof Node.Binary) {
+      return binary((Node.Binary) node);
+    } else if (node instanceof Node.Call) {
+      return call((Node.Call) node);
+    }
+    return null;
+  }
+
+  private Sql logical(String operator, Node leftNode, Node rightNode) {
+    Sql left = sql(leftNode);
+    Sql right = sql(rightNode);
+    if (!is(left, Kind.BOOLEAN) || !is(right, Kind.BOOLEAN)) {
+      return null;
+    }
+    return new Sql("(" + left.text + " " + operator + " " + right.text + ")", Kind.BOOLEAN);
+  }
+
+  private Sql conditional(List<Node> children) {
+    Sql condition = sql(children.get(0));
+    Sql then = sql(children.get(1));
+    Sql otherwise = sql(children.get(2));
+    if (!is(condition, Kind.BOOLEAN) || then == null || otherwise == null || then.kind != otherwise.kind) {
+      return null;
+    }
+    return new Sql(String.format("(CASE WHEN %s THEN %s ELSE %s END)", condition.text, then.text, otherwise.text),
+        then.kind);
+  }
+
+  private Sql binary(Node.Binary node) {
+    Sql left = sql(node.left());
+    Sql right = sql(node.right());
+    if (left == null || right == null) {
+      return null;
+    }
+    boolean numbers = isNumber(left) && isNumber(right);
+    boolean doubles = numbers && (left.kind == Kind.DOUBLE || right.kind == Kind.DOUBLE);
+
+    switch (node.operator()) {
+      case EQ:
+      case NE:
+        if (left.kind != right.kind && !numbers) {
+          return null;
+        }
+        // SQL equality matches NaN with NaN, and 0.0 with -0.0, as the expression does
+        return new Sql("(" + left.text + (node.operator() == Operator.EQ ? " = " : " <> ") + right.text + ")",
+            Kind.BOOLEAN);
+      case LT:
+      case LE:
+      case GT:
+      case GE:
+        if (!numbers) {
+          return null;
+        }
+        String comparison = "(" + left.text + " " + node.operator() + " " + right.text + ")";
+        if (!doubles) {
+          return new Sql(comparison, Kind.BOOLEAN);
+        }
+        // SQL orders NaN after every other double, the expression before
+        return new Sql(String.format("(CASE WHEN %s OR %s THEN %s ELSE %s END)",
+            isNaN(left), isNaN(right), nanComparison(node.operator(), isNaN(left), isNaN(right)), comparison),
+            Kind.BOOLEAN);
+      case ADD:
+      case SUB:
+      case MUL:
+        if (!doubles) {
+          return null;
+        }
+        return new Sql("(" + left.text + " " + node.operator() + " " + right.text + ")", Kind.DOUBLE);
+      default:
+        // division and modulo fail on zero in expressions
+        return null;
+    }
+  }
+
+  /**
+   * @return the comparison of two numbers of which at least one is NaN, NaN being the smallest.
+   */
+  private static String nanComparison(Operator operator, String leftNaN, String rightNaN) {
+    switch (operator) {
+      case LT:
+        return "(" + leftNaN + " AND NOT " + rightNaN + ")";
+      case LE:
+        return leftNaN;
+      case GT:
+        return "(" + rightNaN + " AND NOT " + leftNaN + ")";
+      default:
+        return rightNaN;
+    }
+  }
+
+  private Sql call(Node.Call node) {
+    List<Node> args = node.children();
+    if (args.size() != 1) {
+      return null;
+    }
+    String name = node.prefix() == null ? node.name() : node.prefix() + ":" + node.name();
+    Sql arg = sql(args.get(0));
+    if (arg == null) {
+      return null;
+    }
+
+    switch (name) {
+      case "isnull":
+        return new Sql("(" + arg.text + " IS NULL)", Kind.BOOLEAN);
+      case "isempty":
+        return is(arg, Kind.STRING) ? new Sql("(" + arg.text + " = '')", Kind.BOOLEAN) : null;
+      case "toDouble":
+        return isNumber(arg) ? new Sql("CAST(" + arg.text + " AS DOUBLE)", Kind.DOUBLE) : null;
+      case "math:abs":
+        return is(arg, Kind.DOUBLE) ? new Sql("abs(" + arg.text + ")", Kind.DOUBLE) : null;
+      default:
+        // string lengths count UTF-16 chars in expressions, and code points in SQL
+        return null;
+    }
+  }
+
+  private static boolean is(Sql sql, Kind kind) {
+    return sql != null && sql.kind == kind;
+  }
+
+  private static boolean isNumber(Sql sql) {
+    return sql.kind == Kind.INTEGRAL || sql.kind == Kind.DOUBLE;
+  }
+
+  private static String isNaN(Sql sql) {
+    return sql.kind == Kind.DOUBLE ? "isnan(" + sql.text + ")" : "FALSE";
+  }
+
+  private static Kind kind(Class<?> type) {
+    if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+      return Kind.INTEGRAL;
+    } else if (type == Double.class) {
+      return Kind.DOUBLE;
+    } else if (type == String.class) {
+      return Kind.STRING;
+    } else if (type == Boolean.class) {
+      return Kind.BOOLEAN;
+    }
+    // floats are widened differently, and decimals are read as bytes by expressions
+    return null;
+  }
+
+  private static String column(String name) {
+    return "`" + name.replace("`", "``") + "`";
+  }
+
+  private static Sql literal(Object value) {
+    Kind kind = value == null ? null : kind(value.getClass());
+    if (kind == null) {
+      return null;
+    }
+    switch (kind) {
+      case BOOLEAN:
+        return new Sql((Boolean) value ? "TRUE" : "FALSE", kind);
+      case INTEGRAL:
+        return new Sql(value instanceof Long ? value + "L" : value.toString(), kind);
+      case DOUBLE:
+        double d = (Double) value;
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+          return null;
+        }
+        return new Sql(BigDecimal.valueOf(d).toPlainString() + "D", kind);
+      default:
+        return new Sql("'" + ((String) value).replace("\\", "\\\\").replace("'", "\\'") + "'", kind);
+    }
+  }
+
+  /**
+   * SQL text of a node, with the kind of values it evaluates to.
+   */
+  private static final class Sql {
+
+    private final String text;
+    private final Kind kind;
+
+    Sql(String text, Kind kind) {
+      this.text = text;
+      this.kind = kind;
+    }
+  }
+}
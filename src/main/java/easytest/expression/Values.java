@@ -0,0 +1,451 @@
+package easytest.expression;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.regex.Pattern;
+
+/**
+ * Arithmetic, comparison and coercion rules used by compiled expressions. These are the rules of the
+ * strict JexlArithmetic of JEXL 3.0 the JEXL engine is built with, down to the narrowing of results
+ * and the operand types that fail, so an expression gives the same result, or fails, on either
+ * engine. Integral arithmetic is done on longs, and only overflows into a BigInteger as JEXL does.
+ */
+final class Values {
+
+  // the default math context of JEXL
+  private static final MathContext MATH_CONTEXT = MathContext.DECIMAL128;
+  private static final Pattern FLOAT_PATTERN = Pattern.compile("^[+-]?\\d*(\\.\\d*)?([eE]?[+-]?\\d*)?$");
+  private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+  private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+  private Values() {
+    // no-op
+  }
+
+  static boolean isFloating(Object value) {
+    return value instanceof Double || value instanceof Float;
+  }
+
+  /**
+   * @return true for the types JEXL compares as longs.
+   */
+  static boolean isNumberable(Object value) {
+    return value instanceof Integer || value instanceof Long
+        || value instanceof Byte || value instanceof Short || value instanceof Character;
+  }
+
+  /**
+   * @return true for floating point numbers and the strings JEXL reads as such, e.g. '1.5'.
+   */
+  private static boolean isFloatingPointNumber(Object value) {
+    if (isFloating(value)) {
+      return true;
+    }
+    if (value instanceof String) {
+      String str = (String) value;
+      if (str.indexOf('.') >= 0 || str.indexOf('e') >= 0 || str.indexOf('E') >= 0) {
+        return FLOAT_PATTERN.matcher(str).matches();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true for the operands of integral arithmetic done on longs, those JEXL widens to a
+   *         BigInteger without any parsing.
+   */
+  private static boolean isLongOperand(Object value) {
+    return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+  }
+
+  private static ArithmeticException nullOperand() {
+    return new ArithmeticException("Null value used as an operand.");
+  }
+
+  static boolean toBoolean(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value == null) {
+      throw nullOperand();
+    } else if (value instanceof Number) {
+      double number = toDouble(value);
+      return !Double.isNaN(number) && number != 0;
+    } else if (value instanceof String) {
+      String str = (String) value;
+      return !str.isEmpty() && !"false".equals(str);
+    }
+    return true;
+  }
+
+  static double toDouble(Object value) {
+    if (value instanceof Double) {
+      return (Double) value;
+    } else if (value instanceof Number) {
+      // through the decimal form, so a float 0.1 is the double 0.1
+      return Double.parseDouble(String.valueOf(value));
+    } else if (value instanceof String) {
+      String str = (String) value;
+      return str.isEmpty() ? Double.NaN : Double.parseDouble(str);
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    } else if (value instanceof Character) {
+      return (Character) value;
+    } else if (value == null) {
+      throw nullOperand();
+    }
+    throw cannotConvert(value, "a double");
+  }
+
+  static long toLong(Object value) {
+    if (value instanceof Double) {
+      double d = (Double) value;
+      return Double.isNaN(d) ? 0L : (long) d;
+    } else if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof String) {
+      String str = (String) value;
+      return str.isEmpty() ? 0L : Long.parseLong(str);
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? 1L : 0L;
+    } else if (value instanceof Character) {
+      return (Character) value;
+    } else if (value == null) {
+      throw nullOperand();
+    }
+    throw cannotConvert(value, "a long");
+  }
+
+  static BigInteger toBigInteger(Object value) {
+    if (value instanceof BigInteger) {
+      return (BigInteger) value;
+    } else if (value instanceof Double) {
+      double d = (Double) value;
+      return Double.isNaN(d) ? BigInteger.ZERO : BigInteger.valueOf((long) d);
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toBigInteger();
+    } else if (value instanceof Number) {
+      return BigInteger.valueOf(((Number) value).longValue());
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? BigInteger.ONE : BigInteger.ZERO;
+    } else if (value instanceof String) {
+      String str = (String) value;
+      return str.isEmpty() ? BigInteger.ZERO : new BigInteger(str);
+    } else if (value instanceof Character) {
+      return BigInteger.valueOf((Character) value);
+    } else if (value == null) {
+      throw nullOperand();
+    }
+    throw cannotConvert(value, "a BigInteger");
+  }
+
+  static BigDecimal toBigDecimal(Object value) {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    } else if (value instanceof Double && Double.isNaN((Double) value)) {
+      return BigDecimal.ZERO;
+    } else if (value instanceof Number) {
+      return new BigDecimal(value.toString(), MATH_CONTEXT);
+    } else if (value instanceof Boolean) {
+      return BigDecimal.valueOf((Boolean) value ? 1.0 : 0.0);
+    } else if (value instanceof String) {
+      String str = (String) value;
+      return str.isEmpty() ? BigDecimal.ZERO : new BigDecimal(str, MATH_CONTEXT);
+    } else if (value instanceof Character) {
+      return new BigDecimal((Character) value);
+    } else if (value == null) {
+      throw nullOperand();
+    }
+    throw cannotConvert(value, "a BigDecimal");
+  }
+
+  private static String toText(Object value) {
+    if (value == null) {
+      throw nullOperand();
+    } else if (value instanceof Double && Double.isNaN((Double) value)) {
+      return "";
+    }
+    return value.toString();
+  }
+
+  private static ArithmeticException cannotConvert(Object value, String type) {
+    return new ArithmeticException(String.format("Value of type '%s' cannot be converted to %s.",
+        value.getClass().getSimpleName(), type));
+  }
+
+  /**
+   * Narrows the result of integral arithmetic done on longs: an Integer unless an operand is a Long
+   * or the result does not fit.
+   */
+  private static Object narrow(Object left, Object right, long result) {
+    if (!(left instanceof Long) && !(right instanceof Long)
+        && result >= Integer.MIN_VALUE && result <= Integer.MAX_VALUE) {
+      return (int) result;
+    }
+    return result;
+  }
+
+  private static Object narrow(Object left, Object right, BigInteger result) {
+    if (!(left instanceof BigInteger) && !(right instanceof BigInteger)
+        && result.compareTo(LONG_MAX) <= 0 && result.compareTo(LONG_MIN) >= 0) {
+      return narrow(left, right, result.longValue());
+    }
+    return result;
+  }
+
+  private static Object narrow(Object left, Object right, BigDecimal result) {
+    if (isNumberable(left) || isNumberable(right)) {
+      try {
+        long value = result.longValueExact();
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+      } catch (ArithmeticException e) {
+        // not integral, kept as a decimal
+      }
+    }
+    return result;
+  }
+
+  static Object add(Object left, Object right) {
+    if (left == null && right == null) {
+      throw nullOperand();
+    }
+    if (left instanceof String || right instanceof String) {
+      return toText(left).concat(toText(right));
+    }
+    if (isLongOperand(left) && isLongOperand(right)) {
+      long l = ((Number) left).longValue();
+      long r = ((Number) right).longValue();
+      try {
+        return narrow(left, right, Math.addExact(l, r));
+      } catch (ArithmeticException e) {
+        return BigInteger.valueOf(l).add(BigInteger.valueOf(r));
+      }
+    }
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      return narrow(left, right, toBigDecimal(left).add(toBigDecimal(right), MATH_CONTEXT));
+    }
+    if (isFloatingPointNumber(left) || isFloatingPointNumber(right)) {
+      return toDouble(left) + toDouble(right);
+    }
+    return narrow(left, right, toBigInteger(left).add(toBigInteger(right)));
+  }
+
+  static Object subtract(Object left, Object right) {
+    if (left == null && right == null) {
+      throw nullOperand();
+    }
+    if (isLongOperand(left) && isLongOperand(right)) {
+      long l = ((Number) left).longValue();
+      long r = ((Number) right).longValue();
+      try {
+        return narrow(left, right, Math.subtractExact(l, r));
+      } catch (ArithmeticException e) {
+        return BigInteger.valueOf(l).subtract(BigInteger.valueOf(r));
+      }
+    }
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      return narrow(left, right, toBigDecimal(left).subtract(toBigDecimal(right), MATH_CONTEXT));
+    }
+    if (isFloatingPointNumber(left) || isFloatingPointNumber(right)) {
+      return toDouble(left) - toDouble(right);
+    }
+    return narrow(left, right, toBigInteger(left).subtract(toBigInteger(right)));
+  }
+
+  static Object multiply(Object left, Object right) {
+    if (left == null && right == null) {
+      throw nullOperand();
+    }
+    if (isLongOperand(left) && isLongOperand(right)) {
+      long l = ((Number) left).longValue();
+      long r = ((Number) right).longValue();
+      try {
+        return narrow(left, right, Math.multiplyExact(l, r));
+      } catch (ArithmeticException e) {
+        return BigInteger.valueOf(l).multiply(BigInteger.valueOf(r));
+      }
+    }
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      return narrow(left, right, toBigDecimal(left).multiply(toBigDecimal(right), MATH_CONTEXT));
+    }
+    if (isFloatingPointNumber(left) || isFloatingPointNumber(right)) {
+      return toDouble(left) * toDouble(right);
+    }
+    return narrow(left, right, toBigInteger(left).multiply(toBigInteger(right)));
+  }
+
+  static Object divide(Object left, Object right) {
+    if (left == null && right == null) {
+      throw nullOperand();
+    }
+    if (isLongOperand(left) && isLongOperand(right)) {
+      long l = ((Number) left).longValue();
+      long r = ((Number) right).longValue();
+      if (r == 0) {
+        throw new ArithmeticException("Division by zero.");
+      }
+      if (l == Long.MIN_VALUE && r == -1) {
+        return BigInteger.valueOf(l).negate();
+      }
+      return narrow(left, right, l / r);
+    }
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      BigDecimal divisor = toBigDecimal(right);
+      BigDecimal dividend = toBigDecimal(left);
+      if (BigDecimal.ZERO.equals(divisor)) {
+        throw new ArithmeticException("Division by zero.");
+      }
+      return narrow(left, right, dividend.divide(divisor, MATH_CONTEXT));
+    }
+    if (isFloatingPointNumber(left) || isFloatingPointNumber(right)) {
+      double dividend = toDouble(left);
+      double divisor = toDouble(right);
+      if (divisor == 0) {
+        throw new ArithmeticException("Division by zero.");
+      }
+      return dividend / divisor;
+    }
+    BigInteger dividend = toBigInteger(left);
+    BigInteger divisor = toBigInteger(right);
+    if (divisor.signum() == 0) {
+      throw new ArithmeticException("Division by zero.");
+    }
+    return narrow(left, right, dividend.divide(divisor));
+  }
+
+  /**
+   * The remainder of a division. As in JEXL, the integral remainder is that of BigInteger.mod, never
+   * negative, and a divisor that is not positive fails.
+   */
+  static Object modulo(Object left, Object right) {
+    if (left == null && right == null) {
+      throw nullOperand();
+    }
+    if (isLongOperand(left) && isLongOperand(right)) {
+      long r = ((Number) right).longValue();
+      if (r <= 0) {
+        throw new ArithmeticException("Modulus not positive.");
+      }
+      return narrow(left, right, Math.floorMod(((Number) left).longValue(), r));
+    }
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      BigDecimal dividend = toBigDecimal(left);
+      BigDecimal divisor = toBigDecimal(right);
+      if (BigDecimal.ZERO.equals(divisor)) {
+        throw new ArithmeticException("Division by zero.");
+      }
+      return narrow(left, right, dividend.remainder(divisor, MATH_CONTEXT));
+    }
+    if (isFloatingPointNumber(left) || isFloatingPointNumber(right)) {
+      double dividend = toDouble(left);
+      double divisor = toDouble(right);
+      if (divisor == 0) {
+        throw new ArithmeticException("Division by zero.");
+      }
+      return dividend % divisor;
+    }
+    BigInteger divisor = toBigInteger(right);
+    if (divisor.signum() <= 0) {
+      throw new ArithmeticException("Modulus not positive.");
+    }
+    return narrow(left, right, toBigInteger(left).mod(divisor));
+  }
+
+  static Object negate(Object value) {
+    if (value instanceof Integer) {
+      return -(Integer) value;
+    } else if (value instanceof Long) {
+      return -(Long) value;
+    } else if (value instanceof Double) {
+      return -(Double) value;
+    } else if (value instanceof Float) {
+      return -(Float) value;
+    } else if (value instanceof Short) {
+      return (short) -(Short) value;
+    } else if (value instanceof Byte) {
+      return (byte) -(Byte) value;
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).negate();
+    } else if (value instanceof BigInteger) {
+      return ((BigInteger) value).negate();
+    } else if (value instanceof Boolean) {
+      return !(Boolean) value;
+    } else if (value == null) {
+      throw nullOperand();
+    }
+    throw new ArithmeticException(
+        String.format("Value of type '%s' cannot be negated.", value.getClass().getSimpleName()));
+  }
+
+  /**
+   * Equality as JEXL tests it: a boolean operand is compared as a boolean, so 1 == true, and a
+   * number is compared to a string as a number, so '1' == 1 and 'a' == 1 fails.
+   */
+  static boolean equal(Object left, Object right) {
+    if (left == right) {
+      return true;
+    } else if (left == null || right == null) {
+      return false;
+    } else if (left instanceof Boolean || right instanceof Boolean) {
+      return toBoolean(left) == toBoolean(right);
+    }
+    return order(left, right, Operator.EQ) == 0;
+  }
+
+  /**
+   * A comparison as JEXL tests it. An ordering is false when an operand is null, and an identical
+   * operand is equal to itself, NaN included.
+   */
+  static boolean compare(Operator operator, Object left, Object right) {
+    if (operator == Operator.EQ) {
+      return equal(left, right);
+    } else if (operator == Operator.NE) {
+      return !equal(left, right);
+    } else if (left == right) {
+      return operator == Operator.LE || operator == Operator.GE;
+    } else if (left == null || right == null) {
+      return false;
+    }
+    return operator.matches(order(left, right, operator));
+  }
+
+  /**
+   * Orders two non-null values. Floating point numbers are compared as doubles where NaN is the
+   * smallest value, other numbers as longs, BigIntegers or BigDecimals, and strings by their text.
+   */
+  @SuppressWarnings("unchecked")
+  private static int order(Object left, Object right, Operator operator) {
+    if (left instanceof BigDecimal || right instanceof BigDecimal) {
+      return toBigDecimal(left).compareTo(toBigDecimal(right));
+    } else if (left instanceof BigInteger || right instanceof BigInteger) {
+      return toBigInteger(left).compareTo(toBigInteger(right));
+    } else if (isFloating(left) || isFloating(right)) {
+      return order(toDouble(left), toDouble(right));
+    } else if (isNumberable(left) || isNumberable(right)) {
+      return Long.compare(toLong(left), toLong(right));
+    } else if (left instanceof String || right instanceof String) {
+      return toText(left).compareTo(toText(right));
+    } else if (operator == Operator.EQ) {
+      return left.equals(right) ? 0 : -1;
+    } else if (left instanceof Comparable) {
+      return ((Comparable<Object>) left).compareTo(right);
+    } else if (right instanceof Comparable) {
+      // the order JEXL uses, reversed operands included
+      return ((Comparable<Object>) right).compareTo(left);
+    }
+    throw new ArithmeticException(String.format("Values of type '%s' and '%s' cannot be compared.",
+        left.getClass().getSimpleName(), right.getClass().getSimpleName()));
+  }
+
+  /**
+   * Orders two doubles, NaN being smaller than any other value and equal to itself.
+   */
+  static int order(double left, double right) {
+    if (Double.isNaN(left)) {
+      return Double.isNaN(right) ? 0 : -1;
+    } else if (Double.isNaN(right)) {
+      return 1;
+    }
+    return left < right ? -1 : left > right ? 1 : 0;
+  }
+}
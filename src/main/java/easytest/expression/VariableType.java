@@ -4,7 +4,8 @@ public enum VariableType {
   INPUT("input"),
   GLOBAL("global"),
   RUNTIME("runtime"),
-  TOKEN("token");
+  TOKEN("token"),
+  AGGREGATE("aggregate");
 
   public static VariableType fromString(String value) {
     if (value.equalsIgnoreCase(INPUT.toString())) {
@@ -15,6 +16,8 @@ public enum VariableType {
       return VariableType.RUNTIME;
     } else if (value.equalsIgnoreCase(TOKEN.toString())) {
       return VariableType.TOKEN;
+    } else if (value.equalsIgnoreCase(AGGREGATE.toString())) {
+      return VariableType.AGGREGATE;
     } else {
       throw new IllegalArgumentException(String.format("Unknown variable type: %s", value));
     }
@@ -0,0 +1,46 @@
+package easytest.plugin.assertion;
+
+/**
+ * Functions available to aggregate assertions. Every function is computed by a constant-memory
+ * accumulator that can be merged across partitions.
+ */
+enum AggregateFunction {
+  COUNT("count", false),
+  NULLS("nulls", false),
+  NULL_RATIO("nullratio", false),
+  SUM("sum", true),
+  MIN("min", false),
+  MAX("max", false),
+  MEAN("mean", true),
+  VARIANCE("variance", true),
+  STDDEV("stddev", true),
+  DISTINCT("distinct", false);
+
+  static AggregateFunction fromString(String value) {
+    for (AggregateFunction function : values()) {
+      if (function.identifier.equalsIgnoreCase(value)) {
+        return function;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unknown aggregate function: %s", value));
+  }
+
+  private final String identifier;
+  private final boolean numeric;
+
+  AggregateFunction(String identifier, boolean numeric) {
+    this.identifier = identifier;
+    this.numeric = numeric;
+  }
+
+  /**
+   * @return true if the function only applies to numeric fields.
+   */
+  boolean isNumeric() {
+    return this.numeric;
+  }
+
+  public String toString() {
+    return this.identifier;
+  }
+}
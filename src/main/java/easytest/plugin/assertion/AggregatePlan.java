@@ -0,0 +1,223 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+
+/**
+ * The aggregates of an assertion, parsed from pairs of the form 'name:function(field)', such as
+ * 'rows:count(),total:sum(amount),ids:distinct(customer_id)'. Each referenced field gets a single
+ * set of accumulators, shared by every aggregate of that field.
+ */
+final class AggregatePlan implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Pattern FUNCTION = Pattern.compile("(\\w+)\\s*\\(\\s*([^()]*?)\\s*\\)");
+
+  private final List<String> names = new ArrayList<>();
+  private final List<AggregateFunction> functions = new ArrayList<>();
+  private final List<Integer> slots = new ArrayList<>();
+
+  private final List<String> fields = new ArrayList<>();
+  // null when the plan is parsed without a schema, the schema of the records tells then
+  private final List<Boolean> decimals = new ArrayList<>();
+  private final List<Boolean> numeric = new ArrayList<>();
+  private final List<Boolean> distinct = new ArrayList<>();
+
+  private AggregatePlan() {
+    // no-op
+  }
+
+  /**
+   * @param aggregates the aggregates, as comma separated 'name:function(field)' pairs.
+   * @param schema     input schema used to check the fields, or null if it is not known, the fields
+   *                   are then checked against the schema of the records as they are aggregated.
+   * @throws IllegalArgumentException if an aggregate is malformed or does not apply to its field.
+   */
+  static AggregatePlan parse(String aggregates, Schema schema) throws IllegalArgumentException {
+    AggregatePlan plan = new AggregatePlan();
+
+    Map<String, String> pairs = Splitter.on(',')
+        .trimResults()
+        .omitEmptyStrings()
+        .withKeyValueSeparator(":")
+        .split(aggregates);
+
+    for (Map.Entry<String, String> pair : pairs.entrySet()) {
+      String name = pair.getKey().trim();
+      Matcher matcher = FUNCTION.matcher(pair.getValue().trim());
+      if (name.isEmpty() || !matcher.matches()) {
+        throw new IllegalArgumentException(String.format(
+            "Aggregate '%s' must be specified as '<name>:<function>(<field>)'.", pair.getKey()));
+      }
+
+      AggregateFunction function = AggregateFunction.fromString(matcher.group(1));
+      String field = matcher.group(2);
+      if (field.isEmpty() && function != AggregateFunction.COUNT) {
+        throw new IllegalArgumentException(String.format(
+            "Aggregate '%s' must specify the field the '%s' function applies to.", name, function));
+      }
+
+      Schema fieldSchema = null;
+      if (!field.isEmpty() && schema != null) {
+        Schema.Field schemaField = schema.getField(field);
+        if (schemaField == null) {
+          throw new IllegalArgumentException(String.format(
+              "Aggregate '%s' references the field '%s' that does not exist in the input schema.", name, field));
+        }
+        fieldSchema = schemaField.getSchema().isNullable()
+            ? schemaField.getSchema().getNonNullable() : schemaField.getSchema();
+        if (function.isNumeric() && !isNumeric(fieldSchema)) {
+          throw new IllegalArgumentException(String.format(
+              "Aggregate '%s' applies '%s' to the non numeric field '%s'.", name, function, field));
+        }
+      }
+
+      plan.names.add(name);
+      plan.functions.add(function);
+      plan.slots.add(field.isEmpty() ? -1 : plan.slot(field, fieldSchema));
+      if (function == AggregateFunction.DISTINCT) {
+        plan.distinct.set(plan.slots.get(plan.slots.size() - 1), true);
+      }
+      if (function.isNumeric()) {
+        plan.numeric.set(plan.slots.get(plan.slots.size() - 1), true);
+      }
+    }
+    return plan;
+  }
+
+  List<String> getNames() {
+    return Collections.unmodifiableList(this.names);
+  }
+
+  AggregateState newState() {
+    return new AggregateState(this);
+  }
+
+  int fieldCount() {
+    return this.fields.size();
+  }
+
+  String field(int slot) {
+    return this.fields.get(slot);
+  }
+
+  /**
+   * Tells whether the values of a field are decimals, which records hold as bytes. When the plan was
+   * parsed without a schema, the field is checked against the schema of the records instead.
+   *
+   * @param schema schema of the records.
+   * @throws IllegalArgumentException if the field is not in the schema of the records, or is not
+   *                                  numeric while numeric aggregates apply to it.
+   */
+  boolean isDecimal(int slot, Schema schema) throws IllegalArgumentException {
+    Boolean decimal = this.decimals.get(slot);
+    if (decimal != null) {
+      return decimal;
+    }
+    String field = this.fields.get(slot);
+    Schema.Field schemaField = schema == null ? null : schema.getField(field);
+    if (schemaField == null) {
+      throw new IllegalArgumentException(String.format(
+          "Aggregates of the field '%s' cannot be computed, the field is not in the schema of the records.", field));
+    }
+    Schema fieldSchema = schemaField.getSchema().isNullable()
+        ? schemaField.getSchema().getNonNullable() : schemaField.getSchema();
+    if (this.numeric.get(slot) && !isNumeric(fieldSchema)) {
+      throw new IllegalArgumentException(String.format(
+          "Numeric aggregates cannot be computed over the non numeric field '%s'.", field));
+    }
+    return fieldSchema.getLogicalType() == Schema.LogicalType.DECIMAL;
+  }
+
+  boolean isDistinct(int slot) {
+    return this.distinct.get(slot);
+  }
+
+  /**
+   * @return the value of every aggregate, by name, in the order they were specified.
+   */
+  Map<String, Object> results(AggregateState state) {
+    Map<String, Object> results = new LinkedHashMap<>();
+    for (int i = 0; i < this.names.size(); i++) {
+      int slot = this.slots.get(i);
+      FieldStatistics statistics = slot < 0 ? null : state.statistics(slot);
+
+      Object value;
+      switch (this.functions.get(i)) {
+        case COUNT:
+          value = statistics == null ? state.rows() : statistics.count();
+          break;
+        case NULLS:
+          value = statistics.nulls();
+          break;
+        case NULL_RATIO:
+          value = state.rows() == 0 ? 0.0 : (double) statistics.nulls() / state.rows();
+          break;
+        case SUM:
+          value = statistics.sum();
+          break;
+        case MIN:
+          value = statistics.min();
+          break;
+        case MAX:
+          value = statistics.max();
+          break;
+        case MEAN:
+          value = statistics.mean();
+          break;
+        case VARIANCE:
+          value = statistics.variance();
+          break;
+        case STDDEV:
+          Double variance = statistics.variance();
+          value = variance == null ? null : Math.sqrt(variance);
+          break;
+        case DISTINCT:
+          value = state.distinct(slot).estimate();
+          break;
+        default:
+          throw new IllegalStateException(String.format("Unsupported aggregate function: %s", this.functions.get(i)));
+      }
+      results.put(this.names.get(i), value);
+    }
+    return results;
+  }
+
+  private int slot(String field, Schema schema) {
+    int slot = this.fields.indexOf(field);
+    if (slot < 0) {
+      slot = this.fields.size();
+      this.fields.add(field);
+      this.decimals.add(schema == null ? null : schema.getLogicalType() == Schema.LogicalType.DECIMAL);
+      this.numeric.add(false);
+      this.distinct.add(false);
+    }
+    return slot;
+  }
+
+  private static boolean isNumeric(Schema schema) {
+    if (schema.getLogicalType() != null) {
+      return schema.getLogicalType() == Schema.LogicalType.DECIMAL;
+    }
+    switch (schema.getType()) {
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+
+import easytest.shared.HyperLogLog;
+
+import java.io.Serializable;
+
+/**
+ * Accumulators of an {@link AggregatePlan}: the number of records, statistics for every field
+ * and a distinct counter for the fields that need one. States of different partitions are
+ * combined with {@link #merge(AggregateState)}.
+ */
+final class AggregateState implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final AggregatePlan plan;
+
+  private long rows = 0;
+  private final FieldStatistics[] statistics;
+  private final HyperLogLog[] distinct;
+  // resolved with the first record, when the plan was parsed without a schema
+  private final Boolean[] decimals;
+
+  AggregateState(AggregatePlan plan) {
+    this.plan = plan;
+    this.statistics = new FieldStatistics[plan.fieldCount()];
+    this.distinct = new HyperLogLog[plan.fieldCount()];
+    this.decimals = new Boolean[plan.fieldCount()];
+    for (int slot = 0; slot < plan.fieldCount(); slot++) {
+      this.statistics[slot] = new FieldStatistics();
+      if (plan.isDistinct(slot)) {
+        this.distinct[slot] = new HyperLogLog();
+      }
+    }
+  }
+
+  AggregateState add(StructuredRecord record) {
+    this.rows++;
+    for (int slot = 0; slot < this.statistics.length; slot++) {
+      if (this.decimals[slot] == null) {
+        this.decimals[slot] = this.plan.isDecimal(slot, record.getSchema());
+      }
+      String field = this.plan.field(slot);
+      Object value = this.decimals[slot] ? record.getDecimal(field) : record.get(field);
+
+      this.statistics[slot].add(value);
+      if (value != null && this.distinct[slot] != null) {
+        this.distinct[slot].add(value);
+      }
+    }
+    return this;
+  }
+
+  AggregateState merge(AggregateState other) {
+    this.rows += other.rows;
+    for (int slot = 0; slot < this.statistics.length; slot++) {
+      this.statistics[slot].merge(other.statistics[slot]);
+      if (this.distinct[slot] != null) {
+        this.distinct[slot].merge(other.distinct[slot]);
+      }
+    }
+    return this;
+  }
+
+  long rows() {
+    return this.rows;
+  }
+
+  FieldStatistics statistics(int slot) {
+    return this.statistics[slot];
+  }
+
+  HyperLogLog distinct(int slot) {
+    return this.distinct[slot];
+  }
+}
@@ -0,0 +1,189 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import io.cdap.cdap.etl.api.FailureCollector;
+
+import easytest.expression.VariableType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Splitter;
+
+public class AssertComputeConfig extends AssertTransformConfig {
+
+  public static final String PLUGIN_NAME = "AssertCompute";
+  public static final String PLUGIN_DESCRIPTION = "A plugin to provide assertions evaluated over whole partitions " +
+      "of the data, optionally pushed down to Spark SQL, or over aggregates of the whole data, and to assert " +
+      "that a key is unique across the data.";
+
+  private static final String FIELD_PUSHDOWN = "pushdown";
+  private static final String FIELD_AGGREGATES = "aggregates";
+  private static final String FIELD_UNIQUE_KEYS = "unique-keys";
+  private static final String FIELD_UNIQUE_MEMORY = "unique-memory";
+
+  private static final int DEFAULT_UNIQUE_MEMORY = 64;
+
+  @Name(FIELD_PUSHDOWN)
+  @Description("Translate the expression into a Spark SQL filter when possible, so the check is executed " +
+      "with whole-stage code generation. Records are still converted into rows, and are read whole. " +
+      "Only expressions over non-nullable int, long, double, string and boolean fields whose SQL semantics " +
+      "match are translated: comparisons, string equality and double arithmetic. Others are evaluated per " +
+      "partition.")
+  @Nullable
+  public final Boolean pushdown;
+
+  @Name(FIELD_AGGREGATES)
+  @Description("Aggregates computed over all the records, as comma separated '<name>:<function>(<field>)' " +
+      "pairs. Functions are count, nulls, nullratio, sum, min, max, mean, variance, stddev and distinct. " +
+      "When specified, the expression is evaluated once over the aggregates, as aggregate['<name>'].")
+  @Nullable
+  @Macro
+  public final String aggregates;
+
+  @Name(FIELD_UNIQUE_KEYS)
+  @Description("Fields whose values, taken together, must be unique across all the records, as a comma " +
+      "separated list. Records with a null in any of these fields are not checked. The assertion fails with the " +
+      "number of duplicated keys and a few of them. The expression is optional when unique keys are specified.")
+  @Nullable
+  @Macro
+  public final String uniqueKeys;
+
+  @Name(FIELD_UNIQUE_MEMORY)
+  @Description("Memory, in megabytes, each task uses to hold the hashes of the unique keys. Beyond it, the " +
+      "hashes are spilled to local disk as sorted runs, merged once all the keys are read. Defaults to 64.")
+  @Nullable
+  public final Integer uniqueMemory;
+
+  public AssertComputeConfig(String description, String expression, String engine, Boolean pushdown,
+                             String aggregates) {
+    this(description, expression, engine, pushdown, aggregates, null, null);
+  }
+
+  public AssertComputeConfig(String description, String expression, String engine, Boolean pushdown,
+                             String aggregates, String uniqueKeys, Integer uniqueMemory) {
+    super(description, expression, engine);
+    this.pushdown = pushdown;
+    this.aggregates = aggregates;
+    this.uniqueKeys = uniqueKeys;
+    this.uniqueMemory = uniqueMemory;
+  }
+
+  @Override
+  public void validate() throws IllegalArgumentException {
+    super.validate();
+    if (getFailurePolicy() != FailurePolicy.FAIL_FAST) {
+      throw new IllegalArgumentException(String.format(
+          "The '%s' stage only supports the '%s' failure policy.", PLUGIN_NAME, FailurePolicy.FAIL_FAST));
+    }
+    if (this.uniqueMemory != null && this.uniqueMemory <= 0) {
+      throw new IllegalArgumentException("The memory for unique keys must be a positive number of megabytes.");
+    }
+  }
+
+  @Override
+  protected boolean isExpressionRequired() {
+    return !hasUniqueKeys();
+  }
+
+  public boolean isPushdown() {
+    return this.pushdown != null && this.pushdown;
+  }
+
+  public boolean hasUniqueKeys() {
+    return containsMacro(FIELD_UNIQUE_KEYS) || !getUniqueKeys().isEmpty();
+  }
+
+  /**
+   * @return the fields of the unique key, empty if none are specified.
+   */
+  public List<String> getUniqueKeys() {
+    if (containsMacro(FIELD_UNIQUE_KEYS) || this.uniqueKeys == null) {
+      return Collections.emptyList();
+    }
+    List<String> fields = new ArrayList<>();
+    for (String field : Splitter.on(',').trimResults().omitEmptyStrings().split(this.uniqueKeys)) {
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  public long getUniqueMemoryBytes() {
+    return (this.uniqueMemory == null ? DEFAULT_UNIQUE_MEMORY : this.uniqueMemory) * 1024L * 1024L;
+  }
+
+  /**
+   * Checks that the fields of the unique key exist in the input schema, when it is known.
+   */
+  void checkUniqueKeys(@Nullable Schema inputSchema, FailureCollector collector) {
+    if (inputSchema == null) {
+      return;
+    }
+    for (String field : getUniqueKeys()) {
+      if (inputSchema.getField(field) == null) {
+        collector.addFailure(String.format("Unique key field '%s' does not exist in the input schema.", field),
+            null).withConfigProperty(FIELD_UNIQUE_KEYS);
+      }
+    }
+  }
+
+  public boolean hasAggregates() {
+    return containsMacro(FIELD_AGGREGATES) || (this.aggregates != null && !this.aggregates.trim().isEmpty());
+  }
+
+  /**
+   * Parses the aggregates, checking them against the input schema when it is known.
+   *
+   * @return the aggregates, or null if they are not specified or are invalid.
+   */
+  @Nullable
+  AggregatePlan getAggregatePlan(@Nullable Schema inputSchema, FailureCollector collector) {
+    if (containsMacro(FIELD_AGGREGATES) || !hasAggregates()) {
+      return null;
+    }
+    try {
+      return AggregatePlan.parse(this.aggregates, inputSchema);
+    } catch (IllegalArgumentException e) {
+      collector.addFailure(String.format("Invalid aggregates : %s", e.getMessage()), null)
+          .withConfigProperty(FIELD_AGGREGATES);
+      return null;
+    }
+  }
+
+  @Override
+  protected void checkVariables(Set<List<String>> variables, FailureCollector collector) {
+    if (!hasAggregates()) {
+      super.checkVariables(variables, collector);
+      return;
+    }
+
+    AggregatePlan plan = null;
+    if (!containsMacro(FIELD_AGGREGATES)) {
+      try {
+        plan = AggregatePlan.parse(this.aggregates, null);
+      } catch (IllegalArgumentException e) {
+        // reported by getAggregatePlan()
+      }
+    }
+    for (List<String> variable : variables) {
+      VariableType type = VariableType.fromString(variable.get(0));
+      if (type == VariableType.INPUT) {
+        collector.addFailure(String.format("Expression references the input field '%s', which is not " +
+            "available when evaluating aggregates.", variable.get(1)), "Add an aggregate of the field instead.")
+            .withConfigProperty(FIELD_EXPRESSION);
+      } else if (type == VariableType.AGGREGATE && plan != null && !plan.getNames().contains(variable.get(1))) {
+        collector.addFailure(String.format("Expression references the aggregate '%s' that is not specified.",
+            variable.get(1)), null).withConfigProperty(FIELD_EXPRESSION);
+      }
+    }
+  }
+}
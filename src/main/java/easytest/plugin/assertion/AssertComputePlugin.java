@@ -0,0 +1,422 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.spark.sql.DataFrames;
+
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.SparkCompute;
+import io.cdap.cdap.etl.api.batch.SparkExecutionPluginContext;
+
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.storage.StorageLevel;
+
+import scala.Tuple2;
+
+import easytest.expression.Engine;
+import easytest.expression.Expression;
+import easytest.expression.ExpressionException;
+import easytest.expression.VariableType;
+
+import easytest.shared.FixtureState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Plugin(type = SparkCompute.PLUGIN_TYPE)
+@Name(AssertComputeConfig.PLUGIN_NAME)
+@Description(AssertComputeConfig.PLUGIN_DESCRIPTION)
+public class AssertComputePlugin extends SparkCompute<StructuredRecord, StructuredRecord> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AssertComputePlugin.class);
+
+  // duplicated hashes whose keys are read again, to rule out collisions and report examples
+  private static final int CHECKED_DUPLICATES = 64;
+  // duplicated keys reported when the unique key assertion fails
+  private static final int DUPLICATE_EXAMPLES = 10;
+
+  private final AssertComputeConfig config;
+
+  public AssertComputePlugin(AssertComputeConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * This function is called when the pipeline is published.
+   * It validates the config and compiles the expression, any errors
+   * thrown here will stop the pipeline from being published.
+   *
+   * @param pipelineConfigurer Configures an ETL Pipeline. Allows adding datasets
+   *                           and streams and storing parameters
+   * @throws IllegalArgumentException If the config is invalid.
+   */
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
+    super.configurePipeline(pipelineConfigurer);
+
+    Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(inputSchema);
+
+    this.config.validate();
+
+    FailureCollector collector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    this.config.compile(new Expression(AssertTransformPlugin.FUNCTIONS, this.config.getEngine()), collector);
+    this.config.getAggregatePlan(inputSchema, collector);
+    this.config.checkUniqueKeys(inputSchema, collector);
+    collector.getOrThrowException();
+  }
+
+  /**
+   * Evaluates the assertion over the input. When unique keys are specified, they are checked first,
+   * and the expression is only evaluated if there is one. When aggregates are specified, they are
+   * accumulated over all partitions and the expression is evaluated once over the merged values.
+   * When pushdown is enabled and the expression can be translated, the check runs as a Spark SQL
+   * filter over the referenced columns. Otherwise each partition is evaluated with a single
+   * expression and record context, as records flow through.
+   *
+   * @param context Context for the stage, providing access to Spark and the runtime arguments.
+   * @param input   The records coming into the stage.
+   * @return the input records, unchanged.
+   * @throws Exception If the expression cannot be compiled, a key is not unique or the pushed down assertion
+   *                   fails.
+   */
+  @Override
+  public JavaRDD<StructuredRecord> transform(SparkExecutionPluginContext context,
+                                             JavaRDD<StructuredRecord> input) throws Exception {
+    if (!FixtureState.isEnabled(context)) {
+      LOG.warn("Assertion ({}) has been disabled by a fixture.", context.getStageName());
+      return input;
+    }
+
+    Expression expression = new Expression(AssertTransformPlugin.FUNCTIONS, this.config.getEngine());
+    FailureCollector collector = context.getFailureCollector();
+    this.config.compile(expression, collector);
+    collector.getOrThrowException();
+
+    Schema schema = context.getInputSchema();
+    AggregatePlan plan = this.config.getAggregatePlan(schema, collector);
+    this.config.checkUniqueKeys(schema, collector);
+    collector.getOrThrowException();
+
+    // the stage fails when the assertion does, the records it persisted are not read again
+    boolean persisted = !StorageLevel.NONE().equals(input.getStorageLevel());
+    try {
+      return evaluate(context, input, expression, schema, plan);
+    } catch (Exception e) {
+      if (!persisted) {
+        input.unpersist(false);
+      }
+      throw e;
+    }
+  }
+
+  private JavaRDD<StructuredRecord> evaluate(SparkExecutionPluginContext context, JavaRDD<StructuredRecord> input,
+                                             Expression expression, Schema schema,
+                                             AggregatePlan plan) throws Exception {
+    JavaRDD<StructuredRecord> records = input;
+    if (!this.config.getUniqueKeys().isEmpty()) {
+      // the records are read again by the expression or by the stages downstream
+      records = persist(input);
+      checkUnique(context, records, new UniqueKey(this.config.getUniqueKeys(), schema));
+    }
+    if (!this.config.hasExpression()) {
+      return records;
+    }
+
+    Bindings bindings = Bindings.resolve(context, expression.getVariables());
+    Projection projection = Projection.of(schema, expression.getVariables());
+    RecordContext constants = bindings.apply(new RecordContext(projection));
+
+    Boolean constant = expression.fold(constants);
+    if (Boolean.TRUE.equals(constant)) {
+      LOG.info("Assertion ({}) always holds with the values of its fixtures and arguments, records are not " +
+          "evaluated.", context.getStageName());
+      return records;
+    } else if (Boolean.FALSE.equals(constant)) {
+      LOG.warn("Assertion ({}) Failed: {}", context.getStageName(), this.config.description);
+
+      throw new IllegalStateException(
+          String.format("Assertion (%s) Failed: %s", context.getStageName(), this.config.description));
+    }
+
+    if (plan != null) {
+      return aggregate(context, records, expression, constants, plan);
+    }
+
+    LOG.info("Assertion ({}) reads {} of {} input fields.",
+        context.getStageName(), projection.size(), projection.width());
+    context.getMetrics().gauge("assertion.projected.fields", projection.size());
+    context.getMetrics().gauge("assertion.input.fields", projection.width());
+
+    if (this.config.isPushdown() && schema != null && projection.size() > 0 && projection.missing().isEmpty()) {
+      String predicate = expression.toSqlPredicate(constants, columns(schema, projection));
+      if (predicate != null) {
+        LOG.info("Assertion ({}) is pushed down as: {}", context.getStageName(), predicate);
+        // the check is a job of its own, the stages downstream reuse the records it reads
+        records = persist(records);
+        check(context, records, schema, projection, predicate);
+        return records;
+      }
+      LOG.info("Assertion ({}) cannot be translated into Spark SQL, it is evaluated per partition.",
+          context.getStageName());
+    }
+
+    // executors evaluate the folded expression
+    return records.mapPartitions(new PartitionAssertion(context.getStageName(), this.config.description,
+        expression.getText(), this.config.getEngine(), bindings, schema));
+  }
+
+  /**
+   * Accumulates the aggregates in a single job and evaluates the expression on the driver. The
+   * assertion has to fail before the stage returns, so the input is persisted for the stages
+   * downstream to reuse the records read by the aggregation instead of reading them again.
+   */
+  private JavaRDD<StructuredRecord> aggregate(SparkExecutionPluginContext context, JavaRDD<StructuredRecord> input,
+                                              Expression expression, RecordContext recordContext,
+                                              AggregatePlan plan) throws ExpressionException {
+    JavaRDD<StructuredRecord> records = persist(input);
+
+    AggregateState state = records.treeAggregate(plan.newState(), AggregateState::add, AggregateState::merge);
+    Map<String, Object> results = plan.results(state);
+    LOG.info("Assertion ({}) aggregates over {} records: {}", context.getStageName(), state.rows(), results);
+
+    for (Map.Entry<String, Object> result : results.entrySet()) {
+      recordContext.addVariable(VariableType.AGGREGATE, result.getKey(), result.getValue());
+    }
+
+    if (!expression.evaluateAsBoolean(recordContext)) {
+      LOG.warn("Assertion ({}) Failed: {}", context.getStageName(), this.config.description);
+
+      throw new IllegalStateException(
+          String.format("Assertion (%s) Failed: %s", context.getStageName(), this.config.description));
+    }
+    return records;
+  }
+
+  /**
+   * Fails if two records have the same unique key. The 64-bit hashes of the keys are shuffled by
+   * hash, so each task counts the duplicates among its share of the keys with a bounded amount of
+   * memory, and only the records of a few duplicated keys are read again to report their values.
+   */
+  private void checkUnique(SparkExecutionPluginContext context, JavaRDD<StructuredRecord> records,
+                           UniqueKey key) {
+    DuplicateCounter.Summary duplicates = records
+        .filter(key::isComplete)
+        .mapToPair(record -> new Tuple2<>(key.hash(record), Boolean.TRUE))
+        .partitionBy(new HashPartitioner(Math.max(1, records.getNumPartitions())))
+        .keys()
+        .mapPartitions(new PartitionDuplicates(this.config.getUniqueMemoryBytes()))
+        .fold(new DuplicateCounter.Summary(CHECKED_DUPLICATES), DuplicateCounter.Summary::merge);
+
+    List<String> examples = Collections.emptyList();
+    if (duplicates.keys() > 0) {
+      // the records of a few duplicated hashes are read again, to count them by key
+      Set<Long> hashes = new HashSet<>(duplicates.samples());
+      Map<Long, Map<String, Long>> keyCounts = new HashMap<>();
+      for (Tuple2<Tuple2<Long, String>, Long> count : records
+          .filter(record -> key.isComplete(record) && hashes.contains(key.hash(record)))
+          .mapToPair(record -> new Tuple2<>(new Tuple2<>(key.hash(record), key.describe(record)), 1L))
+          .reduceByKey(Long::sum)
+          .collect()) {
+        keyCounts.computeIfAbsent(count._1()._1(), hash -> new HashMap<>()).put(count._1()._2(), count._2());
+      }
+      examples = duplicates.confirm(keyCounts);
+      if (duplicates.collisions() > 0) {
+        LOG.info("Assertion ({}) found {} hashes shared by distinct keys of ({}), which are not duplicates.",
+            context.getStageName(), duplicates.collisions(), key);
+      }
+    }
+
+    context.getMetrics().gauge("assertion.duplicate.keys", duplicates.keys());
+    context.getMetrics().gauge("assertion.duplicate.records", duplicates.records());
+    if (duplicates.keys() == 0) {
+      LOG.info("Assertion ({}) found no duplicate key of ({}).", context.getStageName(), key);
+      return;
+    }
+
+    String message = String.format("Assertion (%s) Failed: %s. Found %d duplicate keys of (%s), with %d " +
+        "duplicate records, e.g. %s", context.getStageName(), this.config.description, duplicates.keys(), key,
+        duplicates.records(), String.join(", ", examples.subList(0, Math.min(examples.size(), DUPLICATE_EXAMPLES))));
+    if (duplicates.unconfirmed() > 0) {
+      message += String.format(" (%d of the keys are only known to be duplicated by their 64-bit hashes)",
+          duplicates.unconfirmed());
+    }
+    LOG.warn(message);
+    throw new IllegalStateException(message);
+  }
+
+  /**
+   * Persists records read by a job of the stage, so that the stages downstream do not compute them
+   * again. Records already persisted upstream are left as they are. The stage cannot tell when the
+   * stages downstream are done with the records, so unless the assertion fails, the cached copy is
+   * kept for the rest of the run, until Spark releases it once the records are no longer referenced.
+   */
+  private static JavaRDD<StructuredRecord> persist(JavaRDD<StructuredRecord> input) {
+    if (!StorageLevel.NONE().equals(input.getStorageLevel())) {
+      return input;
+    }
+    return input.persist(StorageLevel.MEMORY_AND_DISK());
+  }
+
+  private void check(SparkExecutionPluginContext context, JavaRDD<StructuredRecord> input, Schema schema,
+                     Projection projection, String predicate) {
+    List<Schema.Field> fields = new ArrayList<>();
+    for (int slot = 0; slot < projection.size(); slot++) {
+      fields.add(schema.getField(projection.name(slot)));
+    }
+    StructType type = DataFrames.toDataType(Schema.recordOf("projection", fields));
+
+    JavaRDD<Row> rows = input.map(record -> DataFrames.toRow(record, type));
+    SparkSession session = SparkSession.builder().sparkContext(context.getSparkContext().sc()).getOrCreate();
+
+    // a null predicate is a failure, as an error would be when evaluating the expression
+    long failures = session.createDataFrame(rows, type)
+        .filter(String.format("NOT coalesce(%s, false)", predicate))
+        .limit(1)
+        .count();
+
+    if (failures > 0) {
+      LOG.warn("Assertion ({}) Failed: {}", context.getStageName(), this.config.description);
+
+      throw new IllegalStateException(
+          String.format("Assertion (%s) Failed: %s", context.getStageName(), this.config.description));
+    }
+  }
+
+  /**
+   * @return Java type of the values of the projected fields that can be pushed down, which are the
+   *         non-nullable fields of a primitive type.
+   */
+  private static Map<String, Class<?>> columns(Schema schema, Projection projection) {
+    Map<String, Class<?>> columns = new HashMap<>();
+    for (int slot = 0; slot < projection.size(); slot++) {
+      Schema.Field field = schema.getField(projection.name(slot));
+      if (field == null || field.getSchema().isNullable() || field.getSchema().getLogicalType() != null) {
+        continue;
+      }
+      switch (field.getSchema().getType()) {
+        case INT:
+          columns.put(field.getName(), Integer.class);
+          break;
+        case LONG:
+          columns.put(field.getName(), Long.class);
+          break;
+        case DOUBLE:
+          columns.put(field.getName(), Double.class);
+          break;
+        case STRING:
+          columns.put(field.getName(), String.class);
+          break;
+        case BOOLEAN:
+          columns.put(field.getName(), Boolean.class);
+          break;
+        default:
+          break;
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * Counts the duplicates among the key hashes of a partition, all the occurrences of a hash being
+   * in the same partition once shuffled.
+   */
+  private static final class PartitionDuplicates
+      implements FlatMapFunction<Iterator<Long>, DuplicateCounter.Summary> {
+
+    private final long memoryBytes;
+
+    PartitionDuplicates(long memoryBytes) {
+      this.memoryBytes = memoryBytes;
+    }
+
+    @Override
+    public Iterator<DuplicateCounter.Summary> call(Iterator<Long> hashes) throws Exception {
+      try (DuplicateCounter counter = new DuplicateCounter(this.memoryBytes, CHECKED_DUPLICATES)) {
+        while (hashes.hasNext()) {
+          counter.add(hashes.next());
+        }
+        return Collections.singletonList(counter.summarize()).iterator();
+      }
+    }
+  }
+
+  /**
+   * Evaluates the assertion over the records of a partition as they are consumed, using one
+   * expression and one record context for the whole partition.
+   */
+  private static final class PartitionAssertion
+      implements FlatMapFunction<Iterator<StructuredRecord>, StructuredRecord> {
+
+    private final String stageName;
+    private final String description;
+    private final String expression;
+    private final Engine engine;
+    private final Bindings bindings;
+    private final Schema schema;
+
+    PartitionAssertion(String stageName, String description, String expression, Engine engine,
+                       Bindings bindings, Schema schema) {
+      this.stageName = stageName;
+      this.description = description;
+      this.expression = expression;
+      this.engine = engine;
+      this.bindings = bindings;
+      this.schema = schema;
+    }
+
+    @Override
+    public Iterator<StructuredRecord> call(Iterator<StructuredRecord> records) throws Exception {
+      Expression expression = new Expression(AssertTransformPlugin.FUNCTIONS, this.engine);
+      expression.create(this.expression);
+      RecordContext context = this.bindings.apply(
+          new RecordContext(Projection.of(this.schema, expression.getVariables())));
+
+      return new Iterator<StructuredRecord>() {
+        @Override
+        public boolean hasNext() {
+          return records.hasNext();
+        }
+
+        @Override
+        public StructuredRecord next() {
+          StructuredRecord record = records.next();
+
+          boolean assertionResult;
+          try {
+            assertionResult = expression.evaluateAsBoolean(context.bind(record));
+          } catch (ExpressionException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+          }
+
+          if (!assertionResult) {
+            LOG.warn("Assertion ({}) Failed: {}", stageName, description);
+
+            throw new IllegalStateException(
+                String.format("Assertion (%s) Failed: %s", stageName, description));
+          }
+          return record;
+        }
+      };
+    }
+  }
+}
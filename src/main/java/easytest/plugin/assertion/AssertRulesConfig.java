@@ -0,0 +1,200 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Macro;
+
+import io.cdap.cdap.api.plugin.PluginConfig;
+
+import io.cdap.cdap.etl.api.FailureCollector;
+
+import easytest.expression.Engine;
+import easytest.expression.Expression;
+import easytest.expression.ExpressionException;
+import easytest.expression.VariableType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+public class AssertRulesConfig extends PluginConfig {
+
+  public static final String PLUGIN_NAME = "AssertRules";
+  public static final String PLUGIN_DESCRIPTION = "Evaluates a set of assertion rules in a single stage.";
+
+  private static final String FIELD_RULES = "rules";
+  private static final String FIELD_RULES_FILE = "rules-file";
+  private static final String FIELD_ENGINE = "engine";
+  private static final String FIELD_FAILURE_POLICY = "failure-policy";
+  private static final String FIELD_FAILURE_THRESHOLD = "failure-threshold";
+
+  @Name(FIELD_RULES)
+  @Description("The rules, one per line as '<name>: <expression>'. Expressions are written as for an assertion " +
+      "and can include values from input, fixtures, global or runtime arguments of the pipeline.")
+  @Nullable
+  @Macro
+  public final String rules;
+
+  @Name(FIELD_RULES_FILE)
+  @Description("Path of a file holding more rules in the same format. The file is read when the pipeline is " +
+      "prepared, so it only needs to be available where the pipeline is submitted.")
+  @Nullable
+  @Macro
+  public final String rulesFile;
+
+  @Name(FIELD_ENGINE)
+  @Description("Engine used to evaluate the rules, 'jexl' or 'compiled' as for an assertion. Sub-expressions " +
+      "common to several rules, field reads included, are only evaluated once per record with 'compiled'. " +
+      "With 'jexl', every rule is evaluated on its own, and collections tested with '=~' and '!~' are scanned " +
+      "on every evaluation instead of being compiled into sets.")
+  @Nullable
+  public final String engine;
+
+  @Name(FIELD_FAILURE_POLICY)
+  @Description("What to do with records that fail any of the rules. 'fail-fast' fails the pipeline on the first " +
+      "failure. 'fail-after-n', 'fail-if-ratio-exceeds' and 'report-only' route failing records to the error " +
+      "port and only fail the pipeline once the failures exceed the threshold, or never for 'report-only'.")
+  @Nullable
+  public final String failurePolicy;
+
+  @Name(FIELD_FAILURE_THRESHOLD)
+  @Description("The number of failing records for 'fail-after-n', or the ratio of failing records between 0 " +
+      "and 1 for 'fail-if-ratio-exceeds'. A record failing several rules is counted once. Failures are counted " +
+      "by each partition, and a ratio is checked after every record once the partition evaluated 1000 " +
+      "records, a smaller partition never fails on it.")
+  @Nullable
+  @Macro
+  public final String failureThreshold;
+
+  public AssertRulesConfig(String rules, String rulesFile, String failurePolicy, String failureThreshold) {
+    this(rules, rulesFile, null, failurePolicy, failureThreshold);
+  }
+
+  public AssertRulesConfig(String rules, String rulesFile, String engine, String failurePolicy,
+                           String failureThreshold) {
+    this.rules = rules;
+    this.rulesFile = rulesFile;
+    this.engine = engine;
+    this.failurePolicy = failurePolicy;
+    this.failureThreshold = failureThreshold;
+  }
+
+  public Engine getEngine() {
+    if (this.engine == null || this.engine.isEmpty()) {
+      return Engine.JEXL;
+    }
+    try {
+      return Engine.fromString(this.engine);
+    } catch (IllegalArgumentException e) {
+      // reported by validate()
+      return Engine.JEXL;
+    }
+  }
+
+  public FailurePolicy getFailurePolicy() {
+    if (this.failurePolicy == null || this.failurePolicy.isEmpty()) {
+      return FailurePolicy.FAIL_FAST;
+    }
+    try {
+      return FailurePolicy.fromString(this.failurePolicy);
+    } catch (IllegalArgumentException e) {
+      // reported by validate()
+      return FailurePolicy.FAIL_FAST;
+    }
+  }
+
+  public double getFailureThreshold() {
+    if (this.failureThreshold == null || this.failureThreshold.isEmpty()) {
+      return 0;
+    }
+    return Double.parseDouble(this.failureThreshold);
+  }
+
+  public boolean hasRulesFile() {
+    return this.rulesFile != null && !this.rulesFile.isEmpty();
+  }
+
+  public String readRulesFile() throws IOException {
+    return new String(Files.readAllBytes(Paths.get(this.rulesFile)), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param fileRules content of the rules file, null if there is none.
+   * @return the inline rules followed by the rules of the file.
+   * @throws IllegalArgumentException if a rule cannot be parsed or two rules have the same name.
+   */
+  List<Rule> getRules(@Nullable String fileRules) throws IllegalArgumentException {
+    List<Rule> all = new ArrayList<>(Rule.parse(this.rules));
+    all.addAll(Rule.parse(fileRules));
+
+    Set<String> names = new HashSet<>();
+    for (Rule rule : all) {
+      if (!names.add(rule.getName())) {
+        throw new IllegalArgumentException(String.format("Rule '%s' is defined more than once.", rule.getName()));
+      }
+    }
+    return all;
+  }
+
+  /**
+   * Compiles every rule, reporting the rules that cannot be compiled to the collector.
+   *
+   * @return the expression of each rule that compiles, in the order of the rules.
+   */
+  List<Expression> compile(List<Rule> rules, FailureCollector collector) {
+    List<Expression> expressions = new ArrayList<>();
+    for (Rule rule : rules) {
+      Expression expression = new Expression(AssertTransformPlugin.FUNCTIONS, getEngine());
+      try {
+        expression.create(rule.getExpression());
+        expression.validate();
+      } catch (ExpressionException e) {
+        collector.addFailure(String.format("Error encountered while compiling the rule '%s' : %s",
+            rule.getName(), e.getMessage()), null).withConfigProperty(FIELD_RULES);
+        continue;
+      }
+      for (List<String> variable : expression.getVariables()) {
+        if (VariableType.fromString(variable.get(0)) == VariableType.AGGREGATE) {
+          collector.addFailure(String.format("Rule '%s' references the aggregate '%s' that is not available " +
+              "to this stage.", rule.getName(), variable.get(1)), "Use an 'AssertCompute' stage with aggregates " +
+              "instead.").withConfigProperty(FIELD_RULES);
+        }
+      }
+      expressions.add(expression);
+    }
+    return expressions;
+  }
+
+  /**
+   * @return true if the inline rules can be compiled when the pipeline is configured.
+   */
+  public boolean canCompileRules() {
+    return !containsMacro(FIELD_RULES);
+  }
+
+  public void validate() throws IllegalArgumentException {
+    if ((this.rules == null || this.rules.isEmpty()) && !hasRulesFile()
+        && !containsMacro(FIELD_RULES) && !containsMacro(FIELD_RULES_FILE)) {
+      throw new IllegalArgumentException("At least one rule or a rules file must be specified.");
+    }
+    if (!containsMacro(FIELD_RULES)) {
+      getRules(null);
+    }
+    if (this.engine != null && !this.engine.isEmpty()) {
+      Engine.fromString(this.engine);
+    }
+    if (this.failurePolicy != null && !this.failurePolicy.isEmpty()) {
+      FailurePolicy.fromString(this.failurePolicy);
+    }
+    if (getFailurePolicy().hasThreshold() && !containsMacro(FIELD_FAILURE_THRESHOLD)) {
+      getFailurePolicy().checkThreshold(this.failureThreshold);
+    }
+  }
+}
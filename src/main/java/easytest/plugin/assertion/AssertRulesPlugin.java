@@ -0,0 +1,295 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import io.cdap.cdap.etl.api.Arguments;
+import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.InvalidEntry;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageSubmitterContext;
+import io.cdap.cdap.etl.api.Transform;
+import io.cdap.cdap.etl.api.TransformContext;
+
+import easytest.expression.Expression;
+import easytest.expression.SharedPlan;
+
+import easytest.shared.FixtureState;
+import easytest.shared.SampledTimer;
+import easytest.shared.StageCounters;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Plugin(type = Transform.PLUGIN_TYPE)
+@Name(AssertRulesConfig.PLUGIN_NAME)
+@Description(AssertRulesConfig.PLUGIN_DESCRIPTION)
+public class AssertRulesPlugin extends Transform<StructuredRecord, StructuredRecord> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AssertRulesPlugin.class);
+
+  private static final String RULES_PREFIX = "easytest.rules.";
+
+  // one record out of 1024 is timed
+  private static final int TIMER_SAMPLE_SHIFT = 10;
+
+  private final AssertRulesConfig config;
+
+  private boolean enabled;
+  private String[] names;
+  // result of each rule that does not depend on the input, null for the others
+  private Boolean[] constants;
+  private SharedPlan plan;
+  private RecordContext recordContext;
+
+  private FailurePolicy failurePolicy;
+  private double failureThreshold;
+  private long evaluated = 0;
+  private long failed = 0;
+  private long[] ruleFailures;
+
+  private StageCounters counters;
+  private StageCounters.Counter evaluatedCounter;
+  private StageCounters.Counter passedCounter;
+  private StageCounters.Counter failedCounter;
+  private StageCounters.Counter skippedCounter;
+  private StageCounters.Counter[] ruleCounters;
+  private SampledTimer evaluationTimer;
+
+  public AssertRulesPlugin(AssertRulesConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * This function is called when the pipeline is published. The inline rules are compiled, rules
+   * read from a file are only compiled once the pipeline is prepared.
+   *
+   * @param pipelineConfigurer Configures an ETL Pipeline. Allows adding datasets
+   *                           and streams and storing parameters
+   * @throws IllegalArgumentException If the config is invalid.
+   */
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
+    super.configurePipeline(pipelineConfigurer);
+
+    Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(inputSchema);
+
+    this.config.validate();
+
+    FailureCollector collector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    if (this.config.canCompileRules()) {
+      this.config.compile(this.config.getRules(null), collector);
+    }
+    collector.getOrThrowException();
+  }
+
+  /**
+   * This function is called on the driver before the pipeline runs. The rules file is read here
+   * and published as a runtime argument, so executors do not need access to the file.
+   *
+   * @param context Context for the stage, providing access to the runtime arguments.
+   * @throws Exception If the rules file cannot be read or parsed.
+   */
+  @Override
+  public void prepareRun(StageSubmitterContext context) throws Exception {
+    super.prepareRun(context);
+
+    this.config.validate();
+    if (this.config.hasRulesFile()) {
+      String fileRules = this.config.readRulesFile();
+      this.config.getRules(fileRules);
+      context.getArguments().set(RULES_PREFIX + context.getStageName(), fileRules);
+    }
+  }
+
+  /**
+   * Compiles the rules into a single plan, whose shared sub-expressions and field reads are
+   * evaluated once per record for all the rules.
+   *
+   * @param context Context for a pipeline stage, providing access to information
+   *                about the stage, metrics, and plugins.
+   * @throws Exception If the rules cannot be read or compiled.
+   */
+  @Override
+  public void initialize(TransformContext context) throws Exception {
+    super.initialize(context);
+
+    this.config.validate();
+    this.failurePolicy = this.config.getFailurePolicy();
+    this.failureThreshold = this.config.getFailureThreshold();
+
+    Arguments arguments = context.getArguments();
+    String fileRules = null;
+    if (arguments.has(RULES_PREFIX + context.getStageName())) {
+      fileRules = arguments.get(RULES_PREFIX + context.getStageName());
+    } else if (this.config.hasRulesFile()) {
+      // not prepared by a driver, e.g. when the stage is run directly
+      fileRules = this.config.readRulesFile();
+    }
+    List<Rule> rules = this.config.getRules(fileRules);
+
+    FailureCollector collector = context.getFailureCollector();
+    List<Expression> expressions = this.config.compile(rules, collector);
+    collector.getOrThrowException();
+
+    Set<List<String>> variables = new HashSet<>();
+    for (Expression expression : expressions) {
+      variables.addAll(expression.getVariables());
+    }
+    Projection projection = Projection.of(context.getInputSchema(), variables);
+    if (!projection.missing().isEmpty()) {
+      LOG.warn("Rules ({}) reference fields that are not in the input schema: {}",
+          context.getStageName(), projection.missing());
+    }
+    this.recordContext = new RecordContext(projection);
+
+    this.names = new String[rules.size()];
+    this.constants = new Boolean[rules.size()];
+    this.ruleFailures = new long[rules.size()];
+    for (int i = 0; i < this.names.length; i++) {
+      this.names[i] = rules.get(i).getName();
+    }
+
+    this.counters = new StageCounters(context.getMetrics());
+    this.evaluatedCounter = this.counters.counter("assertion.evaluated");
+    this.passedCounter = this.counters.counter("assertion.passed");
+    this.failedCounter = this.counters.counter("assertion.failed");
+    this.skippedCounter = this.counters.counter("assertion.skipped");
+    this.evaluationTimer = this.counters.timer("assertion.evaluation.nanos", TIMER_SAMPLE_SHIFT);
+    this.ruleCounters = new StageCounters.Counter[rules.size()];
+    for (int i = 0; i < this.names.length; i++) {
+      this.ruleCounters[i] = this.counters.counter("rules." + StageCounters.metricName(this.names[i]) + ".failed");
+    }
+
+    this.enabled = FixtureState.isEnabled(context);
+    if (!this.enabled) {
+      LOG.warn("Rules ({}) have been disabled by a fixture.", context.getStageName());
+      return;
+    }
+
+    Bindings.resolve(context, variables).apply(this.recordContext);
+    for (int i = 0; i < this.names.length; i++) {
+      this.constants[i] = expressions.get(i).fold(this.recordContext);
+      if (Boolean.FALSE.equals(this.constants[i])) {
+        LOG.warn("Rule '{}' of ({}) never holds with the values of its fixtures and arguments.",
+            this.names[i], context.getStageName());
+        if (this.failurePolicy == FailurePolicy.FAIL_FAST) {
+          throw new IllegalStateException(
+              String.format("Rules (%s) Failed: %s", context.getStageName(), this.names[i]));
+        }
+      }
+    }
+    this.plan = SharedPlan.of(expressions);
+
+    LOG.info("Rules ({}) evaluate {} rules with {} shared sub-expressions, reading {} of {} input fields.",
+        context.getStageName(), this.plan.size(), this.plan.getSharedCount(), projection.size(), projection.width());
+  }
+
+  /**
+   * Evaluates every rule over the record. A record failing any rule is failed once, with the names
+   * of all the rules it fails.
+   *
+   * @param input   The record that is coming into the plugin
+   * @param emitter An emitter allowing you to emit one or more records to the
+   *                next stage
+   * @throws Exception
+   */
+  @Override
+  public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
+    if (!this.enabled) {
+      this.skippedCounter.increment();
+      this.counters.tick();
+      emitter.emit(input);
+      return;
+    }
+
+    StringBuilder failures = null;
+    boolean timed = this.evaluationTimer.sample();
+    long start = timed ? System.nanoTime() : 0;
+
+    this.plan.bind(this.recordContext.bind(input));
+    for (int i = 0; i < this.names.length; i++) {
+      boolean result = this.constants[i] != null ? this.constants[i] : this.plan.evaluateAsBoolean(i);
+      if (!result) {
+        this.ruleFailures[i]++;
+        this.ruleCounters[i].increment();
+        if (failures == null) {
+          failures = new StringBuilder(this.names[i]);
+        } else {
+          failures.append(", ").append(this.names[i]);
+        }
+      }
+    }
+
+    if (timed) {
+      this.evaluationTimer.record(System.nanoTime() - start);
+    }
+    this.evaluated++;
+    this.evaluatedCounter.increment();
+    this.counters.tick();
+
+    if (failures == null) {
+      this.passedCounter.increment();
+      emitter.emit(input);
+    } else {
+      this.failed++;
+      this.failedCounter.increment();
+      String message = String.format("Rules (%s) Failed: %s", getContext().getStageName(), failures);
+
+      if (this.failurePolicy == FailurePolicy.FAIL_FAST) {
+        LOG.warn(message);
+
+        this.counters.flush();
+        throw new IllegalStateException(message);
+      }
+
+      emitter.emitError(new InvalidEntry<>(AssertTransformPlugin.ASSERTION_FAILED, message, input));
+    }
+
+    // checked after passing records too, a ratio may already be exceeded when enough are evaluated
+    if (this.failurePolicy.isExceeded(this.failed, this.evaluated, this.failureThreshold)) {
+      this.counters.flush();
+      throw exceeded();
+    }
+  }
+
+  private IllegalStateException exceeded() {
+    LOG.warn("Rules ({}) Failed: {} of {} records failed", getContext().getStageName(), this.failed, this.evaluated);
+    return new IllegalStateException(
+        String.format("Rules (%s) Failed: %d of %d records failed, policy '%s'",
+            getContext().getStageName(), this.failed, this.evaluated, this.failurePolicy));
+  }
+
+  /**
+   * Reports the failures of each rule. The stage is not failed here, as the pipeline does not fail
+   * on an exception thrown once the records are processed.
+   */
+  @Override
+  public void destroy() {
+    if (this.counters != null) {
+      this.counters.flush();
+    }
+    if (getContext() == null || this.plan == null) {
+      return;
+    }
+    for (int i = 0; i < this.names.length; i++) {
+      if (this.ruleFailures[i] == 0) {
+        LOG.info("Rule '{}' of ({}) Passed ({} records evaluated)",
+            this.names[i], getContext().getStageName(), this.evaluated);
+      } else {
+        LOG.warn("Rule '{}' of ({}) Failed: {} of {} records failed",
+            this.names[i], getContext().getStageName(), this.ruleFailures[i], this.evaluated);
+      }
+    }
+  }
+}
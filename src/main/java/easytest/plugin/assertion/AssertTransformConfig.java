@@ -8,8 +8,15 @@ import io.cdap.cdap.api.plugin.PluginConfig;
 
 import io.cdap.cdap.etl.api.FailureCollector;
 
+import easytest.expression.Engine;
 import easytest.expression.Expression;
 import easytest.expression.ExpressionException;
+import easytest.expression.VariableType;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 public class AssertTransformConfig extends PluginConfig {
 
@@ -17,7 +24,10 @@ public class AssertTransformConfig extends PluginConfig {
   public static final String PLUGIN_DESCRIPTION = "A plugin to provide assertions for the transformations in the pipeline.";
 
   private static final String FIELD_DESCRIPTION = "description";
-  private static final String FIELD_EXPRESSION = "expression";
+  protected static final String FIELD_EXPRESSION = "expression";
+  private static final String FIELD_ENGINE = "engine";
+  private static final String FIELD_FAILURE_POLICY = "failure-policy";
+  private static final String FIELD_FAILURE_THRESHOLD = "failure-threshold";
 
   @Name(FIELD_DESCRIPTION)
   @Description("Specifies the name for this assertion.")
@@ -30,9 +40,83 @@ public class AssertTransformConfig extends PluginConfig {
   @Macro
   public final String expression;
 
-  public AssertTransformConfig(String description, String expression) {
+  @Name(FIELD_ENGINE)
+  @Description("Engine used to evaluate the expression. 'jexl' interprets the expression, 'compiled' " +
+      "compiles it into a tree of specialized nodes and falls back to 'jexl' for unsupported constructs. " +
+      "Collections of literals tested with '=~' and '!~' are compiled into sets, whose elements match values " +
+      "equal to them without coercion, as with 'jexl'. Only 'compiled' builds these sets: 'jexl' scans the " +
+      "collection on every evaluation, so large collections are slow with it.")
+  @Nullable
+  public final String engine;
+
+  @Name(FIELD_FAILURE_POLICY)
+  @Description("What to do with records that fail the assertion. 'fail-fast' fails the pipeline on the first " +
+      "failure. 'fail-after-n', 'fail-if-ratio-exceeds' and 'report-only' route failing records to the error " +
+      "port and only fail the pipeline once the failures exceed the threshold, or never for 'report-only'.")
+  @Nullable
+  public final String failurePolicy;
+
+  @Name(FIELD_FAILURE_THRESHOLD)
+  @Description("The number of failing records for 'fail-after-n', or the ratio of failing records between 0 " +
+      "and 1 for 'fail-if-ratio-exceeds'. Failures are counted by each partition, and a ratio is checked after " +
+      "every record once the partition evaluated 1000 records, a smaller partition never fails on it.")
+  @Nullable
+  @Macro
+  public final String failureThreshold;
+
+  public AssertTransformConfig(String description, String expression, String engine) {
+    this(description, expression, engine, null, null);
+  }
+
+  public AssertTransformConfig(String description, String expression, String engine, String failurePolicy,
+                               String failureThreshold) {
     this.description = description;
     this.expression = expression;
+    this.engine = engine;
+    this.failurePolicy = failurePolicy;
+    this.failureThreshold = failureThreshold;
+  }
+
+  public Engine getEngine() {
+    if (this.engine == null || this.engine.isEmpty()) {
+      return Engine.JEXL;
+    }
+    try {
+      return Engine.fromString(this.engine);
+    } catch (IllegalArgumentException e) {
+      // reported by validate()
+      return Engine.JEXL;
+    }
+  }
+
+  public FailurePolicy getFailurePolicy() {
+    if (this.failurePolicy == null || this.failurePolicy.isEmpty()) {
+      return FailurePolicy.FAIL_FAST;
+    }
+    try {
+      return FailurePolicy.fromString(this.failurePolicy);
+    } catch (IllegalArgumentException e) {
+      // reported by validate()
+      return FailurePolicy.FAIL_FAST;
+    }
+  }
+
+  public double getFailureThreshold() {
+    if (this.failureThreshold == null || this.failureThreshold.isEmpty()) {
+      return 0;
+    }
+    return Double.parseDouble(this.failureThreshold);
+  }
+
+  public boolean hasExpression() {
+    return containsMacro(FIELD_EXPRESSION) || (this.expression != null && !this.expression.isEmpty());
+  }
+
+  /**
+   * @return true if the stage needs an expression, false if it asserts something else without one.
+   */
+  protected boolean isExpressionRequired() {
+    return true;
   }
 
   public void compile(Expression exp, FailureCollector collector) {
@@ -46,6 +130,22 @@ public class AssertTransformConfig extends PluginConfig {
     } catch (ExpressionException e) {
       collector.addFailure(String.format("Error encountered while compiling the expression : %s",
           e.getMessage()), null).withConfigProperty(FIELD_EXPRESSION);
+      return;
+    }
+    checkVariables(exp.getVariables(), collector);
+  }
+
+  /**
+   * Checks that the variables of a valid expression are available to this stage. Aggregates are
+   * only computed by the 'AssertCompute' stage.
+   */
+  protected void checkVariables(Set<List<String>> variables, FailureCollector collector) {
+    for (List<String> variable : variables) {
+      if (VariableType.fromString(variable.get(0)) == VariableType.AGGREGATE) {
+        collector.addFailure(String.format("Expression references the aggregate '%s' that is not available " +
+            "to this stage.", variable.get(1)), "Use an 'AssertCompute' stage with aggregates instead.")
+            .withConfigProperty(FIELD_EXPRESSION);
+      }
     }
   }
 
@@ -54,9 +154,18 @@ public class AssertTransformConfig extends PluginConfig {
     if (this.description == null || this.description.isEmpty()) {
       throw new IllegalArgumentException("A description must be specified.");
     }
-    if (this.expression == null || this.expression.isEmpty()) {
+    if (isExpressionRequired() && !hasExpression()) {
       throw new IllegalArgumentException("An expression cannot be empty.");
     }
+    if (this.engine != null && !this.engine.isEmpty()) {
+      Engine.fromString(this.engine);
+    }
+    if (this.failurePolicy != null && !this.failurePolicy.isEmpty()) {
+      FailurePolicy.fromString(this.failurePolicy);
+    }
+    if (getFailurePolicy().hasThreshold() && !containsMacro(FIELD_FAILURE_THRESHOLD)) {
+      getFailurePolicy().checkThreshold(this.failureThreshold);
+    }
     // You can use the containsMacro() function to determine if you can validate at
     // deploy time or runtime.
     // If your plugin depends on fields from the input schema being present or the
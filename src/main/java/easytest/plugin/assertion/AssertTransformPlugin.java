@@ -7,24 +7,24 @@ import io.cdap.cdap.api.annotation.Plugin;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 
-import io.cdap.cdap.etl.api.Arguments;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.InvalidEntry;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.Transform;
 import io.cdap.cdap.etl.api.TransformContext;
 
 import easytest.expression.Global;
-import easytest.expression.ContextBuilder;
 import easytest.expression.Expression;
-import easytest.expression.ExpressionException;
-import easytest.expression.VariableType;
+import easytest.expression.ExpressionCache;
+import easytest.expression.Namespace;
 
+import easytest.shared.FixtureState;
+import easytest.shared.SampledTimer;
 import easytest.shared.SingletonSharedMap;
-import easytest.shared.Constants;
+import easytest.shared.StageCounters;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -37,30 +37,48 @@ public class AssertTransformPlugin extends Transform<StructuredRecord, Structure
 
   private static final Logger LOG = LoggerFactory.getLogger(AssertTransformPlugin.class);
 
-  private final AssertTransformConfig config;
+  static final int ASSERTION_FAILED = 1;
+
+  // one evaluation out of 1024 is timed
+  private static final int TIMER_SAMPLE_SHIFT = 10;
 
-  private final Expression expression = new Expression(() -> {
+  // shared by every instance so the compiled expression can be reused from the ExpressionCache
+  static final Namespace FUNCTIONS = () -> {
     Map<String, Object> functions = new HashMap<>();
     functions.put(null, Global.class);
     functions.put("math", Math.class);
     return functions;
-  });
+  };
 
-  private enum AssertionState {
-    DEFAULT,
-    ENABLED,
-    DISABLED
-  }
+  private final AssertTransformConfig config;
+
+  private final Expression expression;
 
-  private AssertionState state = AssertionState.DEFAULT;
+  private boolean enabled;
+  // result of the expression when it does not depend on the input, null otherwise
+  private Boolean constant;
+  private String failureMessage;
 
   private Schema inputSchema;
 
   private String assertionFixtureMapId;
-  private ContextBuilder builder;
+  private RecordContext recordContext;
+
+  private FailurePolicy failurePolicy;
+  private double failureThreshold;
+  private long evaluated = 0;
+  private long failed = 0;
+
+  private StageCounters counters;
+  private StageCounters.Counter evaluatedCounter;
+  private StageCounters.Counter passedCounter;
+  private StageCounters.Counter failedCounter;
+  private StageCounters.Counter skippedCounter;
+  private SampledTimer evaluationTimer;
 
   public AssertTransformPlugin(AssertTransformConfig config) {
     this.config = config;
+    this.expression = new Expression(FUNCTIONS, config.getEngine());
   }
 
   /**
@@ -104,13 +122,74 @@ public class AssertTransformPlugin extends Transform<StructuredRecord, Structure
     super.initialize(context);
 
     this.assertionFixtureMapId = SingletonSharedMap.getUniqueMapId(context, context.getStageName());
-    this.builder = new ContextBuilder();
+
+    this.config.validate();
+    this.failurePolicy = this.config.getFailurePolicy();
+    this.failureThreshold = this.config.getFailureThreshold();
 
     this.inputSchema = context.getInputSchema();
 
     FailureCollector collector = context.getFailureCollector();
     this.config.compile(this.expression, collector);
     collector.getOrThrowException();
+
+    if (this.expression.getFallbackReason() != null) {
+      LOG.info("Assertion ({}) is evaluated with JEXL, the expression could not be compiled: {}",
+          context.getStageName(), this.expression.getFallbackReason());
+    }
+
+    Projection projection = Projection.of(this.inputSchema, this.expression.getVariables());
+    if (!projection.missing().isEmpty()) {
+      LOG.warn("Assertion ({}) references fields that are not in the input schema: {}",
+          context.getStageName(), projection.missing());
+    }
+    LOG.info("Assertion ({}) reads {} of {} input fields.",
+        context.getStageName(), projection.size(), projection.width());
+    context.getMetrics().gauge("assertion.projected.fields", projection.size());
+    context.getMetrics().gauge("assertion.input.fields", projection.width());
+
+    this.recordContext = new RecordContext(projection);
+
+    this.counters = new StageCounters(context.getMetrics());
+    this.evaluatedCounter = this.counters.counter("assertion.evaluated");
+    this.passedCounter = this.counters.counter("assertion.passed");
+    this.failedCounter = this.counters.counter("assertion.failed");
+    this.skippedCounter = this.counters.counter("assertion.skipped");
+    this.evaluationTimer = this.counters.timer("assertion.evaluation.nanos", TIMER_SAMPLE_SHIFT);
+
+    this.failureMessage = String.format("Assertion (%s) Failed: %s", context.getStageName(), this.config.description);
+    this.enabled = FixtureState.isEnabled(context);
+    if (this.enabled) {
+      Bindings.resolve(context, this.expression.getVariables()).apply(this.recordContext);
+      this.constant = this.expression.fold(this.recordContext);
+      checkConstant(context.getStageName());
+    } else {
+      LOG.warn("Assertion ({}) has been disabled by a fixture.", context.getStageName());
+    }
+
+    ExpressionCache cache = ExpressionCache.getInstance();
+    LOG.debug("Expression cache: size={}, hits={}, misses={}, evictions={}",
+        cache.size(), cache.hitCount(), cache.missCount(), cache.evictionCount());
+  }
+
+  /**
+   * Reports an assertion whose result does not depend on the input, once its constant parts are
+   * folded. An assertion that always holds lets records through without evaluating them, one that
+   * never holds fails the stage right away when it fails fast.
+   */
+  private void checkConstant(String stageName) {
+    if (Boolean.TRUE.equals(this.constant)) {
+      LOG.info("Assertion ({}) always holds with the values of its fixtures and arguments, records are not " +
+          "evaluated.", stageName);
+    } else if (Boolean.FALSE.equals(this.constant)) {
+      LOG.warn("Assertion ({}) never holds with the values of its fixtures and arguments: {}",
+          stageName, this.expression.getText());
+      if (this.failurePolicy == FailurePolicy.FAIL_FAST) {
+        throw new IllegalStateException(this.failureMessage);
+      }
+    } else {
+      LOG.debug("Assertion ({}) is evaluated as: {}", stageName, this.expression.getText());
+    }
   }
 
   /**
@@ -125,94 +204,81 @@ public class AssertTransformPlugin extends Transform<StructuredRecord, Structure
    */
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
-    if (this.state == AssertionState.DEFAULT) {
-      if (SingletonSharedMap.getInstance().has(this.assertionFixtureMapId, Constants.ENABLED)) {
-        boolean enabled = SingletonSharedMap.getInstance().getBoolean(this.assertionFixtureMapId, Constants.ENABLED);
-        if (!enabled) {
-          LOG.warn("Assertion ({}) has been disabled by a fixture.", getContext().getStageName());
-          this.state = AssertionState.DISABLED;
-        } else {
-          this.state = AssertionState.ENABLED;
-        }
-      } else {
-        this.state = AssertionState.ENABLED;
-      }
-
-      if (this.state == AssertionState.ENABLED) {
-        this.setup(getContext());
-      }
-    }
-
-    if (this.state == AssertionState.DISABLED) {
+    if (!this.enabled) {
+      this.skippedCounter.increment();
+      this.counters.tick();
       emitter.emit(input);
       return;
     }
 
-    List<Schema.Field> fields = this.inputSchema.getFields();
-    if (fields != null) {
-      for (Schema.Field field : fields) {
-        this.builder.addVariable(VariableType.INPUT, field.getName(), input.get(field.getName()));
-      }
+    boolean assertionResult;
+    if (this.constant != null) {
+      assertionResult = this.constant;
+    } else if (this.evaluationTimer.sample()) {
+      long start = System.nanoTime();
+      assertionResult = this.expression.evaluateAsBoolean(this.recordContext.bind(input));
+      this.evaluationTimer.record(System.nanoTime() - start);
+    } else {
+      assertionResult = this.expression.evaluateAsBoolean(this.recordContext.bind(input));
     }
+    this.evaluated++;
+    this.evaluatedCounter.increment();
+    this.counters.tick();
 
-    boolean assertionResult = this.expression.evaluateAsBoolean(this.builder.build());
+    if (assertionResult) {
+      this.passedCounter.increment();
+      emitter.emit(input);
+    } else {
+      this.failed++;
+      this.failedCounter.increment();
 
-    if (!assertionResult) {
-      LOG.warn("Assertion ({}) Failed: {}", getContext().getStageName(), this.config.description);
+      if (this.failurePolicy == FailurePolicy.FAIL_FAST) {
+        LOG.warn("Assertion ({}) Failed: {}", getContext().getStageName(), this.config.description);
 
-      throw new IllegalStateException(
-          String.format("Assertion (%s) Failed: %s", getContext().getStageName(), this.config.description));
+        this.counters.flush();
+        throw new IllegalStateException(this.failureMessage);
+      }
+
+      emitter.emitError(new InvalidEntry<>(ASSERTION_FAILED, this.failureMessage, input));
     }
 
-    emitter.emit(input);
+    // checked after passing records too, a ratio may already be exceeded when enough are evaluated
+    if (this.failurePolicy.isExceeded(this.failed, this.evaluated, this.failureThreshold)) {
+      this.counters.flush();
+      throw exceeded();
+    }
+  }
+
+  private IllegalStateException exceeded() {
+    LOG.warn("Assertion ({}) Failed: {} ({} of {} records failed)",
+        getContext().getStageName(), this.config.description, this.failed, this.evaluated);
+    return new IllegalStateException(
+        String.format("Assertion (%s) Failed: %s (%d of %d records failed, policy '%s')",
+            getContext().getStageName(), this.config.description, this.failed, this.evaluated,
+            this.failurePolicy));
   }
 
   /**
    * This function will be called at the end of the pipeline. You can use it to
-   * clean up any variables or connections.
+   * clean up any variables or connections. Failures are only reported here, as the pipeline does
+   * not fail on an exception thrown once the records are processed.
    */
   @Override
   public void destroy() {
     SingletonSharedMap.getInstance().removeMap(this.assertionFixtureMapId);
-  }
+    if (this.counters != null) {
+      this.counters.flush();
+    }
 
-  private void setup(TransformContext context) throws ExpressionException {
-    for (List<String> variable : this.expression.getVariables()) {
-      try {
-        VariableType type = VariableType.fromString(variable.get(0));
-
-        switch (type) {
-          case INPUT:
-            break;
-          case GLOBAL:
-            this.builder
-                .addVariable(VariableType.GLOBAL, Constants.PIPELINE, context.getPipelineName())
-                .addVariable(VariableType.GLOBAL, Constants.NAMESPACE, context.getNamespace())
-                .addVariable(VariableType.GLOBAL, Constants.LOGICAL_START_TIME, context.getLogicalStartTime())
-                .addVariable(VariableType.GLOBAL, Constants.PLUGIN, context.getStageName());
-            break;
-          case RUNTIME:
-            Arguments arguments = context.getArguments();
-            if (!arguments.has(variable.get(1))) {
-              throw new ExpressionException(
-                  String.format("Expression includes a runtime argument '%s' that does not exist.", variable.get(1)));
-            }
-            this.builder.addVariable(VariableType.RUNTIME, variable.get(1), arguments.get(variable.get(1)));
-            break;
-          case TOKEN:
-            String fixture = variable.get(1);
-            Map<String, Object> values = SingletonSharedMap.getInstance()
-                .getMap(SingletonSharedMap.getUniqueMapId(context, fixture));
-            this.builder.addTokens(fixture, values);
-            break;
-          default:
-            break;
-        }
-      } catch (IllegalArgumentException e) {
-        throw new ExpressionException(
-            String.format("Invalid map variable '%s' specified. Valid map variables are " +
-                "'runtime', 'token', 'global', and 'input'.", variable.get(0)));
-      }
+    if (getContext() == null || this.failurePolicy == null || !this.enabled) {
+      return;
+    }
+    if (this.failed == 0) {
+      LOG.info("Assertion ({}) Passed: {} ({} records evaluated)",
+          getContext().getStageName(), this.config.description, this.evaluated);
+    } else {
+      LOG.warn("Assertion ({}) Failed: {} ({} of {} records failed and were routed to errors, policy '{}')",
+          getContext().getStageName(), this.config.description, this.failed, this.evaluated, this.failurePolicy);
     }
   }
 }
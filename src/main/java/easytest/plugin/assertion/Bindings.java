@@ -0,0 +1,100 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.etl.api.Arguments;
+import io.cdap.cdap.etl.api.StageContext;
+
+import easytest.expression.ExpressionException;
+import easytest.expression.VariableType;
+
+import easytest.shared.Constants;
+import easytest.shared.FixtureState;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The 'global', 'runtime' and 'token' values referenced by an expression, resolved once from the
+ * stage context. Tokens are read from the runtime arguments published by fixtures when the
+ * pipeline is prepared, see {@link FixtureState}. Bindings are serializable so they can be
+ * resolved on the driver and shipped to Spark executors along with the stage.
+ */
+final class Bindings implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final HashMap<String, Object> globals = new HashMap<>();
+  private final HashMap<String, Object> runtime = new HashMap<>();
+  private final HashMap<String, Map<String, Object>> tokens = new HashMap<>();
+
+  private Bindings() {
+    // no-op
+  }
+
+  static Bindings resolve(StageContext context, Set<List<String>> variables) throws ExpressionException {
+    Bindings bindings = new Bindings();
+
+    for (List<String> variable : variables) {
+      VariableType type;
+      try {
+        type = VariableType.fromString(variable.get(0));
+      } catch (IllegalArgumentException e) {
+        throw new ExpressionException(
+            String.format("Invalid map variable '%s' specified. Valid map variables are " +
+                "'runtime', 'token', 'global', 'input', and 'aggregate'.", variable.get(0)));
+      }
+
+      switch (type) {
+        case INPUT:
+        case AGGREGATE:
+          break;
+        case GLOBAL:
+          bindings.globals.put(Constants.PIPELINE, context.getPipelineName());
+          bindings.globals.put(Constants.NAMESPACE, context.getNamespace());
+          bindings.globals.put(Constants.LOGICAL_START_TIME, context.getLogicalStartTime());
+          bindings.globals.put(Constants.PLUGIN, context.getStageName());
+          break;
+        case RUNTIME:
+          Arguments arguments = context.getArguments();
+          if (!arguments.has(variable.get(1))) {
+            throw new ExpressionException(
+                String.format("Expression includes a runtime argument '%s' that does not exist.", variable.get(1)));
+          }
+          bindings.runtime.put(variable.get(1), arguments.get(variable.get(1)));
+          break;
+        case TOKEN:
+          String fixture = variable.get(1);
+          Map<String, Object> values = bindings.tokens.computeIfAbsent(fixture, name -> new HashMap<>());
+          Object value;
+          try {
+            value = FixtureState.getToken(context, fixture, variable.get(2));
+          } catch (IllegalArgumentException e) {
+            // a typed fixture value that does not parse
+            throw new ExpressionException(e.getMessage());
+          }
+          if (value != null) {
+            values.put(variable.get(2), value);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return bindings;
+  }
+
+  RecordContext apply(RecordContext context) {
+    for (Map.Entry<String, Object> entry : this.globals.entrySet()) {
+      context.addVariable(VariableType.GLOBAL, entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, Object> entry : this.runtime.entrySet()) {
+      context.addVariable(VariableType.RUNTIME, entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, Map<String, Object>> entry : this.tokens.entrySet()) {
+      context.addTokens(entry.getKey(), entry.getValue());
+    }
+    return context;
+  }
+}
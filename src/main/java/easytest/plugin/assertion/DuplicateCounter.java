@@ -0,0 +1,354 @@
+package easytest.plugin.assertion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Counts the keys seen more than once, given the 64-bit hashes of the keys. Hashes are held in an
+ * open-addressing table of primitive longs sized by a memory budget. When the table is full, its
+ * hashes are sorted and spilled to a run on local disk, and the runs are merged when the counts are
+ * requested, so the number of keys is only bounded by the disk.
+ *
+ * <p>A counter is used by a single task, over the hashes of one partition of the keys.</p>
+ */
+final class DuplicateCounter implements Closeable {
+
+  // at most this many runs are read at once, more are merged into fewer runs first
+  private static final int MERGE_WIDTH = 64;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // budgeted size of a repeated hash, kept in a map as repeats are expected to be rare
+  private static final int REPEAT_BYTES = 64;
+
+  private final int sampleSize;
+  private final long memoryBytes;
+
+  // zero marks an empty slot, so the hash zero is counted on its own
+  private final long[] table;
+  private final int mask;
+  private int size = 0;
+  private long zeros = 0;
+  // occurrences of the hashes seen more than once, the others were seen once
+  private final Map<Long, Long> repeats = new HashMap<>();
+
+  private final List<File> runs = new ArrayList<>();
+
+  /**
+   * @param memoryBytes budget of the table and of the repeated hashes, in bytes.
+   * @param sampleSize  number of duplicated hashes to keep as examples.
+   */
+  DuplicateCounter(long memoryBytes, int sampleSize) {
+    // three quarters of the budget go to the table, the rest to the repeated hashes
+    long slots = Long.highestOneBit(Math.max(16L, Math.min(memoryBytes / 4 * 3 / Long.BYTES, 1L << 30)));
+    this.table = new long[(int) slots];
+    this.mask = this.table.length - 1;
+    this.memoryBytes = memoryBytes;
+    this.sampleSize = sampleSize;
+  }
+
+  void add(long hash) throws IOException {
+    if (hash == 0) {
+      this.zeros++;
+      return;
+    }
+    int slot = (int) hash & this.mask;
+    while (this.table[slot] != 0) {
+      if (this.table[slot] == hash) {
+        this.repeats.merge(hash, 2L, (count, one) -> count + 1);
+        if (isFull()) {
+          spill();
+        }
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+    this.table[slot] = hash;
+    this.size++;
+    if (isFull()) {
+      spill();
+    }
+  }
+
+  /**
+   * Merges the spilled runs with the hashes in memory, the counter cannot be used afterwards.
+   *
+   * @return the duplicates among the hashes added.
+   */
+  Summary summarize() throws IOException {
+    Summary summary = new Summary(this.sampleSize);
+    if (this.zeros > 1) {
+      summary.add(0L, this.zeros);
+    }
+
+    if (this.runs.isEmpty()) {
+      for (Map.Entry<Long, Long> repeat : this.repeats.entrySet()) {
+        summary.add(repeat.getKey(), repeat.getValue());
+      }
+      return summary;
+    }
+
+    spill();
+    while (this.runs.size() > MERGE_WIDTH) {
+      List<File> group = new ArrayList<>(this.runs.subList(0, MERGE_WIDTH));
+      this.runs.removeAll(group);
+      File merged = newRun();
+      try (DataOutputStream out = writer(merged)) {
+        merge(group, (hash, count) -> {
+          out.writeLong(hash);
+          out.writeLong(count);
+        });
+      }
+      delete(group);
+      this.runs.add(merged);
+    }
+    merge(this.runs, (hash, count) -> {
+      if (count > 1) {
+        summary.add(hash, count);
+      }
+    });
+    return summary;
+  }
+
+  @Override
+  public void close() {
+    delete(this.runs);
+    this.runs.clear();
+  }
+
+  private boolean isFull() {
+    // the table is kept at most half full
+    return this.size > this.table.length / 2 || (long) this.repeats.size() * REPEAT_BYTES > this.memoryBytes / 4;
+  }
+
+  /**
+   * Writes the hashes in memory to a new run, sorted, along with their number of occurrences.
+   */
+  private void spill() throws IOException {
+    int count = 0;
+    for (int slot = 0; slot < this.table.length; slot++) {
+      if (this.table[slot] != 0) {
+        this.table[count++] = this.table[slot];
+      }
+    }
+    Arrays.sort(this.table, 0, count);
+
+    File run = newRun();
+    this.runs.add(run);
+    try (DataOutputStream out = writer(run)) {
+      for (int i = 0; i < count; i++) {
+        long hash = this.table[i];
+        Long repeated = this.repeats.get(hash);
+        out.writeLong(hash);
+        out.writeLong(repeated == null ? 1L : repeated);
+      }
+    }
+
+    Arrays.fill(this.table, 0L);
+    this.size = 0;
+    this.repeats.clear();
+  }
+
+  /**
+   * Merges sorted runs, passing every distinct hash to the consumer along with its total count.
+   */
+  private static void merge(List<File> files, HashConsumer consumer) throws IOException {
+    List<Run> runs = new ArrayList<>();
+    PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, files.size()),
+        (a, b) -> Long.compare(a.hash, b.hash));
+    try {
+      for (File file : files) {
+        Run run = new Run(file);
+        runs.add(run);
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        Run run = queue.poll();
+        long hash = run.hash;
+        long count = run.count;
+        if (run.next()) {
+          queue.add(run);
+        }
+        while (!queue.isEmpty() && queue.peek().hash == hash) {
+          Run same = queue.poll();
+          count += same.count;
+          if (same.next()) {
+            queue.add(same);
+          }
+        }
+        consumer.accept(hash, count);
+      }
+    } finally {
+      for (Run run : runs) {
+        run.close();
+      }
+    }
+  }
+
+  private static File newRun() throws IOException {
+    return Files.createTempFile("easytest-unique-", ".run").toFile();
+  }
+
+  private static DataOutputStream writer(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE));
+  }
+
+  private static void delete(List<File> files) {
+    for (File file : files) {
+      if (!file.delete()) {
+        file.deleteOnExit();
+      }
+    }
+  }
+
+  private interface HashConsumer {
+    void accept(long hash, long count) throws IOException;
+  }
+
+  /**
+   * A sorted run being read, positioned on its current hash.
+   */
+  private static final class Run implements Closeable {
+
+    private final DataInputStream in;
+    private long remaining;
+
+    long hash;
+    long count;
+
+    Run(File file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+      this.remaining = file.length() / (2 * Long.BYTES);
+    }
+
+    boolean next() throws IOException {
+      if (this.remaining == 0) {
+        return false;
+      }
+      this.remaining--;
+      this.hash = this.in.readLong();
+      this.count = this.in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+  }
+
+  /**
+   * The duplicates found by one or more counters: the number of keys seen more than once, the
+   * number of records beyond the first of each of these keys, and the hashes of a few of the keys.
+   * As the hashes of distinct keys may collide, the duplicates of the sampled hashes can be
+   * confirmed by counting the records of their keys.
+   */
+  static final class Summary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int sampleSize;
+    private long keys = 0;
+    private long records = 0;
+    private final List<Long> samples = new ArrayList<>();
+
+    // keys confirmed to be duplicated, and sampled hashes only shared by distinct keys
+    private long confirmed = 0;
+    private long collisions = 0;
+
+    Summary(int sampleSize) {
+      this.sampleSize = sampleSize;
+    }
+
+    void add(long hash, long count) {
+      this.keys++;
+      this.records += count - 1;
+      if (this.samples.size() < this.sampleSize) {
+        this.samples.add(hash);
+      }
+    }
+
+    Summary merge(Summary other) {
+      this.keys += other.keys;
+      this.records += other.records;
+      for (Long hash : other.samples) {
+        if (this.samples.size() < this.sampleSize) {
+          this.samples.add(hash);
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Replaces the counts of the sampled hashes with the counts of the distinct keys having them.
+     *
+     * @param keyCounts number of records of each key whose hash is sampled, by hash and then by key.
+     * @return the keys confirmed to be seen more than once.
+     */
+    List<String> confirm(Map<Long, Map<String, Long>> keyCounts) {
+      List<String> duplicated = new ArrayList<>();
+      for (Long hash : this.samples) {
+        Map<String, Long> counts = keyCounts.get(hash);
+        if (counts == null) {
+          continue;
+        }
+        long total = 0;
+        int before = duplicated.size();
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+          total += count.getValue();
+          if (count.getValue() > 1) {
+            this.records += count.getValue() - 1;
+            duplicated.add(count.getKey());
+          }
+        }
+        this.keys += duplicated.size() - before - 1;
+        this.records -= total - 1;
+        this.confirmed += duplicated.size() - before;
+        if (duplicated.size() == before) {
+          this.collisions++;
+        }
+      }
+      return duplicated;
+    }
+
+    long keys() {
+      return this.keys;
+    }
+
+    long records() {
+      return this.records;
+    }
+
+    List<Long> samples() {
+      return this.samples;
+    }
+
+    /**
+     * @return the number of sampled hashes that turned out to be shared by distinct keys only.
+     */
+    long collisions() {
+      return this.collisions;
+    }
+
+    /**
+     * @return the number of duplicated keys only known by their hashes, as they were not sampled.
+     */
+    long unconfirmed() {
+      return this.keys - this.confirmed;
+    }
+  }
+}
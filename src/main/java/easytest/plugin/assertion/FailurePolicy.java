@@ -0,0 +1,89 @@
+package easytest.plugin.assertion;
+
+/**
+ * What an assertion does with records that do not satisfy its expression. Every policy other than
+ * {@link #FAIL_FAST} routes failing records to the error port of the stage, and only fails the
+ * pipeline once the failures exceed the configured threshold.
+ */
+public enum FailurePolicy {
+  FAIL_FAST("fail-fast"),
+  FAIL_AFTER_N("fail-after-n"),
+  FAIL_IF_RATIO_EXCEEDS("fail-if-ratio-exceeds"),
+  REPORT_ONLY("report-only");
+
+  /**
+   * Number of records a partition evaluates before its failure ratio is checked. Each instance of a
+   * stage processes one partition and only knows its own records, so the ratio is that of the
+   * records the partition evaluated so far, and a partition with fewer records never fails on it.
+   */
+  public static final long MINIMUM_RECORDS = 1000;
+
+  public static FailurePolicy fromString(String value) {
+    for (FailurePolicy policy : values()) {
+      if (policy.identifier.equalsIgnoreCase(value)) {
+        return policy;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unknown failure policy: %s", value));
+  }
+
+  private final String identifier;
+
+  FailurePolicy(String identifier) {
+    this.identifier = identifier;
+  }
+
+  /**
+   * @return true if the policy requires a threshold.
+   */
+  public boolean hasThreshold() {
+    return this == FAIL_AFTER_N || this == FAIL_IF_RATIO_EXCEEDS;
+  }
+
+  /**
+   * @param value threshold as configured, empty if none is specified.
+   * @throws IllegalArgumentException if the threshold is not valid for the policy.
+   */
+  public void checkThreshold(String value) throws IllegalArgumentException {
+    double threshold;
+    try {
+      threshold = value == null || value.isEmpty() ? 0 : Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("The failure threshold '%s' is not a number.", value));
+    }
+
+    if (this == FAIL_AFTER_N && (threshold < 1 || threshold != Math.floor(threshold))) {
+      throw new IllegalArgumentException("The failure threshold of 'fail-after-n' must be a positive integer.");
+    }
+    if (this == FAIL_IF_RATIO_EXCEEDS && (threshold < 0 || threshold >= 1)) {
+      throw new IllegalArgumentException(
+          "The failure threshold of 'fail-if-ratio-exceeds' must be a ratio between 0 and 1.");
+    }
+  }
+
+  /**
+   * Checks the failures while records are processed, after every record. The stage can only fail
+   * from there: an exception thrown once the partition is processed is not reported by the pipeline.
+   *
+   * @param failures  number of records that failed the assertion so far.
+   * @param evaluated number of records evaluated so far.
+   * @param threshold number of failures, or ratio of failures, that is tolerated.
+   * @return true if the pipeline should fail.
+   */
+  public boolean isExceeded(long failures, long evaluated, double threshold) {
+    switch (this) {
+      case FAIL_FAST:
+        return failures > 0;
+      case FAIL_AFTER_N:
+        return failures >= threshold;
+      case FAIL_IF_RATIO_EXCEEDS:
+        return evaluated >= MINIMUM_RECORDS && (double) failures / evaluated > threshold;
+      default:
+        return false;
+    }
+  }
+
+  public String toString() {
+    return this.identifier;
+  }
+}
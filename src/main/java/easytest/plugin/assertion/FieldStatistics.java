@@ -0,0 +1,193 @@
+package easytest.plugin.assertion;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Streaming statistics of the values of one field: counts, exact sums, extremes, and the mean and
+ * variance computed with Welford's algorithm. Statistics of different partitions are combined with
+ * {@link #merge(FieldStatistics)}, so the memory used does not depend on the number of records.
+ */
+final class FieldStatistics implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private long count = 0;
+  private long nulls = 0;
+
+  // integral values are summed exactly, moving to a decimal sum when a long would overflow
+  private long integralSum = 0;
+  private BigDecimal exactSum = null;
+  private boolean decimal = false;
+
+  // floating point values use Kahan summation to bound the rounding error
+  private double floatingSum = 0;
+  private double compensation = 0;
+  private boolean floating = false;
+
+  private Object min = null;
+  private Object max = null;
+
+  private long numeric = 0;
+  private double mean = 0;
+  private double m2 = 0;
+
+  void add(Object value) {
+    if (value == null) {
+      this.nulls++;
+      return;
+    }
+    this.count++;
+
+    if (this.min == null || compare(value, this.min) < 0) {
+      this.min = value;
+    }
+    if (this.max == null || compare(value, this.max) > 0) {
+      this.max = value;
+    }
+
+    if (!(value instanceof Number)) {
+      return;
+    }
+    Number number = (Number) value;
+    if (number instanceof BigDecimal) {
+      this.decimal = true;
+      addExact((BigDecimal) number);
+    } else if (number instanceof Double || number instanceof Float) {
+      this.floating = true;
+      addFloating(number.doubleValue());
+    } else {
+      addIntegral(number.longValue());
+    }
+
+    double x = number.doubleValue();
+    this.numeric++;
+    double delta = x - this.mean;
+    this.mean += delta / this.numeric;
+    this.m2 += delta * (x - this.mean);
+  }
+
+  FieldStatistics merge(FieldStatistics other) {
+    this.count += other.count;
+    this.nulls += other.nulls;
+
+    addIntegral(other.integralSum);
+    if (other.exactSum != null) {
+      addExact(other.exactSum);
+    }
+    this.decimal |= other.decimal;
+    if (other.floating) {
+      this.floating = true;
+      addFloating(other.floatingSum);
+      addFloating(-other.compensation);
+    }
+
+    if (other.min != null && (this.min == null || compare(other.min, this.min) < 0)) {
+      this.min = other.min;
+    }
+    if (other.max != null && (this.max == null || compare(other.max, this.max) > 0)) {
+      this.max = other.max;
+    }
+
+    if (other.numeric > 0) {
+      long total = this.numeric + other.numeric;
+      double delta = other.mean - this.mean;
+      this.mean += delta * other.numeric / total;
+      this.m2 += other.m2 + delta * delta * ((double) this.numeric * other.numeric / total);
+      this.numeric = total;
+    }
+    return this;
+  }
+
+  long count() {
+    return this.count;
+  }
+
+  long nulls() {
+    return this.nulls;
+  }
+
+  Object min() {
+    return this.min;
+  }
+
+  Object max() {
+    return this.max;
+  }
+
+  /**
+   * @return the sum as a Long for integral fields, a BigDecimal for decimal fields or when a long
+   *         would overflow, a Double for floating point fields, or null if there were no values.
+   */
+  Object sum() {
+    if (this.numeric == 0) {
+      return null;
+    }
+    if (this.floating) {
+      double exact = this.exactSum == null ? this.integralSum : this.exactSum.doubleValue() + this.integralSum;
+      return exact + this.floatingSum - this.compensation;
+    }
+    if (this.exactSum != null || this.decimal) {
+      BigDecimal sum = BigDecimal.valueOf(this.integralSum);
+      return this.exactSum == null ? sum : this.exactSum.add(sum);
+    }
+    return this.integralSum;
+  }
+
+  Double mean() {
+    return this.numeric == 0 ? null : this.mean;
+  }
+
+  /**
+   * @return the sample variance, or null if there are less than two values.
+   */
+  Double variance() {
+    return this.numeric < 2 ? null : this.m2 / (this.numeric - 1);
+  }
+
+  private void addIntegral(long value) {
+    try {
+      this.integralSum = Math.addExact(this.integralSum, value);
+    } catch (ArithmeticException e) {
+      addExact(BigDecimal.valueOf(this.integralSum));
+      this.integralSum = value;
+    }
+  }
+
+  private void addExact(BigDecimal value) {
+    this.exactSum = this.exactSum == null ? value : this.exactSum.add(value);
+  }
+
+  private void addFloating(double value) {
+    double y = value - this.compensation;
+    double t = this.floatingSum + y;
+    this.compensation = (t - this.floatingSum) - y;
+    this.floatingSum = t;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object left, Object right) {
+    if (left instanceof Number && right instanceof Number) {
+      if (left instanceof BigDecimal || right instanceof BigDecimal) {
+        return toBigDecimal((Number) left).compareTo(toBigDecimal((Number) right));
+      }
+      if (left instanceof Double || left instanceof Float || right instanceof Double || right instanceof Float) {
+        return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+      }
+      return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+    }
+    if (left instanceof Comparable && left.getClass() == right.getClass()) {
+      return ((Comparable<Object>) left).compareTo(right);
+    }
+    return left.toString().compareTo(right.toString());
+  }
+
+  private static BigDecimal toBigDecimal(Number number) {
+    if (number instanceof BigDecimal) {
+      return (BigDecimal) number;
+    } else if (number instanceof Double || number instanceof Float) {
+      return BigDecimal.valueOf(number.doubleValue());
+    }
+    return BigDecimal.valueOf(number.longValue());
+  }
+}
@@ -0,0 +1,93 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import easytest.expression.VariableType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The subset of input fields referenced by an expression, resolved against the input schema once
+ * when the stage is initialized. Fields are kept in schema order; {@link #slot(Object)} maps a field
+ * name to its position in the projection. Records only give access to their fields by name, so the
+ * fields are read by the names of the projection.
+ */
+final class Projection {
+
+  private final String[] names;
+  private final Map<String, Integer> slots;
+  private final List<String> missing;
+  private final int width;
+
+  private Projection(String[] names, List<String> missing, int width) {
+    this.names = names;
+    this.missing = Collections.unmodifiableList(missing);
+    this.width = width;
+
+    this.slots = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      this.slots.put(names[i], i);
+    }
+  }
+
+  /**
+   * Builds the projection of the given schema for the variables of an expression.
+   *
+   * @param schema    input schema, may be null if it is not known until runtime.
+   * @param variables variables referenced by the expression.
+   * @return projection containing only the referenced input fields.
+   */
+  static Projection of(Schema schema, Set<List<String>> variables) {
+    Set<String> referenced = new LinkedHashSet<>();
+    for (List<String> variable : variables) {
+      if (variable.size() > 1 && VariableType.INPUT.toString().equalsIgnoreCase(variable.get(0))) {
+        referenced.add(variable.get(1));
+      }
+    }
+
+    List<Schema.Field> fields = schema == null ? null : schema.getFields();
+    if (fields == null) {
+      // without a schema every referenced field is kept, in the order it was referenced
+      String[] names = referenced.toArray(new String[0]);
+      return new Projection(names, new ArrayList<String>(), names.length);
+    }
+
+    List<String> names = new ArrayList<>();
+    for (Schema.Field field : fields) {
+      if (referenced.remove(field.getName())) {
+        names.add(field.getName());
+      }
+    }
+    return new Projection(names.toArray(new String[0]), new ArrayList<>(referenced), fields.size());
+  }
+
+  int size() {
+    return this.names.length;
+  }
+
+  int width() {
+    return this.width;
+  }
+
+  String name(int slot) {
+    return this.names[slot];
+  }
+
+  int slot(Object name) {
+    Integer slot = this.slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * @return fields referenced by the expression that do not exist in the input schema.
+   */
+  List<String> missing() {
+    return this.missing;
+  }
+}
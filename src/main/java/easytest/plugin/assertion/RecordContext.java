@@ -0,0 +1,143 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+
+import org.apache.commons.jexl3.JexlContext;
+
+import easytest.expression.VariableType;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A JEXL context that is created once per stage and re-bound to every record. The 'input' map is
+ * a view over the bound record restricted to the {@link Projection} of the expression, so binding
+ * a record does not copy any values or allocate any maps.
+ */
+final class RecordContext implements JexlContext {
+
+  private final Map<String, Object> roots = new HashMap<>();
+
+  private final InputView input;
+  private final Map<String, Object> globals = new HashMap<>();
+  private final Map<String, Object> runtime = new HashMap<>();
+  private final Map<String, Map<String, Object>> tokens = new HashMap<>();
+  private final Map<String, Object> aggregates = new HashMap<>();
+
+  RecordContext(Projection projection) {
+    this.input = new InputView(projection);
+
+    this.roots.put(VariableType.INPUT.toString(), this.input);
+    this.roots.put(VariableType.GLOBAL.toString(), this.globals);
+    this.roots.put(VariableType.RUNTIME.toString(), this.runtime);
+    this.roots.put(VariableType.TOKEN.toString(), this.tokens);
+    this.roots.put(VariableType.AGGREGATE.toString(), this.aggregates);
+  }
+
+  RecordContext addVariable(VariableType type, String name, Object value) {
+    switch (type) {
+      case GLOBAL:
+        this.globals.put(name, value);
+        break;
+      case RUNTIME:
+        this.runtime.put(name, value);
+        break;
+      case AGGREGATE:
+        this.aggregates.put(name, value);
+        break;
+      default:
+        break;
+    }
+    return this;
+  }
+
+  RecordContext addTokens(String key, Map<String, Object> values) {
+    this.tokens.put(key, values);
+    return this;
+  }
+
+  RecordContext bind(StructuredRecord record) {
+    this.input.record = record;
+    return this;
+  }
+
+  @Override
+  public Object get(String name) {
+    return this.roots.get(name);
+  }
+
+  @Override
+  public void set(String name, Object value) {
+    throw new UnsupportedOperationException("Assertion expressions cannot assign variables.");
+  }
+
+  @Override
+  public boolean has(String name) {
+    return this.roots.containsKey(name);
+  }
+
+  private static final class InputView extends AbstractMap<String, Object> {
+
+    private final Projection projection;
+    private StructuredRecord record;
+
+    InputView(Projection projection) {
+      this.projection = projection;
+    }
+
+    @Override
+    public Object get(Object key) {
+      int slot = this.projection.slot(key);
+      if (slot < 0 || this.record == null) {
+        return null;
+      }
+      return this.record.get(this.projection.name(slot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return this.projection.slot(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+      return this.projection.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new Iterator<Entry<String, Object>>() {
+            private int slot = 0;
+
+            @Override
+            public boolean hasNext() {
+              return slot < projection.size();
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              String name = projection.name(slot++);
+              return new SimpleImmutableEntry<>(name, get(name));
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return projection.size();
+        }
+      };
+    }
+  }
+}
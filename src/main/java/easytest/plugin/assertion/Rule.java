@@ -0,0 +1,57 @@
+package easytest.plugin.assertion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A named assertion of a rule set. Rules are written one per line as '&lt;name&gt;: &lt;expression&gt;',
+ * the name ends at the first colon so expressions can still use function namespaces and the
+ * ternary operator. Blank lines and lines starting with '#' are ignored.
+ */
+final class Rule {
+
+  private final String name;
+  private final String expression;
+
+  Rule(String name, String expression) {
+    this.name = name;
+    this.expression = expression;
+  }
+
+  String getName() {
+    return this.name;
+  }
+
+  String getExpression() {
+    return this.expression;
+  }
+
+  /**
+   * @param text rules, one per line.
+   * @return the rules in the order they are written.
+   * @throws IllegalArgumentException if a line is not a rule.
+   */
+  static List<Rule> parse(String text) throws IllegalArgumentException {
+    List<Rule> rules = new ArrayList<>();
+    if (text == null) {
+      return rules;
+    }
+
+    String[] lines = text.split("\r?\n");
+    for (int i = 0; i < lines.length; i++) {
+      String line = lines[i].trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      int separator = line.indexOf(':');
+      String name = separator < 0 ? "" : line.substring(0, separator).trim();
+      String expression = separator < 0 ? "" : line.substring(separator + 1).trim();
+      if (name.isEmpty() || expression.isEmpty()) {
+        throw new IllegalArgumentException(
+            String.format("Rule on line %d must be written as '<name>: <expression>'.", i + 1));
+      }
+      rules.add(new Rule(name, expression));
+    }
+    return rules;
+  }
+}
@@ -0,0 +1,98 @@
+package easytest.plugin.assertion;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import easytest.shared.Hashing;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fields that together must be unique across the records, read from each record as a 64-bit
+ * hash. Equal keys hash equally on every executor, so hashes can be shuffled and compared.
+ */
+final class UniqueKey implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+  private final String[] fields;
+  private final boolean[] decimals;
+
+  /**
+   * @param fields the fields of the key.
+   * @param schema input schema, or null if it is not known.
+   */
+  UniqueKey(List<String> fields, Schema schema) {
+    this.fields = fields.toArray(new String[0]);
+    this.decimals = new boolean[this.fields.length];
+    for (int i = 0; i < this.fields.length; i++) {
+      Schema.Field field = schema == null ? null : schema.getField(this.fields[i]);
+      if (field != null) {
+        Schema fieldSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+        this.decimals[i] = fieldSchema.getLogicalType() == Schema.LogicalType.DECIMAL;
+      }
+    }
+  }
+
+  /**
+   * @return false if a field of the key is null, such keys are not checked for uniqueness.
+   */
+  boolean isComplete(StructuredRecord record) {
+    for (String field : this.fields) {
+      if (record.get(field) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long hash(StructuredRecord record) {
+    long hash = 0;
+    for (int i = 0; i < this.fields.length; i++) {
+      hash = Hashing.mix(hash * MULTIPLIER + Hashing.hash(value(record, i)));
+    }
+    return hash;
+  }
+
+  /**
+   * @return the values of the key in the record, for reporting. Strings are quoted and bytes are
+   *         written out, so distinct keys are described differently and can be told apart when
+   *         their hashes collide.
+   */
+  String describe(StructuredRecord record) {
+    List<String> values = new ArrayList<>(this.fields.length);
+    for (int i = 0; i < this.fields.length; i++) {
+      values.add(describe(value(record, i)));
+    }
+    return values.toString();
+  }
+
+  @Override
+  public String toString() {
+    return String.join(", ", this.fields);
+  }
+
+  private static String describe(Object value) {
+    if (value instanceof CharSequence) {
+      return "'" + value.toString().replace("\\", "\\\\").replace("'", "\\'") + "'";
+    } else if (value instanceof byte[]) {
+      return Arrays.toString((byte[]) value);
+    } else if (value instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return Arrays.toString(bytes);
+    }
+    return String.valueOf(value);
+  }
+
+  private Object value(StructuredRecord record, int index) {
+    return this.decimals[index] ? record.getDecimal(this.fields[index]) : record.get(this.fields[index]);
+  }
+}
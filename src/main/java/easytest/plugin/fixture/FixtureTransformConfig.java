@@ -6,8 +6,17 @@ import io.cdap.cdap.api.annotation.Macro;
 
 import io.cdap.cdap.api.plugin.PluginConfig;
 
+import easytest.shared.Constants;
+import easytest.shared.FixtureValueType;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
+import com.google.common.base.Splitter;
+
 public class FixtureTransformConfig extends PluginConfig {
 
   public static final String PLUGIN_NAME = "FixtureTransform";
@@ -15,6 +24,7 @@ public class FixtureTransformConfig extends PluginConfig {
 
   private static final String FIELD_NAME = "name";
   private static final String FIELD_FIXTURE_VALUES = "fixture-values";
+  private static final String FIELD_FIXTURE_TYPES = "fixture-types";
   private static final String FIELD_ASSERTION_CONTROL = "assertion-control";
 
   @Name(FIELD_NAME)
@@ -23,27 +33,127 @@ public class FixtureTransformConfig extends PluginConfig {
   public final String name;
 
   @Name(FIELD_FIXTURE_VALUES)
-  @Description("A set of shared key-value pairs for this fixture. These will be available to use in assertions following this fixture.")
+  @Description("A set of shared key-value pairs for this fixture. These will be available to use in assertions following this fixture. " +
+      "Keys end at the first ':', so values can contain ':' but not ','.")
   @Nullable
   @Macro
   public final String fixtureValues;
 
+  @Name(FIELD_FIXTURE_TYPES)
+  @Description("Types of the fixture values, by key: string, int, long, double, decimal, boolean, timestamp, " +
+      "list, lookup or lookup-bloom. Values are parsed once when the stages are initialized, values without a " +
+      "type are strings. Timestamps are ISO-8601 instants (2024-01-01T00:00:00Z), offset date-times " +
+      "(2024-01-01T00:00:00+02:00) or dates (2024-01-01), read as microseconds since the epoch, list elements are " +
+      "separated by ';'. Lookups are paths of local files with one key per line, optionally followed by a tab " +
+      "and a value, loaded off the heap for the 'contains' and 'lookup' functions; lookup-bloom adds a Bloom " +
+      "filter that speeds up lookups of absent keys.")
+  @Nullable
+  public final String fixtureTypes;
+
   @Name(FIELD_ASSERTION_CONTROL)
   @Description("Enable or disable assertions following this fixture in the pipeline.")
   @Nullable
   public final String assertionControl;
 
   public FixtureTransformConfig(String name, String fixtureValues, String assertionControl) {
+    this(name, fixtureValues, null, assertionControl);
+  }
+
+  public FixtureTransformConfig(String name, String fixtureValues, String fixtureTypes, String assertionControl) {
     this.name = name;
     this.fixtureValues = fixtureValues;
+    this.fixtureTypes = fixtureTypes;
     this.assertionControl = assertionControl;
   }
 
+  /**
+   * @return the key-value pairs of the fixture, empty if none are specified. Each pair is split on
+   *         its first ':', so values such as timestamps with a time of day can contain ':'.
+   */
+  public Map<String, String> getFixtureValues() {
+    if (this.fixtureValues == null || this.fixtureValues.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return Splitter.on(',')
+        .withKeyValueSeparator(Splitter.on(':').limit(2))
+        .split(this.fixtureValues);
+  }
+
+  /**
+   * @return the declared type of the fixture values, by key, empty if none are declared.
+   * @throws IllegalArgumentException if a type is not known.
+   */
+  public Map<String, FixtureValueType> getFixtureTypes() throws IllegalArgumentException {
+    if (this.fixtureTypes == null || this.fixtureTypes.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, FixtureValueType> types = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : Splitter.on(',')
+        .withKeyValueSeparator(":")
+        .split(this.fixtureTypes).entrySet()) {
+      types.put(entry.getKey(), FixtureValueType.fromString(entry.getValue()));
+    }
+    return types;
+  }
+
+  /**
+   * @return the fixture values parsed into their declared types, by key.
+   * @throws IllegalArgumentException if a value is not of its declared type.
+   */
+  public Map<String, Object> getTypedFixtureValues() throws IllegalArgumentException {
+    return typedFixtureValues(true);
+  }
+
+  private Map<String, Object> typedFixtureValues(boolean load) throws IllegalArgumentException {
+    Map<String, FixtureValueType> types = getFixtureTypes();
+    Map<String, Object> values = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : getFixtureValues().entrySet()) {
+      FixtureValueType type = types.getOrDefault(entry.getKey(), FixtureValueType.STRING);
+      try {
+        if (load) {
+          values.put(entry.getKey(), type.parse(entry.getValue()));
+        } else {
+          type.check(entry.getValue());
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(
+            String.format("Fixture value '%s' is not valid: %s", entry.getKey(), e.getMessage()));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return whether each assertion named in the assertion control is enabled.
+   */
+  public Map<String, Boolean> getAssertionControl() {
+    if (this.assertionControl == null || this.assertionControl.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Boolean> control = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : Splitter.on(',')
+        .withKeyValueSeparator(":")
+        .split(this.assertionControl).entrySet()) {
+      control.put(entry.getKey(), entry.getValue().equalsIgnoreCase(Constants.ENABLED));
+    }
+    return control;
+  }
+
   public void validate() throws IllegalArgumentException {
     // This method should be used to validate that the configuration is valid.
     if (this.name == null || this.name.isEmpty()) {
       throw new IllegalArgumentException("Name is a required field.");
     }
+    Map<String, FixtureValueType> types = getFixtureTypes();
+    if (!containsMacro(FIELD_FIXTURE_VALUES)) {
+      Map<String, String> values = getFixtureValues();
+      for (String key : types.keySet()) {
+        if (!values.containsKey(key)) {
+          throw new IllegalArgumentException(String.format("Fixture type is declared for the unknown key '%s'.", key));
+        }
+      }
+      typedFixtureValues(false);
+    }
     // You can use the containsMacro() function to determine if you can validate at
     // deploy time or runtime.
     // If your plugin depends on fields from the input schema being present or the
@@ -10,20 +10,20 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.StageSubmitterContext;
 import io.cdap.cdap.etl.api.Transform;
 import io.cdap.cdap.etl.api.TransformContext;
 
+import easytest.shared.FixtureState;
 import easytest.shared.SingletonSharedMap;
+import easytest.shared.StageCounters;
 import easytest.shared.Constants;
 
-import java.util.Map;
 import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Splitter;
-
 @Plugin(type = Transform.PLUGIN_TYPE)
 @Name(FixtureTransformConfig.PLUGIN_NAME)
 @Description(FixtureTransformConfig.PLUGIN_DESCRIPTION)
@@ -36,7 +36,9 @@ public class FixtureTransformPlugin extends Transform<StructuredRecord, Structur
   private Schema inputSchema;
 
   private String fixtureMapId = null;
-  private boolean isFixtureSetup = false;
+
+  private StageCounters counters;
+  private StageCounters.Counter recordsCounter;
 
   public FixtureTransformPlugin(FixtureTransformConfig config) {
     this.config = config;
@@ -68,6 +70,32 @@ public class FixtureTransformPlugin extends Transform<StructuredRecord, Structur
     collector.getOrThrowException();
   }
 
+  /**
+   * This function is called on the driver before the pipeline runs, once macros
+   * have been evaluated. The fixture values and assertion flags are published as
+   * runtime arguments, which are shipped with every stage to the executors, so
+   * assertions see them regardless of where they run.
+   *
+   * @param context Context for the stage, providing access to the runtime arguments.
+   * @throws Exception If the fixture values cannot be parsed.
+   */
+  @Override
+  public void prepareRun(StageSubmitterContext context) throws Exception {
+    super.prepareRun(context);
+
+    this.config.validate();
+
+    FixtureState.publishTokens(context.getArguments(), config.name, config.getFixtureValues(),
+        config.getFixtureTypes());
+
+    for (Entry<String, Boolean> entry : config.getAssertionControl().entrySet()) {
+      if (!entry.getValue()) {
+        LOG.info("Fixture ({}) has disabled an assertion: {}", config.name, entry.getKey());
+      }
+      FixtureState.publishEnabled(context.getArguments(), entry.getKey(), entry.getValue());
+    }
+  }
+
   /**
    * This function is called when the pipeline has started. The values configured
    * in here will be made available to the
@@ -84,6 +112,18 @@ public class FixtureTransformPlugin extends Transform<StructuredRecord, Structur
 
     this.inputSchema = context.getInputSchema();
     this.fixtureMapId = SingletonSharedMap.getUniqueMapId(context, config.name);
+
+    // for assertions in this JVM that do not see the arguments published by prepareRun
+    SingletonSharedMap.getInstance().publish(fixtureMapId, config.getTypedFixtureValues());
+
+    for (Entry<String, Boolean> entry : config.getAssertionControl().entrySet()) {
+      String assertionMapId = SingletonSharedMap.getUniqueMapId(context, entry.getKey());
+      SingletonSharedMap.getInstance().put(assertionMapId, Constants.ENABLED, entry.getValue());
+    }
+
+    this.counters = new StageCounters(context.getMetrics());
+    this.recordsCounter = this.counters.counter("fixture.records");
+    context.getMetrics().gauge("fixture.values", config.getFixtureValues().size());
   }
 
   /**
@@ -98,40 +138,8 @@ public class FixtureTransformPlugin extends Transform<StructuredRecord, Structur
    */
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
-    if (!isFixtureSetup) {
-      Map<String, Object> map = SingletonSharedMap.getInstance().getMap(fixtureMapId);
-
-      if (config.fixtureValues != null) {
-        @SuppressWarnings("null")
-        Map<String, String> pairs = Splitter.on(',')
-            .withKeyValueSeparator(":")
-            .split(config.fixtureValues);
-
-        map.putAll(pairs);
-      }
-
-      if (config.assertionControl != null) {
-        @SuppressWarnings("null")
-        Map<String, String> params = Splitter.on(',')
-            .withKeyValueSeparator(":")
-            .split(config.assertionControl);
-
-        for (Entry<String, String> entry : params.entrySet()) {
-          String assertionMapId = SingletonSharedMap.getUniqueMapId(getContext(), entry.getKey());
-
-          boolean assertionEnabled = entry.getValue().equalsIgnoreCase(Constants.ENABLED);
-
-          if (!assertionEnabled) {
-            LOG.info("Fixture ({}) has disabled an assertion: {}", config.name, entry.getKey());
-          }
-
-          SingletonSharedMap.getInstance().put(assertionMapId, Constants.ENABLED, assertionEnabled);
-        }
-      }
-
-      isFixtureSetup = true;
-    }
-
+    this.recordsCounter.increment();
+    this.counters.tick();
     emitter.emit(input);
   }
 
@@ -142,5 +150,8 @@ public class FixtureTransformPlugin extends Transform<StructuredRecord, Structur
   @Override
   public void destroy() {
     SingletonSharedMap.getInstance().removeMap(fixtureMapId);
+    if (this.counters != null) {
+      this.counters.flush();
+    }
   }
 }
@@ -0,0 +1,118 @@
+package easytest.plugin.mutation;
+
+import easytest.shared.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Writes the manifest of the mutations applied by a stage instance to a local file, so downstream
+ * assertions can be checked against what was mutated without scanning the data again.
+ *
+ * The file starts with a header describing the entries of the {@link MutationPlan}: the magic
+ * bytes 'ETMF', a version, the number of entries, then for every entry the position and name of
+ * the field and the name of the mutation. It is followed by blocks of up to {@link #BLOCK_SIZE}
+ * mutations, stored by column: the number of mutations, the ordinals of the records, the entries
+ * applied as shorts, and the 64-bit hashes of the original values. Mutations are buffered in
+ * primitive arrays and only written when a block is full or the writer is closed.
+ */
+final class ManifestWriter implements Closeable {
+
+  static final int MAGIC = 0x45544d46;
+  static final int VERSION = 1;
+  static final int BLOCK_SIZE = 4096;
+
+  private final DataOutputStream out;
+
+  private final long[] ordinals = new long[BLOCK_SIZE];
+  private final short[] entries = new short[BLOCK_SIZE];
+  private final long[] hashes = new long[BLOCK_SIZE];
+  private int size = 0;
+
+  private long written = 0;
+  private boolean closed = false;
+
+  /**
+   * @return the manifest file of a stage instance, named after the partition it processes when it
+   *         is known.
+   */
+  static File file(String directory, String stageName, int partition) {
+    String instance = partition < 0 ? UUID.randomUUID().toString() : Integer.toString(partition);
+    return new File(directory, String.format("%s-%s.manifest", stageName, instance));
+  }
+
+  ManifestWriter(File file, MutationPlan plan) throws IOException {
+    if (plan.size() > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many mutations to write a manifest.");
+    }
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+    this.out.writeInt(plan.size());
+    for (int entry = 0; entry < plan.size(); entry++) {
+      this.out.writeInt(plan.target(entry));
+      this.out.writeUTF(plan.field(entry));
+      this.out.writeUTF(plan.mutation(entry));
+    }
+  }
+
+  /**
+   * @param ordinal  position of the record in the input of the stage instance.
+   * @param entry    entry of the plan applied to the record.
+   * @param original value of the field before the mutation.
+   */
+  void add(long ordinal, int entry, Object original) throws IOException {
+    this.ordinals[this.size] = ordinal;
+    this.entries[this.size] = (short) entry;
+    this.hashes[this.size] = Hashing.hash(original);
+    this.size++;
+
+    if (this.size == BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  long getWritten() {
+    return this.written + this.size;
+  }
+
+  private void flushBlock() throws IOException {
+    if (this.size == 0) {
+      return;
+    }
+    this.out.writeInt(this.size);
+    for (int i = 0; i < this.size; i++) {
+      this.out.writeLong(this.ordinals[i]);
+    }
+    for (int i = 0; i < this.size; i++) {
+      this.out.writeShort(this.entries[i]);
+    }
+    for (int i = 0; i < this.size; i++) {
+      this.out.writeLong(this.hashes[i]);
+    }
+    this.written += this.size;
+    this.size = 0;
+  }
+
+  /**
+   * Writes the buffered mutations and closes the file. Closing a closed writer has no effect.
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      flushBlock();
+    } finally {
+      this.out.close();
+    }
+  }
+}
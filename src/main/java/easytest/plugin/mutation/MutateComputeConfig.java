@@ -0,0 +1,23 @@
+package easytest.plugin.mutation;
+
+public class MutateComputeConfig extends MutateTransformConfig {
+
+  public static final String PLUGIN_NAME = "MutateCompute";
+  public static final String PLUGIN_DESCRIPTION = "Mutates exactly the requested number of records, sampled " +
+      "uniformly over all the partitions of the data, to facilitate testing.";
+
+  public MutateComputeConfig(String schema, int sampleSize, Long seed, String manifestDirectory, String weights,
+                             String mutations, String specificValues) {
+    super(schema, sampleSize, null, seed, manifestDirectory, weights, mutations, specificValues);
+  }
+
+  @Override
+  public void validate() throws IllegalArgumentException {
+    super.validate();
+    // a partition computed again has to mutate the same records, or its manifest would not match them
+    if (!containsMacro(FIELD_MANIFEST_DIRECTORY) && this.manifestDirectory != null
+        && !this.manifestDirectory.isEmpty() && !containsMacro(FIELD_SEED) && this.seed == null) {
+      throw new IllegalArgumentException("A seed is required to write a manifest.");
+    }
+  }
+}
@@ -0,0 +1,287 @@
+package easytest.plugin.mutation;
+
+import io.cdap.cdap.api.annotation.Name;
+import io.cdap.cdap.api.annotation.Description;
+import io.cdap.cdap.api.annotation.Plugin;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import io.cdap.cdap.etl.api.FailureCollector;
+import io.cdap.cdap.etl.api.PipelineConfigurer;
+import io.cdap.cdap.etl.api.batch.SparkCompute;
+import io.cdap.cdap.etl.api.batch.SparkExecutionPluginContext;
+
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.util.TaskCompletionListener;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Plugin(type = SparkCompute.PLUGIN_TYPE)
+@Name(MutateComputeConfig.PLUGIN_NAME)
+@Description(MutateComputeConfig.PLUGIN_DESCRIPTION)
+public class MutateComputePlugin extends SparkCompute<StructuredRecord, StructuredRecord> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MutateComputePlugin.class);
+
+  private final MutateComputeConfig config;
+
+  public MutateComputePlugin(MutateComputeConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * This function is called when the pipeline is published.
+   * It validates the config and the mutations against the input schema,
+   * any errors thrown here will stop the pipeline from being published.
+   *
+   * @param pipelineConfigurer Configures an ETL Pipeline. Allows adding datasets
+   *                           and streams and storing parameters
+   * @throws IllegalArgumentException If the config is invalid.
+   */
+  @Override
+  public void configurePipeline(PipelineConfigurer pipelineConfigurer) throws IllegalArgumentException {
+    super.configurePipeline(pipelineConfigurer);
+
+    Schema inputSchema = pipelineConfigurer.getStageConfigurer().getInputSchema();
+    pipelineConfigurer.getStageConfigurer().setOutputSchema(inputSchema);
+
+    this.config.validate();
+
+    FailureCollector collector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    if (inputSchema != null && this.config.canCompileMutations()) {
+      try {
+        MutationPlan.compile(inputSchema, this.config);
+      } catch (IllegalArgumentException e) {
+        collector.addFailure(e.getMessage(), null).withConfigProperty(MutateTransformConfig.FIELD_MUTATIONS_DROPDOWN);
+      }
+    }
+    collector.getOrThrowException();
+  }
+
+  /**
+   * Mutates exactly 'sample-size' records of the input, chosen uniformly over all the partitions.
+   * A first job counts the records of every partition. The driver then splits the sample between
+   * the partitions, and every partition samples its share independently while records flow through,
+   * without any communication between executors. A sampled record is left out of the manifest when
+   * its mutation would not change it, e.g. when a null value is negated.
+   *
+   * @param context Context for the stage, providing access to Spark and the runtime arguments.
+   * @param input   The records coming into the stage.
+   * @return the input records, with the sampled records mutated.
+   * @throws Exception If the mutations are invalid for the input schema.
+   */
+  @Override
+  public JavaRDD<StructuredRecord> transform(SparkExecutionPluginContext context,
+                                             JavaRDD<StructuredRecord> input) throws Exception {
+    // macros are evaluated by now
+    this.config.validate();
+    Schema schema = context.getInputSchema();
+    // fails early on the driver rather than in every partition
+    MutationPlan.compile(schema, this.config);
+
+    // the input is persisted so that mutating does not compute it again after counting. The stage
+    // cannot tell when the stages downstream are done with the mutated records, so the cached copy is
+    // kept for the rest of the run, until Spark releases it once the records are no longer referenced.
+    // Records persisted upstream are left as they are.
+    boolean persisted = !StorageLevel.NONE().equals(input.getStorageLevel());
+    JavaRDD<StructuredRecord> records = persisted ? input : input.persist(StorageLevel.MEMORY_AND_DISK());
+
+    List<Long> counts = records.mapPartitionsWithIndex((index, iterator) -> {
+      long count = 0;
+      while (iterator.hasNext()) {
+        iterator.next();
+        count++;
+      }
+      return Collections.singletonList(count).iterator();
+    }, true).collect();
+
+    long[] sizes = new long[counts.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = counts.get(i);
+    }
+    long[] quotas = split(sizes, this.config.sampleSize, RandomStreams.forPartition(this.config.seed, -1));
+
+    LOG.info("Mutation ({}) mutates {} records over {} partitions.",
+        context.getStageName(), sum(quotas), quotas.length);
+
+    // the mutated records are persisted as well, so that the stages downstream do not mutate them
+    // again. Should a partition still be computed again, its seeded stream draws the same records and
+    // rewrites the same manifest.
+    return records.mapPartitionsWithIndex(
+        new PartitionMutation(context.getStageName(), this.config, schema, sizes, quotas), true)
+        .persist(StorageLevel.MEMORY_AND_DISK());
+  }
+
+  /**
+   * Splits the sample between the partitions, by drawing distinct positions uniformly over all the
+   * records with Floyd's algorithm and counting how many fall in every partition.
+   */
+  static long[] split(long[] sizes, int sampleSize, SplittableRandom random) {
+    long total = sum(sizes);
+    long[] quotas = new long[sizes.length];
+    if (total <= sampleSize) {
+      System.arraycopy(sizes, 0, quotas, 0, sizes.length);
+      return quotas;
+    }
+
+    Set<Long> positions = new HashSet<>();
+    for (long j = total - sampleSize; j < total; j++) {
+      long position = random.nextLong(j + 1);
+      positions.add(positions.contains(position) ? j : position);
+    }
+
+    long[] ends = new long[sizes.length];
+    long end = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      end += sizes[i];
+      ends[i] = end;
+    }
+    for (long position : positions) {
+      quotas[partitionOf(ends, position)]++;
+    }
+    return quotas;
+  }
+
+  /**
+   * @return the first partition whose end is after the position, skipping empty partitions.
+   */
+  private static int partitionOf(long[] ends, long position) {
+    int low = 0;
+    int high = ends.length - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ends[middle] > position) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
+  private static long sum(long[] values) {
+    long sum = 0;
+    for (long value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  private static void close(ManifestWriter writer) {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not close the mutation manifest.", e);
+    }
+  }
+
+  /**
+   * Mutates the share of the sample of a partition, with a sampler and random stream of its own.
+   */
+  private static final class PartitionMutation
+      implements Function2<Integer, Iterator<StructuredRecord>, Iterator<StructuredRecord>> {
+
+    private final String stageName;
+    private final MutateTransformConfig config;
+    private final Schema schema;
+    private final long[] sizes;
+    private final long[] quotas;
+
+    PartitionMutation(String stageName, MutateTransformConfig config, Schema schema, long[] sizes, long[] quotas) {
+      this.stageName = stageName;
+      this.config = config;
+      this.schema = schema;
+      this.sizes = sizes;
+      this.quotas = quotas;
+    }
+
+    @Override
+    public Iterator<StructuredRecord> call(Integer index, Iterator<StructuredRecord> records) throws Exception {
+      if (index >= this.quotas.length || this.quotas[index] == 0) {
+        return records;
+      }
+
+      SplittableRandom random = RandomStreams.forPartition(this.config.seed, index);
+      SequentialSampler sampler = new SequentialSampler(this.sizes[index], this.quotas[index], random);
+      MutationPlan plan = MutationPlan.compile(this.schema, this.config);
+
+      ManifestWriter manifest = null;
+      if (this.config.manifestDirectory != null && !this.config.manifestDirectory.isEmpty()) {
+        manifest = new ManifestWriter(ManifestWriter.file(this.config.manifestDirectory, this.stageName, index), plan);
+      }
+      ManifestWriter writer = manifest;
+      TaskContext task = TaskContext.get();
+      if (writer != null && task != null) {
+        // closes the manifest when the task ends, even if the records are not all consumed
+        task.addTaskCompletionListener((TaskCompletionListener) completed -> close(writer));
+      }
+
+      return new Iterator<StructuredRecord>() {
+        // a record to emit a second time, when the record is duplicated
+        private StructuredRecord duplicate = null;
+
+        @Override
+        public boolean hasNext() {
+          boolean hasNext = duplicate != null || records.hasNext();
+          if (!hasNext && writer != null) {
+            close(writer);
+          }
+          return hasNext;
+        }
+
+        @Override
+        public StructuredRecord next() {
+          if (duplicate != null) {
+            StructuredRecord record = duplicate;
+            duplicate = null;
+            return record;
+          }
+
+          StructuredRecord record = records.next();
+          if (!sampler.next()) {
+            return record;
+          }
+
+          int entry = plan.choose(random);
+          if (plan.isDuplicate(entry)) {
+            record(record, entry);
+            duplicate = record;
+            return record;
+          }
+
+          Object mutated = plan.mutate(record, entry);
+          if (MutationPlan.isUnchanged(plan.original(record, entry), mutated)) {
+            // not recorded, downstream checks would expect a mutation that does not show
+            return record;
+          }
+          record(record, entry);
+          return plan.apply(record, entry, mutated);
+        }
+
+        private void record(StructuredRecord record, int entry) {
+          if (writer != null) {
+            try {
+              writer.add(sampler.position(), entry, plan.original(record, entry));
+            } catch (IOException e) {
+              throw new IllegalStateException(
+                  String.format("Mutation (%s) could not write its manifest.", stageName), e);
+            }
+          }
+        }
+      };
+    }
+  }
+}
@@ -6,21 +6,55 @@ import io.cdap.cdap.api.annotation.Macro;
 
 import io.cdap.cdap.api.plugin.PluginConfig;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
+import com.google.common.base.Splitter;
+
 public class MutateTransformConfig extends PluginConfig {
 
   public static final String PLUGIN_NAME = "MutateTransform";
   public static final String PLUGIN_DESCRIPTION = "Mutates records based on a probability distribution to facilitate testing.";
 
   private static final String FIELD_SAMPLE_SIZE = "sample-size";
+  static final String FIELD_POPULATION_SIZE = "population-size";
+  static final String FIELD_SEED = "seed";
+  static final String FIELD_MANIFEST_DIRECTORY = "manifest-directory";
   private static final String FIELD_WEIGHT_VALUES = "weight-values";
-  private static final String FIELD_MUTATIONS_DROPDOWN = "mutations-dropdown";
+  static final String FIELD_MUTATIONS_DROPDOWN = "mutations-dropdown";
+  private static final String FIELD_SPECIFIC_VALUES = "specific-values";
 
   @Name(FIELD_SAMPLE_SIZE)
-  @Description("Specifies the number of samples to mutate.")
+  @Description("Specifies the number of samples to mutate in each partition, as every instance of the stage " +
+      "samples the partition it processes.")
   public final int sampleSize;
 
+  @Name(FIELD_POPULATION_SIZE)
+  @Description("The number of records expected in each partition, used to spread the samples uniformly over " +
+      "the records of the partition. Records beyond it are never mutated, and a smaller partition has fewer " +
+      "mutations. Required to mutate any record.")
+  @Nullable
+  @Macro
+  public final Long populationSize;
+
+  @Name(FIELD_SEED)
+  @Description("Seed of the random generator. With a seed, the same records and fields are mutated on every run " +
+      "with the same input partitioning. Every partition draws from its own stream derived from the seed.")
+  @Nullable
+  @Macro
+  public final Long seed;
+
+  @Name(FIELD_MANIFEST_DIRECTORY)
+  @Description("Local directory where every instance of the stage writes the manifest of the mutations it " +
+      "applied: the ordinal of the record, the field, the mutation and a hash of the original value. " +
+      "MutateCompute also requires a seed, so a partition computed again rewrites the same manifest.")
+  @Nullable
+  @Macro
+  public final String manifestDirectory;
+
   @Name(FIELD_WEIGHT_VALUES)
   @Description("A set of mutation probabilities associated with the fields.")
   @Nullable
@@ -31,10 +65,87 @@ public class MutateTransformConfig extends PluginConfig {
   @Description("Specifies the type of mutations to apply to the fields.")
   public final String mutations;
 
+  @Name(FIELD_SPECIFIC_VALUES)
+  @Description("Values set on the fields mutated with 'Set to specified value', as field and value pairs. " +
+      "Field names end at the first ':', so values can contain ':' but not ','.")
+  @Nullable
+  @Macro
+  public final String specificValues;
+
   public MutateTransformConfig(String schema, int sampleSize, String weights, String mutations) {
+    this(schema, sampleSize, null, null, null, weights, mutations, null);
+  }
+
+  public MutateTransformConfig(String schema, int sampleSize, Long populationSize, Long seed,
+                               String manifestDirectory, String weights, String mutations, String specificValues) {
     this.sampleSize = sampleSize;
+    this.populationSize = populationSize;
+    this.seed = seed;
+    this.manifestDirectory = manifestDirectory;
     this.weights = weights;
     this.mutations = mutations;
+    this.specificValues = specificValues;
+  }
+
+  /**
+   * @return the mutation of each field, by field name.
+   */
+  public Map<String, String> getMutations() {
+    if (this.mutations == null || this.mutations.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return Splitter.on(',')
+        .withKeyValueSeparator(":")
+        .split(this.mutations);
+  }
+
+  /**
+   * @return the specific value of each field, empty if none are specified. Each pair is split on
+   *         its first ':', so values such as times and date-times can contain ':'.
+   */
+  public Map<String, String> getSpecificValues() {
+    if (this.specificValues == null || this.specificValues.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return Splitter.on(',')
+        .withKeyValueSeparator(Splitter.on(':').limit(2))
+        .split(this.specificValues);
+  }
+
+  /**
+   * @return the weight of each field, empty if no weights are specified.
+   * @throws IllegalArgumentException if a weight is not a number.
+   */
+  public Map<String, Double> getWeights() throws IllegalArgumentException {
+    if (this.weights == null || this.weights.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Double> values = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : Splitter.on(',')
+        .withKeyValueSeparator(":")
+        .split(this.weights).entrySet()) {
+      try {
+        values.put(entry.getKey(), Double.parseDouble(entry.getValue()));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            String.format("Weight of the field '%s' is not a number: %s", entry.getKey(), entry.getValue()));
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return true if a population size is specified, or will be once its macro is evaluated.
+   */
+  public boolean hasPopulationSize() {
+    return this.populationSize != null || containsMacro(FIELD_POPULATION_SIZE);
+  }
+
+  /**
+   * @return true if the mutations can be compiled, which requires the values they use to not be macros.
+   */
+  public boolean canCompileMutations() {
+    return !containsMacro(FIELD_WEIGHT_VALUES) && !containsMacro(FIELD_SPECIFIC_VALUES);
   }
 
   public void validate() throws IllegalArgumentException {
@@ -42,6 +153,20 @@ public class MutateTransformConfig extends PluginConfig {
     if (this.mutations == null || this.mutations.isEmpty()) {
       throw new IllegalArgumentException("At least one mutation must be specified.");
     }
+    if (this.sampleSize < 0) {
+      throw new IllegalArgumentException("The sample size cannot be negative.");
+    }
+    if (!containsMacro(FIELD_POPULATION_SIZE) && this.populationSize != null && this.populationSize < 0) {
+      throw new IllegalArgumentException("The population size cannot be negative.");
+    }
+    if (!containsMacro(FIELD_WEIGHT_VALUES)) {
+      for (Map.Entry<String, Double> weight : getWeights().entrySet()) {
+        if (weight.getValue() < 0) {
+          throw new IllegalArgumentException(
+              String.format("Weight of the field '%s' cannot be negative.", weight.getKey()));
+        }
+      }
+    }
     // You can use the containsMacro() function to determine if you can validate at
     // deploy time or runtime.
     // If your plugin depends on fields from the input schema being present or the
@@ -13,18 +13,18 @@ import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.Transform;
 import io.cdap.cdap.etl.api.TransformContext;
 
-import java.util.List;
+import easytest.shared.StageCounters;
+import easytest.shared.TaskPartition;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
-import java.util.Map.Entry;
+import java.util.SplittableRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Splitter;
-
-import easytest.shared.Constants;
-
 @Plugin(type = Transform.PLUGIN_TYPE)
 @Name(MutateTransformConfig.PLUGIN_NAME)
 @Description(MutateTransformConfig.PLUGIN_DESCRIPTION)
@@ -34,16 +34,21 @@ public class MutateTransformPlugin extends Transform<StructuredRecord, Structure
 
   private final MutateTransformConfig config;
 
-  private final Random random;
-
   private Schema inputSchema;
 
-  private Map<String, String> mutations;
-  private int sampleCount;
+  private SplittableRandom random;
+  private SequentialSampler sampler;
+  private MutationPlan plan;
+  private ManifestWriter manifest;
+
+  private StageCounters counters;
+  private StageCounters.Counter recordsCounter;
+  private StageCounters.Counter unchangedCounter;
+  // counter of the mutation type of each entry of the plan
+  private StageCounters.Counter[] appliedCounters;
 
   public MutateTransformPlugin(MutateTransformConfig config) {
     this.config = config;
-    this.random = new Random();
   }
 
   /**
@@ -69,6 +74,18 @@ public class MutateTransformPlugin extends Transform<StructuredRecord, Structure
     this.config.validate();
 
     FailureCollector collector = pipelineConfigurer.getStageConfigurer().getFailureCollector();
+    if (this.config.sampleSize > 0 && !this.config.hasPopulationSize()) {
+      // records are emitted as they come, the samples cannot be spread over an unknown number of them
+      collector.addFailure("The population size of each partition is required to spread the samples over " +
+          "its records.", null).withConfigProperty(MutateTransformConfig.FIELD_POPULATION_SIZE);
+    }
+    if (this.inputSchema != null && this.config.canCompileMutations()) {
+      try {
+        MutationPlan.compile(this.inputSchema, this.config);
+      } catch (IllegalArgumentException e) {
+        collector.addFailure(e.getMessage(), null).withConfigProperty(MutateTransformConfig.FIELD_MUTATIONS_DROPDOWN);
+      }
+    }
     collector.getOrThrowException();
   }
 
@@ -88,13 +105,36 @@ public class MutateTransformPlugin extends Transform<StructuredRecord, Structure
 
     this.inputSchema = context.getInputSchema();
 
-    if (config.mutations != null) {
-      @SuppressWarnings("null")
-      Map<String, String> mutations = Splitter.on(',')
-          .withKeyValueSeparator(":")
-          .split(config.mutations);
+    int partition = TaskPartition.current();
+    if (config.seed != null && partition == TaskPartition.UNKNOWN) {
+      LOG.warn("Mutation ({}) is seeded but the partition is not known, every instance mutates the same " +
+          "positions.", context.getStageName());
+    }
+    this.random = RandomStreams.forPartition(config.seed, partition);
+
+    if (config.populationSize == null && config.sampleSize > 0) {
+      throw new IllegalArgumentException(
+          String.format("Mutation (%s) requires the population size of each partition.", context.getStageName()));
+    }
+    long population = config.populationSize == null ? 0 : config.populationSize;
+    this.sampler = new SequentialSampler(population, config.sampleSize, this.random);
+
+    this.plan = MutationPlan.compile(this.inputSchema, config);
+
+    this.counters = new StageCounters(context.getMetrics());
+    this.recordsCounter = this.counters.counter("mutation.records");
+    this.unchangedCounter = this.counters.counter("mutation.unchanged");
+    Map<String, StageCounters.Counter> byType = new HashMap<>();
+    this.appliedCounters = new StageCounters.Counter[this.plan.size()];
+    for (int entry = 0; entry < this.plan.size(); entry++) {
+      this.appliedCounters[entry] = byType.computeIfAbsent(this.plan.mutation(entry),
+          type -> this.counters.counter("mutation.applied." + StageCounters.metricName(type)));
+    }
 
-      this.mutations = mutations;
+    if (config.manifestDirectory != null && !config.manifestDirectory.isEmpty()) {
+      File file = ManifestWriter.file(config.manifestDirectory, context.getStageName(), partition);
+      this.manifest = new ManifestWriter(file, this.plan);
+      LOG.info("Mutation ({}) writes its manifest to {}.", context.getStageName(), file);
     }
   }
 
@@ -110,54 +150,37 @@ public class MutateTransformPlugin extends Transform<StructuredRecord, Structure
    */
   @Override
   public void transform(StructuredRecord input, Emitter<StructuredRecord> emitter) throws Exception {
-    if (sampleCount == config.sampleSize) {
+    this.recordsCounter.increment();
+    this.counters.tick();
+
+    if (!sampler.next()) {
       emitter.emit(input);
       return;
     }
 
-    List<Schema.Field> fields = inputSchema.getFields();
-    StructuredRecord.Builder builder = StructuredRecord.builder(inputSchema);
-
-    for (Schema.Field field : fields) {
-      String name = field.getName();
-
-      if (input.get(name) != null) {
-        Object value = input.get(name);
-
-        boolean apply = this.random.nextBoolean();
-
-        if (apply) {
-          if (mutations.get(name) != null) {
-            value = applyMutation(mutations.get(name), value, null);
-            sampleCount++;
-          }
-        }
-
-        builder.set(name, value);
-      }
+    int entry = plan.choose(this.random);
+    if (plan.isDuplicate(entry)) {
+      record(input, entry);
+      emitter.emit(input);
+      emitter.emit(input);
+      return;
     }
 
-    emitter.emit(builder.build());
+    Object mutated = plan.mutate(input, entry);
+    if (MutationPlan.isUnchanged(plan.original(input, entry), mutated)) {
+      // not recorded, downstream checks would expect a mutation that does not show
+      this.unchangedCounter.increment();
+      emitter.emit(input);
+      return;
+    }
+    record(input, entry);
+    emitter.emit(plan.apply(input, entry, mutated));
   }
 
-  private Object applyMutation(String type, Object ground, String specific) {
-    switch (type) {
-      case Constants.MUTATION_NULL:
-        return null;
-      case Constants.MUTATION_SPECIFIC:
-        return specific;
-      case Constants.MUTATION_ZERO:
-        return 0;
-      case Constants.MUTATION_NEGATIVE:
-        return Operators.negative(ground);
-      case Constants.MUTATION_ABSOLUTE:
-        return Operators.absolute(ground);
-      case Constants.MUTATION_LARGE_NEGATIVE:
-        return Operators.negativeMax(ground);
-      case Constants.MUTATION_LARGE_POSITIVE:
-        return Operators.positiveMax(ground);
-      default:
-        return null;
+  private void record(StructuredRecord input, int entry) throws IOException {
+    this.appliedCounters[entry].increment();
+    if (manifest != null) {
+      manifest.add(sampler.position(), entry, plan.original(input, entry));
     }
   }
 
@@ -167,6 +190,18 @@ public class MutateTransformPlugin extends Transform<StructuredRecord, Structure
    */
   @Override
   public void destroy() {
-    // No Op
+    if (this.counters != null) {
+      this.counters.flush();
+    }
+    if (this.manifest == null) {
+      return;
+    }
+    try {
+      this.manifest.close();
+      LOG.info("Mutation ({}) wrote {} mutations to its manifest.", getContext().getStageName(),
+          this.manifest.getWritten());
+    } catch (IOException e) {
+      LOG.warn("Mutation ({}) could not write its manifest.", getContext().getStageName(), e);
+    }
   }
 }
@@ -0,0 +1,178 @@
+package easytest.plugin.mutation;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+
+import easytest.shared.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * The mutations of a stage compiled against its input schema: for every field that can be
+ * mutated, its position in the schema and a {@link Mutator} specialized for its type, along with
+ * the weighted choice of the field to mutate in a selected record.
+ */
+final class MutationPlan {
+
+  private final Schema schema;
+  private final String[] names;
+
+  private final int[] targets;
+  private final String[] mutations;
+  private final Mutator[] mutators;
+  private final boolean[] duplicates;
+  private final WeightedChoice<Integer> choice;
+
+  private MutationPlan(Schema schema, int[] targets, String[] mutations, Mutator[] mutators, double[] weights) {
+    this.schema = schema;
+    this.names = new String[schema.getFields().size()];
+    for (int i = 0; i < this.names.length; i++) {
+      this.names[i] = schema.getFields().get(i).getName();
+    }
+
+    this.targets = targets;
+    this.mutations = mutations;
+    this.mutators = mutators;
+    this.duplicates = new boolean[mutations.length];
+    for (int i = 0; i < mutations.length; i++) {
+      this.duplicates[i] = Constants.MUTATION_DUPLICATE.equals(mutations[i]);
+    }
+
+    List<Integer> entries = new ArrayList<>();
+    for (int i = 0; i < targets.length; i++) {
+      entries.add(i);
+    }
+    this.choice = new WeightedChoice<>(entries, weights);
+  }
+
+  /**
+   * Compiles the mutations, weights and specific values of the config. Fields without a weight have
+   * a weight of 1.
+   *
+   * @param schema input schema of the stage.
+   * @param config config of the stage.
+   * @throws IllegalArgumentException if a field does not exist or does not support its mutation.
+   */
+  static MutationPlan compile(Schema schema, MutateTransformConfig config) throws IllegalArgumentException {
+    Map<String, String> mutations = config.getMutations();
+    Map<String, Double> weights = config.getWeights();
+    Map<String, String> specifics = config.getSpecificValues();
+
+    if (schema == null || schema.getFields() == null) {
+      throw new IllegalArgumentException("Mutations require the input schema to be known.");
+    }
+
+    int[] targets = new int[mutations.size()];
+    String[] names = new String[mutations.size()];
+    Mutator[] mutators = new Mutator[mutations.size()];
+    double[] fieldWeights = new double[mutations.size()];
+
+    int entry = 0;
+    for (Map.Entry<String, String> mutation : mutations.entrySet()) {
+      Schema.Field field = schema.getField(mutation.getKey());
+      if (field == null) {
+        throw new IllegalArgumentException(
+            String.format("The field '%s' to mutate does not exist in the input schema.", mutation.getKey()));
+      }
+      targets[entry] = schema.getFields().indexOf(field);
+      names[entry] = mutation.getValue();
+      mutators[entry] = Mutators.create(mutation.getValue(), field, specifics.get(mutation.getKey()));
+
+      Double weight = weights.get(mutation.getKey());
+      fieldWeights[entry] = weight == null ? 1.0 : weight;
+      entry++;
+    }
+    return new MutationPlan(schema, targets, names, mutators, fieldWeights);
+  }
+
+  int size() {
+    return this.targets.length;
+  }
+
+  /**
+   * @return position in the schema of the field mutated by an entry.
+   */
+  int target(int entry) {
+    return this.targets[entry];
+  }
+
+  String field(int entry) {
+    return this.names[this.targets[entry]];
+  }
+
+  String mutation(int entry) {
+    return this.mutations[entry];
+  }
+
+  /**
+   * @return true if the entry duplicates the record instead of mutating a field.
+   */
+  boolean isDuplicate(int entry) {
+    return this.duplicates[entry];
+  }
+
+  /**
+   * @return the value of the field mutated by an entry, before the mutation.
+   */
+  Object original(StructuredRecord input, int entry) {
+    return input.get(this.names[this.targets[entry]]);
+  }
+
+  /**
+   * @return the index of the entry of the plan to apply to the next selected record.
+   */
+  int choose(SplittableRandom random) {
+    return this.choice.choose(random);
+  }
+
+  /**
+   * @return the value of the field of an entry once mutated, which may equal the original value,
+   *         e.g. as most mutations leave a null value null.
+   */
+  Object mutate(StructuredRecord input, int entry) {
+    return this.mutators[entry].mutate(original(input, entry));
+  }
+
+  /**
+   * @return true if a mutated value is the original value, so the mutation does not change the record.
+   */
+  static boolean isUnchanged(Object original, Object mutated) {
+    // decimals are read as buffers and mutated into arrays
+    return Objects.deepEquals(bytes(original), bytes(mutated));
+  }
+
+  /**
+   * Copies the record with the field of an entry set to its mutated value. A builder is created per
+   * mutated record, as built records keep a reference to the values of their builder, which
+   * therefore cannot be reused.
+   */
+  StructuredRecord apply(StructuredRecord input, int entry, Object mutated) {
+    int target = this.targets[entry];
+    StructuredRecord.Builder builder = StructuredRecord.builder(this.schema);
+
+    for (int i = 0; i < this.names.length; i++) {
+      Object value = i == target ? mutated : input.get(this.names[i]);
+
+      // unset fields are null, and setting null on a non-nullable field is rejected
+      if (value != null) {
+        builder.set(this.names[i], value);
+      }
+    }
+    return builder.build();
+  }
+
+  private static Object bytes(Object value) {
+    if (!(value instanceof ByteBuffer)) {
+      return value;
+    }
+    ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,18 @@
+package easytest.plugin.mutation;
+
+import java.io.Serializable;
+
+/**
+ * Mutation of the values of one field, created for the schema of that field so that applying it
+ * does not need to inspect the type of the value. Values are in the representation used by
+ * {@link io.cdap.cdap.api.data.format.StructuredRecord}, such as unscaled bytes for decimals.
+ */
+@FunctionalInterface
+public interface Mutator extends Serializable {
+
+  /**
+   * @param value current value of the field, may be null.
+   * @return the mutated value.
+   */
+  Object mutate(Object value);
+}
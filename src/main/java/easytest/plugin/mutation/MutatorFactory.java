@@ -0,0 +1,23 @@
+package easytest.plugin.mutation;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import javax.annotation.Nullable;
+
+/**
+ * Creates the {@link Mutator} of a mutation for a field. Factories are registered by mutation name
+ * with {@link Mutators#register(String, MutatorFactory)}, and are called once per field when the
+ * mutation plan is compiled.
+ */
+@FunctionalInterface
+public interface MutatorFactory {
+
+  /**
+   * @param field    field to mutate.
+   * @param schema   schema of the field, without the null union of nullable fields.
+   * @param specific value configured for the field, may be null.
+   * @return the mutator for the field.
+   * @throws IllegalArgumentException if the mutation does not apply to the field.
+   */
+  Mutator create(Schema.Field field, Schema schema, @Nullable String specific) throws IllegalArgumentException;
+}
@@ -0,0 +1,350 @@
+package easytest.plugin.mutation;
+
+import io.cdap.cdap.api.data.schema.Schema;
+
+import easytest.shared.Constants;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Registry of the mutations available to mutation stages. Every mutation is a
+ * {@link MutatorFactory} that specializes the mutation for the type of a field once, so applying it
+ * does not need to inspect the type of the value.
+ */
+public final class Mutators {
+
+  private static final Map<String, MutatorFactory> FACTORIES = new ConcurrentHashMap<>();
+
+  private static final long DAY_MILLIS = 86_400_000L;
+  private static final long HOUR_MILLIS = 3_600_000L;
+
+  private static final char REPLACEMENT = '\uFFFD';
+
+  static {
+    register(Constants.MUTATION_NULL, (field, schema, specific) -> {
+      if (!field.getSchema().isNullable()) {
+        throw unsupported(Constants.MUTATION_NULL, field);
+      }
+      return value -> null;
+    });
+    register(Constants.MUTATION_SPECIFIC, (field, schema, specific) -> {
+      Object constant = specific == null ? null : parse(schema, specific, field);
+      if (constant == null && !field.getSchema().isNullable()) {
+        throw new IllegalArgumentException(
+            String.format("A specific value must be specified for the field '%s'.", field.getName()));
+      }
+      return value -> constant;
+    });
+
+    register(Constants.MUTATION_ZERO, numeric(Constants.MUTATION_ZERO));
+    register(Constants.MUTATION_NEGATIVE, numeric(Constants.MUTATION_NEGATIVE));
+    register(Constants.MUTATION_ABSOLUTE, numeric(Constants.MUTATION_ABSOLUTE));
+    register(Constants.MUTATION_LARGE_NEGATIVE, numeric(Constants.MUTATION_LARGE_NEGATIVE));
+    register(Constants.MUTATION_LARGE_POSITIVE, numeric(Constants.MUTATION_LARGE_POSITIVE));
+
+    register(Constants.MUTATION_TRUNCATE, string(Constants.MUTATION_TRUNCATE,
+        value -> value == null ? null : ((String) value).substring(0, ((String) value).length() / 2)));
+    register(Constants.MUTATION_PAD, string(Constants.MUTATION_PAD,
+        value -> value == null ? null : "  " + value + "  "));
+    register(Constants.MUTATION_CORRUPT_ENCODING, string(Constants.MUTATION_CORRUPT_ENCODING,
+        value -> value == null ? null : corrupt((String) value)));
+
+    register(Constants.MUTATION_SHIFT_FORWARD, (field, schema, specific) -> shift(field, schema, 1));
+    register(Constants.MUTATION_SHIFT_BACKWARD, (field, schema, specific) -> shift(field, schema, -1));
+
+    register(Constants.MUTATION_DECIMAL_SCALE, (field, schema, specific) -> {
+      if (schema.getLogicalType() != Schema.LogicalType.DECIMAL) {
+        throw unsupported(Constants.MUTATION_DECIMAL_SCALE, field);
+      }
+      // the unscaled value is read as if the scale was one less, so the value is ten times larger
+      return value -> value == null ? null : unscaled(value).multiply(BigInteger.TEN).toByteArray();
+    });
+
+    register(Constants.MUTATION_DROP_ELEMENT, (field, schema, specific) -> {
+      switch (schema.getType()) {
+        case ARRAY:
+          return value -> value == null ? null : dropLast(value);
+        case MAP:
+          return value -> value == null ? null : dropFirst((Map<?, ?>) value);
+        default:
+          throw unsupported(Constants.MUTATION_DROP_ELEMENT, field);
+      }
+    });
+
+    // handled by the mutation plan, which emits the record twice
+    register(Constants.MUTATION_DUPLICATE, (field, schema, specific) -> value -> value);
+  }
+
+  private Mutators() {
+    // no-op
+  }
+
+  /**
+   * Registers a mutation, replacing any mutation with the same name.
+   */
+  public static void register(String mutation, MutatorFactory factory) {
+    FACTORIES.put(mutation, factory);
+  }
+
+  public static Set<String> getMutations() {
+    return FACTORIES.keySet();
+  }
+
+  /**
+   * @param mutation name of the mutation.
+   * @param field    field to mutate.
+   * @param specific value configured for the field, may be null.
+   * @throws IllegalArgumentException if the mutation is unknown or cannot be applied to the field.
+   */
+  static Mutator create(String mutation, Schema.Field field, @Nullable String specific)
+      throws IllegalArgumentException {
+    MutatorFactory factory = FACTORIES.get(mutation);
+    if (factory == null) {
+      throw new IllegalArgumentException(
+          String.format("Unknown mutation '%s' for the field '%s'.", mutation, field.getName()));
+    }
+    Schema schema = field.getSchema().isNullable() ? field.getSchema().getNonNullable() : field.getSchema();
+    return factory.create(field, schema, specific);
+  }
+
+  private static MutatorFactory numeric(String mutation) {
+    return (field, schema, specific) -> {
+      if (schema.getLogicalType() == Schema.LogicalType.DECIMAL) {
+        return decimal(mutation, schema.getPrecision());
+      }
+      // other logical types are mutated through their integral representation
+      switch (schema.getType()) {
+        case INT:
+          return integer(mutation);
+        case LONG:
+          return longInteger(mutation);
+        case FLOAT:
+          return floating(mutation);
+        case DOUBLE:
+          return doubleFloating(mutation);
+        default:
+          throw unsupported(mutation, field);
+      }
+    };
+  }
+
+  private static MutatorFactory string(String mutation, Mutator mutator) {
+    return (field, schema, specific) -> {
+      if (schema.getType() != Schema.Type.STRING) {
+        throw unsupported(mutation, field);
+      }
+      return mutator;
+    };
+  }
+
+  private static Mutator integer(String mutation) {
+    switch (mutation) {
+      case Constants.MUTATION_ZERO:
+        return value -> 0;
+      case Constants.MUTATION_NEGATIVE:
+        return value -> value == null ? null : -(Integer) value;
+      case Constants.MUTATION_ABSOLUTE:
+        return value -> value == null ? null : Math.abs((Integer) value);
+      case Constants.MUTATION_LARGE_POSITIVE:
+        return value -> Integer.MAX_VALUE;
+      default:
+        return value -> -Integer.MAX_VALUE;
+    }
+  }
+
+  private static Mutator longInteger(String mutation) {
+    switch (mutation) {
+      case Constants.MUTATION_ZERO:
+        return value -> 0L;
+      case Constants.MUTATION_NEGATIVE:
+        return value -> value == null ? null : -(Long) value;
+      case Constants.MUTATION_ABSOLUTE:
+        return value -> value == null ? null : Math.abs((Long) value);
+      case Constants.MUTATION_LARGE_POSITIVE:
+        return value -> Long.MAX_VALUE;
+      default:
+        return value -> -Long.MAX_VALUE;
+    }
+  }
+
+  private static Mutator floating(String mutation) {
+    switch (mutation) {
+      case Constants.MUTATION_ZERO:
+        return value -> 0f;
+      case Constants.MUTATION_NEGATIVE:
+        return value -> value == null ? null : -(Float) value;
+      case Constants.MUTATION_ABSOLUTE:
+        return value -> value == null ? null : Math.abs((Float) value);
+      case Constants.MUTATION_LARGE_POSITIVE:
+        return value -> Float.MAX_VALUE;
+      default:
+        return value -> -Float.MAX_VALUE;
+    }
+  }
+
+  private static Mutator doubleFloating(String mutation) {
+    switch (mutation) {
+      case Constants.MUTATION_ZERO:
+        return value -> 0d;
+      case Constants.MUTATION_NEGATIVE:
+        return value -> value == null ? null : -(Double) value;
+      case Constants.MUTATION_ABSOLUTE:
+        return value -> value == null ? null : Math.abs((Double) value);
+      case Constants.MUTATION_LARGE_POSITIVE:
+        return value -> Double.MAX_VALUE;
+      default:
+        return value -> -Double.MAX_VALUE;
+    }
+  }
+
+  private static Mutator decimal(String mutation, int precision) {
+    switch (mutation) {
+      case Constants.MUTATION_ZERO:
+        byte[] zero = BigInteger.ZERO.toByteArray();
+        return value -> zero;
+      case Constants.MUTATION_NEGATIVE:
+        return value -> value == null ? null : unscaled(value).negate().toByteArray();
+      case Constants.MUTATION_ABSOLUTE:
+        return value -> value == null ? null : unscaled(value).abs().toByteArray();
+      case Constants.MUTATION_LARGE_POSITIVE:
+        byte[] max = BigInteger.TEN.pow(precision).subtract(BigInteger.ONE).toByteArray();
+        return value -> max;
+      default:
+        byte[] min = BigInteger.TEN.pow(precision).subtract(BigInteger.ONE).negate().toByteArray();
+        return value -> min;
+    }
+  }
+
+  /**
+   * Shifts dates by a day, timestamps by a day in their unit and times of day by an hour.
+   */
+  private static Mutator shift(Schema.Field field, Schema schema, int direction) {
+    Schema.LogicalType type = schema.getLogicalType();
+    if (type == null) {
+      throw unsupported(direction > 0 ? Constants.MUTATION_SHIFT_FORWARD : Constants.MUTATION_SHIFT_BACKWARD, field);
+    }
+    switch (type) {
+      case DATE:
+        return value -> value == null ? null : (Integer) value + direction;
+      case TIMESTAMP_MILLIS:
+        return value -> value == null ? null : (Long) value + direction * DAY_MILLIS;
+      case TIMESTAMP_MICROS:
+        return value -> value == null ? null : (Long) value + direction * DAY_MILLIS * 1000;
+      case TIME_MILLIS:
+        return value -> value == null ? null
+            : (int) Math.floorMod((Integer) value + direction * HOUR_MILLIS, DAY_MILLIS);
+      case TIME_MICROS:
+        return value -> value == null ? null : Math.floorMod((Long) value + direction * HOUR_MILLIS * 1000,
+            DAY_MILLIS * 1000);
+      case DATETIME:
+        return value -> value == null ? null : LocalDateTime.parse((String) value).plusDays(direction).toString();
+      default:
+        throw unsupported(direction > 0 ? Constants.MUTATION_SHIFT_FORWARD : Constants.MUTATION_SHIFT_BACKWARD, field);
+    }
+  }
+
+  /**
+   * Replaces the middle character with the Unicode replacement character, as a failed decoding would.
+   */
+  private static String corrupt(String value) {
+    if (value.isEmpty()) {
+      return String.valueOf(REPLACEMENT);
+    }
+    int middle = value.length() / 2;
+    return value.substring(0, middle) + REPLACEMENT + value.substring(middle + 1);
+  }
+
+  private static Object dropLast(Object value) {
+    if (value instanceof Collection) {
+      List<Object> list = new ArrayList<>((Collection<?>) value);
+      if (!list.isEmpty()) {
+        list.remove(list.size() - 1);
+      }
+      return list;
+    } else if (value instanceof Object[]) {
+      Object[] array = (Object[]) value;
+      return Arrays.copyOf(array, Math.max(0, array.length - 1));
+    }
+    // arrays of primitives
+    int length = Array.getLength(value);
+    Object copy = Array.newInstance(value.getClass().getComponentType(), Math.max(0, length - 1));
+    System.arraycopy(value, 0, copy, 0, Array.getLength(copy));
+    return copy;
+  }
+
+  private static Map<Object, Object> dropFirst(Map<?, ?> value) {
+    Map<Object, Object> map = new LinkedHashMap<>(value);
+    Iterator<Object> keys = map.keySet().iterator();
+    if (keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+    return map;
+  }
+
+  /**
+   * @return the unscaled value of a decimal, the scale does not change when mutating.
+   */
+  private static BigInteger unscaled(Object value) {
+    if (value instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new BigInteger(bytes);
+    }
+    return new BigInteger((byte[]) value);
+  }
+
+  private static Object parse(Schema schema, String value, Schema.Field field) {
+    try {
+      if (schema.getLogicalType() == Schema.LogicalType.DECIMAL) {
+        return new BigDecimal(value).setScale(schema.getScale()).unscaledValue().toByteArray();
+      }
+      switch (schema.getType()) {
+        case BOOLEAN:
+          return Boolean.parseBoolean(value);
+        case INT:
+          return Integer.parseInt(value);
+        case LONG:
+          return Long.parseLong(value);
+        case FLOAT:
+          return Float.parseFloat(value);
+        case DOUBLE:
+          return Double.parseDouble(value);
+        case BYTES:
+          return value.getBytes(StandardCharsets.UTF_8);
+        case STRING:
+        case ENUM:
+          return value;
+        default:
+          throw new IllegalArgumentException(String.format(
+              "A specific value cannot be set on the field '%s' of type %s.", field.getName(), schema.getType()));
+      }
+    } catch (ArithmeticException | NumberFormatException e) {
+      throw new IllegalArgumentException(String.format(
+          "The value '%s' is not valid for the field '%s': %s", value, field.getName(), e.getMessage()));
+    }
+  }
+
+  private static IllegalArgumentException unsupported(String mutation, Schema.Field field) {
+    return new IllegalArgumentException(String.format(
+        "The mutation '%s' cannot be applied to the field '%s' of type %s.",
+        mutation, field.getName(), field.getSchema().getDisplayName()));
+  }
+}
@@ -0,0 +1,33 @@
+package easytest.plugin.mutation;
+
+import easytest.shared.Hashing;
+
+import java.util.SplittableRandom;
+
+import javax.annotation.Nullable;
+
+/**
+ * Derives the random generator of a partition from the seed of the stage, so a seeded stage
+ * mutates the same records regardless of which executor or thread processes each partition.
+ */
+final class RandomStreams {
+
+  // odd constant of the golden ratio, also used by SplittableRandom to space its seeds
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private RandomStreams() {
+    // no-op
+  }
+
+  /**
+   * @param seed      seed of the stage, or null for a generator that differs on every run.
+   * @param partition index of the partition, or a negative value if it is not known.
+   */
+  static SplittableRandom forPartition(@Nullable Long seed, int partition) {
+    if (seed == null) {
+      return new SplittableRandom();
+    }
+    // mixing keeps the streams of consecutive partitions independent
+    return new SplittableRandom(Hashing.mix(seed + GOLDEN_GAMMA * (partition + 1L)));
+  }
+}
@@ -0,0 +1,85 @@
+package easytest.plugin.mutation;
+
+import java.util.SplittableRandom;
+
+/**
+ * Selects exactly {@code sampleSize} records uniformly out of a stream of {@code population}
+ * records, in a single pass and without buffering. Uses Vitter's sequential sampling (Method A):
+ * when a record is selected, the number of records to skip before the next selection is drawn at
+ * once, so unselected records only decrement a counter and never call the random generator.
+ *
+ * The population has to be known, as a selected record is passed on before the records after it
+ * are seen. Records beyond the population are never selected.
+ */
+final class SequentialSampler {
+
+  private final SplittableRandom random;
+
+  private long remaining;
+  private long needed;
+  private long skip;
+  private long position = -1;
+
+  SequentialSampler(long population, long sampleSize, SplittableRandom random) {
+    this.random = random;
+    this.remaining = population;
+    this.needed = Math.min(sampleSize, population);
+    this.skip = nextSkip();
+  }
+
+  /**
+   * @return true if the next record of the stream is selected.
+   */
+  boolean next() {
+    this.position++;
+    if (this.skip > 0) {
+      this.skip--;
+      this.remaining--;
+      return false;
+    }
+    if (this.needed == 0) {
+      return false;
+    }
+    this.remaining--;
+    this.needed--;
+    this.skip = nextSkip();
+    return true;
+  }
+
+  /**
+   * @return position in the stream of the last record passed to {@link #next()}, starting at 0.
+   */
+  long position() {
+    return this.position;
+  }
+
+  /**
+   * @return true if every record of the sample has been selected.
+   */
+  boolean isDone() {
+    return this.needed == 0;
+  }
+
+  private long nextSkip() {
+    if (this.needed == 0) {
+      return Long.MAX_VALUE;
+    }
+    if (this.remaining <= this.needed) {
+      return 0;
+    }
+
+    // the probability of skipping s records is the product of (N - n - i) / (N - i) for i < s
+    double v = this.random.nextDouble();
+    long s = 0;
+    double top = this.remaining - this.needed;
+    double total = this.remaining;
+    double quotient = top / total;
+    while (quotient > v) {
+      s++;
+      top--;
+      total--;
+      quotient *= top / total;
+    }
+    return s;
+  }
+}
@@ -0,0 +1,46 @@
+package easytest.plugin.mutation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses one of a fixed set of items with probability proportional to its weight, by binary search
+ * over the cumulative weights.
+ */
+final class WeightedChoice<T> {
+
+  private final List<T> items;
+  private final double[] cumulative;
+
+  WeightedChoice(List<T> items, double[] weights) {
+    if (items.size() != weights.length) {
+      throw new IllegalArgumentException("Every item must have a weight.");
+    }
+    this.items = items;
+    this.cumulative = new double[weights.length];
+
+    double total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] < 0 || Double.isNaN(weights[i])) {
+        throw new IllegalArgumentException(String.format("Weight of '%s' cannot be negative.", items.get(i)));
+      }
+      total += weights[i];
+      this.cumulative[i] = total;
+    }
+    if (total <= 0) {
+      throw new IllegalArgumentException("At least one weight must be positive.");
+    }
+  }
+
+  T choose(SplittableRandom random) {
+    double target = random.nextDouble() * this.cumulative[this.cumulative.length - 1];
+    int index = Arrays.binarySearch(this.cumulative, target);
+    index = index < 0 ? -index - 1 : index + 1;
+    // items with a zero weight share their cumulative value with the previous item, skip them
+    while (index < this.cumulative.length - 1 && this.cumulative[index] <= target) {
+      index++;
+    }
+    return this.items.get(Math.min(index, this.items.size() - 1));
+  }
+}
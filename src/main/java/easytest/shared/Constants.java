@@ -17,5 +17,13 @@ public class Constants {
   public static final String MUTATION_SPECIFIC = "Set to specified value";
   public static final String MUTATION_LARGE_NEGATIVE = "Set to large negative value";
   public static final String MUTATION_LARGE_POSITIVE = "Set to large positive value";
+  public static final String MUTATION_TRUNCATE = "Truncate string";
+  public static final String MUTATION_PAD = "Pad string";
+  public static final String MUTATION_CORRUPT_ENCODING = "Corrupt string encoding";
+  public static final String MUTATION_SHIFT_FORWARD = "Shift date/time forward";
+  public static final String MUTATION_SHIFT_BACKWARD = "Shift date/time backward";
+  public static final String MUTATION_DECIMAL_SCALE = "Change decimal scale";
+  public static final String MUTATION_DROP_ELEMENT = "Drop element";
+  public static final String MUTATION_DUPLICATE = "Duplicate record";
 
 }
@@ -0,0 +1,97 @@
+package easytest.shared;
+
+import io.cdap.cdap.etl.api.Arguments;
+import io.cdap.cdap.etl.api.SettableArguments;
+import io.cdap.cdap.etl.api.StageContext;
+
+import java.util.Map;
+
+/**
+ * Fixture values and assertion flags, as seen by the stages of a pipeline. Fixtures publish them
+ * as runtime arguments when the pipeline is prepared, which are shipped with the stage to every
+ * executor. Values published only to the {@link SingletonSharedMap} are used as a fallback, they
+ * are only visible in the JVM that ran the fixture.
+ */
+public final class FixtureState {
+
+  private static final String FIXTURE_PREFIX = "easytest.fixture.";
+  private static final String FIXTURE_TYPE_PREFIX = "easytest.fixture-type.";
+  private static final String ASSERTION_PREFIX = "easytest.assertion.";
+
+  private FixtureState() {
+    // no-op
+  }
+
+  public static String tokenArgument(String fixture, String key) {
+    return FIXTURE_PREFIX + fixture + "." + key;
+  }
+
+  public static String typeArgument(String fixture, String key) {
+    return FIXTURE_TYPE_PREFIX + fixture + "." + key;
+  }
+
+  public static String enabledArgument(String assertion) {
+    return ASSERTION_PREFIX + assertion + "." + Constants.ENABLED;
+  }
+
+  /**
+   * Publishes the values of a fixture along with their types, called when the pipeline is prepared.
+   * Values without a type are strings.
+   */
+  public static void publishTokens(SettableArguments arguments, String fixture, Map<String, String> values,
+                                   Map<String, FixtureValueType> types) {
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      arguments.set(tokenArgument(fixture, entry.getKey()), entry.getValue());
+    }
+    for (Map.Entry<String, FixtureValueType> entry : types.entrySet()) {
+      arguments.set(typeArgument(fixture, entry.getKey()), entry.getValue().toString());
+    }
+  }
+
+  /**
+   * Publishes whether an assertion is enabled, called when the pipeline is prepared.
+   */
+  public static void publishEnabled(SettableArguments arguments, String assertion, boolean enabled) {
+    arguments.set(enabledArgument(assertion), Boolean.toString(enabled));
+  }
+
+  /**
+   * Reads a fixture value, parsing it into its declared type. Values are read once per stage, so
+   * they are not parsed again for every record.
+   *
+   * @return the value of a fixture key, or null if the fixture does not define it.
+   * @throws IllegalArgumentException if the value is not of its declared type.
+   */
+  public static Object getToken(StageContext context, String fixture, String key) throws IllegalArgumentException {
+    Arguments arguments = context.getArguments();
+    String argument = tokenArgument(fixture, key);
+    if (arguments.has(argument)) {
+      String type = typeArgument(fixture, key);
+      if (arguments.has(type)) {
+        return FixtureValueType.fromString(arguments.get(type)).parse(arguments.get(argument));
+      }
+      return arguments.get(argument);
+    }
+    // values shared by the fixture are already parsed
+    return SingletonSharedMap.getInstance()
+        .snapshot(SingletonSharedMap.getUniqueMapId(context, fixture))
+        .get(key);
+  }
+
+  /**
+   * @return false if a fixture has disabled the assertion of this stage, true otherwise.
+   */
+  public static boolean isEnabled(StageContext context) {
+    Arguments arguments = context.getArguments();
+    String argument = enabledArgument(context.getStageName());
+    if (arguments.has(argument)) {
+      return Boolean.parseBoolean(arguments.get(argument));
+    }
+
+    // a single snapshot read, so the flag cannot change between the check and the read
+    Object enabled = SingletonSharedMap.getInstance()
+        .snapshot(SingletonSharedMap.getUniqueMapId(context, context.getStageName()))
+        .get(Constants.ENABLED);
+    return enabled == null || Boolean.TRUE.equals(enabled);
+  }
+}
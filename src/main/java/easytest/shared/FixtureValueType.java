@@ -0,0 +1,137 @@
+package easytest.shared;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Type of a fixture value. Values are written as strings in the fixture and parsed once, when the
+ * stages reading them are initialized, so expressions get values of the declared type.
+ */
+public enum FixtureValueType {
+  STRING("string"),
+  INT("int"),
+  LONG("long"),
+  DOUBLE("double"),
+  DECIMAL("decimal"),
+  BOOLEAN("boolean"),
+  TIMESTAMP("timestamp"),
+  LIST("list"),
+  LOOKUP("lookup"),
+  LOOKUP_BLOOM("lookup-bloom");
+
+  /**
+   * Separator of the elements of a list, fixture values are already separated by ','.
+   */
+  public static final String LIST_SEPARATOR = ";";
+
+  private static final long MICROS_PER_SECOND = 1_000_000L;
+
+  public static FixtureValueType fromString(String value) {
+    for (FixtureValueType type : values()) {
+      if (type.identifier.equalsIgnoreCase(value)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unknown fixture value type: %s", value));
+  }
+
+  private final String identifier;
+
+  FixtureValueType(String identifier) {
+    this.identifier = identifier;
+  }
+
+  /**
+   * Checks that a value is of this type without loading it. Lookup files are only read by the
+   * stages using them, as they may not exist where the pipeline is deployed.
+   *
+   * @throws IllegalArgumentException if the value is not of this type.
+   */
+  public void check(String value) throws IllegalArgumentException {
+    if (this == LOOKUP || this == LOOKUP_BLOOM) {
+      if (value == null || value.trim().isEmpty()) {
+        throw new IllegalArgumentException(String.format("Value of type '%s' must be a file path.", this.identifier));
+      }
+      return;
+    }
+    parse(value);
+  }
+
+  /**
+   * Parses a fixture value. Timestamps are ISO-8601 instants, date-times with an offset or dates,
+   * converted to microseconds since the epoch as CDAP stores timestamp fields. Lists are strings
+   * separated by {@link #LIST_SEPARATOR}. Lookups are local reference files, loaded off the heap
+   * once per JVM through the {@link LookupRegistry}.
+   *
+   * @param value value as written in the fixture, null if the fixture does not define it.
+   * @return the value of this type, or null if the value is null.
+   * @throws IllegalArgumentException if the value is not of this type.
+   */
+  public Object parse(String value) throws IllegalArgumentException {
+    if (value == null) {
+      return null;
+    }
+    String str = value.trim();
+    try {
+      switch (this) {
+        case INT:
+          return Integer.parseInt(str);
+        case LONG:
+          return Long.parseLong(str);
+        case DOUBLE:
+          return Double.parseDouble(str);
+        case DECIMAL:
+          return new BigDecimal(str);
+        case BOOLEAN:
+          if (!str.equalsIgnoreCase("true") && !str.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException(String.format("Value '%s' is not a boolean.", value));
+          }
+          return Boolean.parseBoolean(str);
+        case TIMESTAMP:
+          return toMicros(parseInstant(str));
+        case LIST:
+          List<String> elements = new ArrayList<>();
+          for (String element : str.split(LIST_SEPARATOR, -1)) {
+            elements.add(element.trim());
+          }
+          return Collections.unmodifiableList(elements);
+        case LOOKUP:
+        case LOOKUP_BLOOM:
+          return LookupRegistry.getInstance().get(str, this == LOOKUP_BLOOM);
+        default:
+          return value;
+      }
+    } catch (NumberFormatException | DateTimeParseException | ArithmeticException e) {
+      throw new IllegalArgumentException(String.format("Value '%s' is not of type '%s'.", value, this.identifier));
+    }
+  }
+
+  private static Instant parseInstant(String str) {
+    try {
+      return Instant.parse(str);
+    } catch (DateTimeParseException e) {
+      // not an instant in UTC, try with an offset then as a date
+    }
+    try {
+      return OffsetDateTime.parse(str).toInstant();
+    } catch (DateTimeParseException e) {
+      return LocalDate.parse(str).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+  }
+
+  private static long toMicros(Instant instant) {
+    return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), MICROS_PER_SECOND), instant.getNano() / 1000);
+  }
+
+  @Override
+  public String toString() {
+    return this.identifier;
+  }
+}
@@ -0,0 +1,76 @@
+package easytest.shared;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hashing of field values. Equal values of the same type hash equally in every JVM, so
+ * hashes computed on different executors can be compared and merged.
+ */
+public final class Hashing {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private Hashing() {
+    // no-op
+  }
+
+  /**
+   * Finalization step of MurmurHash3, spreads the bits of a 64-bit value.
+   */
+  public static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  public static long hash(Object value) {
+    if (value == null) {
+      return 0L;
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return mix(((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      return mix(Double.doubleToLongBits(((Number) value).doubleValue()));
+    } else if (value instanceof Boolean) {
+      return mix((Boolean) value ? 1L : 2L);
+    } else if (value instanceof CharSequence) {
+      return hash((CharSequence) value);
+    } else if (value instanceof byte[]) {
+      return hash((byte[]) value, 0, ((byte[]) value).length);
+    } else if (value instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+      long h = FNV_OFFSET;
+      while (buffer.hasRemaining()) {
+        h = (h ^ (buffer.get() & 0xff)) * FNV_PRIME;
+      }
+      return mix(h);
+    }
+    return hash(value.toString());
+  }
+
+  public static long hash(CharSequence value) {
+    long h = FNV_OFFSET;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      h = (h ^ (c & 0xff)) * FNV_PRIME;
+      h = (h ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return mix(h);
+  }
+
+  public static long hash(byte[] bytes, int offset, int length) {
+    long h = FNV_OFFSET;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ (bytes[i] & 0xff)) * FNV_PRIME;
+    }
+    return mix(h);
+  }
+
+  public static byte[] utf8(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,259 @@
+package easytest.shared;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Read-only set of string keys, optionally mapped to values, loaded from a reference file and kept
+ * off the heap, so large reference data neither bloats executor heaps nor adds to garbage
+ * collection. Keys are found through an open-addressing table of 64-bit hashes, optionally fronted
+ * by a Bloom filter that rejects most absent keys without probing the table.
+ *
+ * <p>The file holds one entry per line, a key optionally followed by a tab and its value. Blank
+ * lines are ignored and the first of duplicate keys wins. Instances are safe to share between
+ * threads, since they are only read once loaded.</p>
+ */
+public final class LookupIndex {
+
+  // a slot is the hash of the key and the position of the entry in the data plus one, zero if empty
+  private static final int SLOT_BYTES = Long.BYTES + Integer.BYTES;
+  private static final int NO_VALUE = -1;
+
+  private static final int BLOOM_BITS_PER_KEY = 10;
+  private static final int BLOOM_HASHES = 7;
+
+  private final String source;
+  private final int size;
+
+  private final ByteBuffer slots;
+  private final int mask;
+  private final ByteBuffer data;
+
+  // null if the index has no Bloom filter
+  private final ByteBuffer bloom;
+  private final long bloomMask;
+
+  private LookupIndex(String source, int size, ByteBuffer slots, ByteBuffer data, ByteBuffer bloom) {
+    this.source = source;
+    this.size = size;
+    this.slots = slots;
+    this.mask = slots.capacity() / SLOT_BYTES - 1;
+    this.data = data;
+    this.bloom = bloom;
+    this.bloomMask = bloom == null ? 0L : (long) bloom.capacity() * Byte.SIZE - 1;
+  }
+
+  /**
+   * Loads a reference file. The file is read twice, once to size the buffers and once to fill
+   * them, so the entries are never held on the heap all at once.
+   *
+   * @param file        reference file, see the class description for its format.
+   * @param bloomFilter whether to put a Bloom filter in front of the table.
+   * @throws IOException if the file cannot be read.
+   * @throws IllegalArgumentException if the file has too many entries to be indexed.
+   */
+  public static LookupIndex load(Path file, boolean bloomFilter) throws IOException {
+    long entries = 0;
+    long bytes = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          entries++;
+          bytes += 2 * Integer.BYTES + line.getBytes(StandardCharsets.UTF_8).length;
+        }
+      }
+    }
+
+    long capacity = Long.highestOneBit(Math.max(2L, entries * 2 - 1)) << 1;
+    if (capacity * SLOT_BYTES > Integer.MAX_VALUE || bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          String.format("Lookup file '%s' has too many entries (%d) to be indexed.", file, entries));
+    }
+    ByteBuffer slots = ByteBuffer.allocateDirect((int) (capacity * SLOT_BYTES));
+    ByteBuffer data = ByteBuffer.allocateDirect((int) bytes);
+    ByteBuffer bloom = null;
+    if (bloomFilter) {
+      long bits = Long.highestOneBit(Math.max(Long.SIZE, entries * BLOOM_BITS_PER_KEY - 1)) << 1;
+      bloom = ByteBuffer.allocateDirect((int) (bits / Byte.SIZE));
+    }
+
+    LookupIndex index = new LookupIndex(file.toString(), 0, slots, data, bloom);
+    int size = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      for (long read = 0; read < entries && (line = reader.readLine()) != null; ) {
+        if (!line.trim().isEmpty()) {
+          read++;
+          if (index.insert(line)) {
+            size++;
+          }
+        }
+      }
+    } catch (BufferOverflowException e) {
+      throw new IOException(String.format("Lookup file '%s' changed while it was loaded.", file));
+    }
+    return new LookupIndex(file.toString(), size, slots, data, bloom);
+  }
+
+  /**
+   * @return whether the index holds the key.
+   */
+  public boolean contains(String key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * @return the value of the key, the empty string if the key has no value, or null if the index
+   *         does not hold the key.
+   */
+  public String get(String key) {
+    int entry = find(key);
+    if (entry < 0) {
+      return null;
+    }
+    int valueAt = entry + Integer.BYTES + this.data.getInt(entry);
+    int length = this.data.getInt(valueAt);
+    return length == NO_VALUE ? "" : decode(valueAt + Integer.BYTES, length);
+  }
+
+  /**
+   * @return the number of distinct keys.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return the number of bytes held off the heap.
+   */
+  public long offHeapBytes() {
+    return (long) this.slots.capacity() + this.data.capacity() + (this.bloom == null ? 0 : this.bloom.capacity());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("lookup(%s, %d keys)", this.source, this.size);
+  }
+
+  /**
+   * @return the position of the entry of the key in the data, or a negative value if absent.
+   */
+  private int find(String key) {
+    long hash = Hashing.hash(key);
+    if (this.bloom != null && !mightContain(hash)) {
+      return -1;
+    }
+    for (int slot = (int) hash & this.mask; ; slot = (slot + 1) & this.mask) {
+      int ref = this.slots.getInt(slot * SLOT_BYTES + Long.BYTES);
+      if (ref == 0) {
+        return -1;
+      }
+      if (this.slots.getLong(slot * SLOT_BYTES) == hash && keyEquals(ref - 1, key)) {
+        return ref - 1;
+      }
+    }
+  }
+
+  /**
+   * Appends a line to the data and indexes its key, called while loading.
+   *
+   * @return false if the key is a duplicate.
+   */
+  private boolean insert(String line) {
+    int tab = line.indexOf('\t');
+    String key = (tab < 0 ? line : line.substring(0, tab)).trim();
+    long hash = Hashing.hash(key);
+
+    int slot = (int) hash & this.mask;
+    for (int ref; (ref = this.slots.getInt(slot * SLOT_BYTES + Long.BYTES)) != 0; slot = (slot + 1) & this.mask) {
+      if (this.slots.getLong(slot * SLOT_BYTES) == hash && keyEquals(ref - 1, key)) {
+        return false;
+      }
+    }
+
+    int entry = this.data.position();
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    this.data.putInt(keyBytes.length).put(keyBytes);
+    if (tab < 0) {
+      this.data.putInt(NO_VALUE);
+    } else {
+      byte[] valueBytes = line.substring(tab + 1).trim().getBytes(StandardCharsets.UTF_8);
+      this.data.putInt(valueBytes.length).put(valueBytes);
+    }
+
+    this.slots.putLong(slot * SLOT_BYTES, hash);
+    this.slots.putInt(slot * SLOT_BYTES + Long.BYTES, entry + 1);
+    if (this.bloom != null) {
+      addToBloom(hash);
+    }
+    return true;
+  }
+
+  private boolean keyEquals(int entry, String key) {
+    int length = this.data.getInt(entry);
+    int position = entry + Integer.BYTES;
+    int end = position + length;
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if (c >= 0x80) {
+        // not ASCII, compare the encoded key instead of encoding it here
+        return keyEquals(entry, key.getBytes(StandardCharsets.UTF_8));
+      }
+      if (position == end || this.data.get(position++) != (byte) c) {
+        return false;
+      }
+    }
+    return position == end;
+  }
+
+  private boolean keyEquals(int entry, byte[] key) {
+    if (this.data.getInt(entry) != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (this.data.get(entry + Integer.BYTES + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String decode(int position, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = this.data.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // bits are chosen by double hashing over a remix of the hash, as the table uses its low bits
+  private void addToBloom(long hash) {
+    long mixed = Hashing.mix(hash);
+    long h1 = mixed;
+    long h2 = (mixed >>> 32) | 1L;
+    for (int i = 0; i < BLOOM_HASHES; i++) {
+      long bit = (h1 + i * h2) & this.bloomMask;
+      int index = (int) (bit >>> 3);
+      this.bloom.put(index, (byte) (this.bloom.get(index) | (1 << (bit & 7))));
+    }
+  }
+
+  private boolean mightContain(long hash) {
+    long mixed = Hashing.mix(hash);
+    long h1 = mixed;
+    long h2 = (mixed >>> 32) | 1L;
+    for (int i = 0; i < BLOOM_HASHES; i++) {
+      long bit = (h1 + i * h2) & this.bloomMask;
+      if ((this.bloom.get((int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,112 @@
+package easytest.shared;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Process-wide registry of the {@link LookupIndex} loaded from reference files, so the stages
+ * running in the same JVM load a file only once, however many of them read it. Indexes are keyed
+ * by the file along with its size and modification time, so a changed file is loaded again, and
+ * are only weakly held: once no stage uses an index, it is collected along with its off-heap
+ * buffers.
+ */
+public final class LookupRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LookupRegistry.class);
+
+  private static final LookupRegistry INSTANCE = new LookupRegistry();
+
+  public static LookupRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  // concurrent requests for the same file wait for a single load
+  private final LoadingCache<Key, LookupIndex> indexes;
+
+  private LookupRegistry() {
+    this.indexes = CacheBuilder.newBuilder()
+        .weakValues()
+        .build(new CacheLoader<Key, LookupIndex>() {
+          @Override
+          public LookupIndex load(Key key) throws IOException {
+            long start = System.nanoTime();
+            LookupIndex index = LookupIndex.load(key.file, key.bloomFilter);
+            LOG.info("Loaded {} into {} bytes off the heap in {} ms.",
+                index, index.offHeapBytes(), (System.nanoTime() - start) / 1_000_000);
+            return index;
+          }
+        });
+  }
+
+  /**
+   * Returns the index of a reference file, loading it if it is not already loaded.
+   *
+   * @param path        local path of the reference file.
+   * @param bloomFilter whether the index has a Bloom filter in front of its table.
+   * @throws IllegalArgumentException if the file cannot be read or indexed.
+   */
+  public LookupIndex get(String path, boolean bloomFilter) throws IllegalArgumentException {
+    Key key;
+    try {
+      Path file = Paths.get(path).toAbsolutePath().normalize();
+      key = new Key(file, Files.size(file), Files.getLastModifiedTime(file).toMillis(), bloomFilter);
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalArgumentException(String.format("Lookup file '%s' cannot be read: %s", path, e.getMessage()));
+    }
+
+    try {
+      return this.indexes.getUnchecked(key);
+    } catch (UncheckedExecutionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof IllegalArgumentException) {
+        throw (IllegalArgumentException) cause;
+      }
+      throw new IllegalArgumentException(
+          String.format("Lookup file '%s' cannot be loaded: %s", path, cause.getMessage()));
+    }
+  }
+
+  private static final class Key {
+
+    private final Path file;
+    private final long size;
+    private final long modified;
+    private final boolean bloomFilter;
+
+    Key(Path file, long size, long modified, boolean bloomFilter) {
+      this.file = file;
+      this.size = size;
+      this.modified = modified;
+      this.bloomFilter = bloomFilter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.file.equals(other.file) && this.size == other.size && this.modified == other.modified
+          && this.bloomFilter == other.bloomFilter;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.file, this.size, this.modified, this.bloomFilter);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package easytest.shared;
+
+import io.cdap.cdap.etl.api.StageMetrics;
+
+/**
+ * Times a sample of the calls to an operation, so the cost of reading the clock is only paid once
+ * every 2^n calls. Samples are counted in power of two buckets, published as one counter per
+ * bucket named after its upper bound in nanoseconds, e.g. '&lt;name&gt;.le.1024', which gives a
+ * histogram of the latency that can be summed across instances of the stage.
+ */
+public final class SampledTimer {
+
+  // samples of 2^(BUCKETS - 1) nanoseconds, about 9 minutes, or more fall in the last bucket
+  private static final int BUCKETS = 40;
+
+  private final String name;
+  private final long mask;
+  private final long[] buckets = new long[BUCKETS];
+
+  private long calls = 0;
+  private long samples = 0;
+  private long total = 0;
+
+  SampledTimer(String name, int sampleShift) {
+    if (sampleShift < 0 || sampleShift > 30) {
+      throw new IllegalArgumentException(String.format("Sample shift must be between 0 and 30, was %d.", sampleShift));
+    }
+    this.name = name;
+    this.mask = (1L << sampleShift) - 1;
+  }
+
+  /**
+   * @return true if this call should be timed and its duration passed to {@link #record(long)}.
+   */
+  public boolean sample() {
+    return (this.calls++ & this.mask) == 0;
+  }
+
+  public void record(long nanos) {
+    int bucket = nanos <= 0 ? 0 : Math.min(63 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+    this.buckets[bucket]++;
+    this.samples++;
+    this.total += Math.max(nanos, 0);
+  }
+
+  void flush(StageMetrics metrics) {
+    if (this.samples == 0) {
+      return;
+    }
+    metrics.countLong(this.name + ".samples", this.samples);
+    metrics.countLong(this.name + ".total", this.total);
+    for (int i = 0; i < BUCKETS; i++) {
+      if (this.buckets[i] != 0) {
+        String bound = i == BUCKETS - 1 ? "inf" : Long.toString(1L << (i + 1));
+        metrics.countLong(this.name + ".le." + bound, this.buckets[i]);
+        this.buckets[i] = 0;
+      }
+    }
+    this.samples = 0;
+    this.total = 0;
+  }
+}
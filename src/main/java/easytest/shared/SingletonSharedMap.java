@@ -2,9 +2,17 @@ package easytest.shared;
 
 import io.cdap.cdap.etl.api.StageContext;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Registry of named maps shared by the stages running in the same JVM, such as the Spark tasks of
+ * an executor. Every map is an immutable snapshot that writers replace atomically, so readers
+ * never lock and always see a consistent map, while writers to different maps do not contend.
+ */
 public class SingletonSharedMap {
 
   public static String getUniqueMapId(StageContext context, String name) {
@@ -15,15 +23,15 @@ public class SingletonSharedMap {
   }
 
   public static SingletonSharedMap getInstance() {
-    if (instance == null) {
-      instance = new SingletonSharedMap();
-    }
-    return instance;
+    return Holder.INSTANCE;
   }
 
-  private static SingletonSharedMap instance = null;
+  // initialized by the class loader on first use, which guarantees safe publication
+  private static final class Holder {
+    private static final SingletonSharedMap INSTANCE = new SingletonSharedMap();
+  }
 
-  private Map<String, Map<String, Object>> maps = new HashMap<>();
+  private final ConcurrentMap<String, Map<String, Object>> maps = new ConcurrentHashMap<>();
 
   private SingletonSharedMap() {
     // no-op
@@ -34,38 +42,50 @@ public class SingletonSharedMap {
   }
 
   public boolean has(String mapId, String key) {
-    if (!hasMap(mapId)) {
-      return false;
-    }
-    return this.maps.get(mapId).containsKey(key);
+    return snapshot(mapId).containsKey(key);
   }
 
   public boolean getBoolean(String mapId, String key) {
-    if (!hasMap(mapId)) {
-      return false;
-    }
-    return (Boolean) this.maps.get(mapId).getOrDefault(key, false);
+    Object value = snapshot(mapId).get(key);
+    return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(String.valueOf(value));
   }
 
   public String getString(String mapId, String key) {
     if (!hasMap(mapId)) {
       return null;
     }
-    return String.valueOf(this.maps.get(mapId).get(key));
+    return String.valueOf(snapshot(mapId).get(key));
   }
 
+  /**
+   * @return a read-only snapshot of the map, empty if it does not exist. Later writes to the map
+   *         are not visible through the snapshot.
+   */
+  public Map<String, Object> snapshot(String id) {
+    Map<String, Object> map = this.maps.get(id);
+    return map == null ? Collections.<String, Object>emptyMap() : map;
+  }
+
+  /**
+   * @return a read-only snapshot of the map, see {@link #snapshot(String)}.
+   */
   public Map<String, Object> getMap(String id) {
-    if (!hasMap(id)) {
-      this.maps.put(id, new HashMap<>());
-    }
-    return this.maps.get(id);
+    return snapshot(id);
   }
 
   public void put(String mapId, String key, Object value) {
-    if (!hasMap(mapId)) {
-      this.maps.put(mapId, new HashMap<>());
-    }
-    this.maps.get(mapId).put(key, value);
+    publish(mapId, Collections.singletonMap(key, value));
+  }
+
+  /**
+   * Adds the values to the map, creating it if needed. Readers see either none or all of them.
+   */
+  public void publish(String mapId, Map<String, ?> values) {
+    this.maps.compute(mapId, (id, current) -> {
+      Map<String, Object> next = current == null ? new HashMap<>() : new HashMap<>(current);
+      next.putAll(values);
+      return Collections.unmodifiableMap(next);
+    });
   }
 
   public void removeMap(String id) {
@@ -0,0 +1,98 @@
+package easytest.shared;
+
+import io.cdap.cdap.etl.api.StageMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Counters and timers of a stage, accumulated locally and published to the {@link StageMetrics} in
+ * batches. Every metric update goes through the metrics system of the engine, which costs too much
+ * to be done several times for every record.
+ */
+public final class StageCounters {
+
+  public static final int FLUSH_INTERVAL = 4096;
+
+  private final StageMetrics metrics;
+  private final List<Counter> counters = new ArrayList<>();
+  private final List<SampledTimer> timers = new ArrayList<>();
+
+  private int records = 0;
+
+  public StageCounters(StageMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public Counter counter(String name) {
+    Counter counter = new Counter(name);
+    this.counters.add(counter);
+    return counter;
+  }
+
+  /**
+   * @param sampleShift one call out of 2^sampleShift is timed.
+   */
+  public SampledTimer timer(String name, int sampleShift) {
+    SampledTimer timer = new SampledTimer(name, sampleShift);
+    this.timers.add(timer);
+    return timer;
+  }
+
+  /**
+   * Marks the end of a record, the metrics are published once every {@link #FLUSH_INTERVAL} records.
+   */
+  public void tick() {
+    if (++this.records >= FLUSH_INTERVAL) {
+      flush();
+    }
+  }
+
+  /**
+   * Publishes the updates since the last flush, called when the stage is destroyed or fails.
+   */
+  public void flush() {
+    this.records = 0;
+    for (Counter counter : this.counters) {
+      counter.flush(this.metrics);
+    }
+    for (SampledTimer timer : this.timers) {
+      timer.flush(this.metrics);
+    }
+  }
+
+  /**
+   * @return the value as a metric name component, e.g. 'Shift date/time forward' becomes 'shift-date-time-forward'.
+   */
+  public static String metricName(String value) {
+    return value.toLowerCase(Locale.ROOT)
+        .replaceAll("[^a-z0-9]+", "-")
+        .replaceAll("^-|-$", "");
+  }
+
+  public static final class Counter {
+
+    private final String name;
+    private long value = 0;
+
+    private Counter(String name) {
+      this.name = name;
+    }
+
+    public void increment() {
+      this.value++;
+    }
+
+    public void add(long delta) {
+      this.value += delta;
+    }
+
+    private void flush(StageMetrics metrics) {
+      if (this.value != 0) {
+        metrics.countLong(this.name, this.value);
+        this.value = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package easytest.shared;
+
+/**
+ * Identifies the partition processed by the current task, when running on Spark.
+ */
+public final class TaskPartition {
+
+  public static final int UNKNOWN = -1;
+
+  private TaskPartition() {
+    // no-op
+  }
+
+  /**
+   * @return the partition of the current Spark task, or {@link #UNKNOWN} when not running in a
+   *         Spark task or when Spark is not available.
+   */
+  public static int current() {
+    try {
+      return Spark.partitionId();
+    } catch (LinkageError e) {
+      // Spark classes are not available with other engines
+      return UNKNOWN;
+    }
+  }
+
+  // isolates the references to Spark, so they are only resolved when called
+  private static final class Spark {
+    static int partitionId() {
+      org.apache.spark.TaskContext task = org.apache.spark.TaskContext.get();
+      return task == null ? UNKNOWN : task.partitionId();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package easytest.expression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConstantFolderTest {
+
+  private static final Namespace FUNCTIONS = () -> {
+    Map<String, Object> functions = new HashMap<>();
+    functions.put(null, Global.class);
+    functions.put("math", Math.class);
+    return functions;
+  };
+
+  private static final Engine[] ENGINES = {Engine.JEXL, Engine.COMPILED};
+
+  @Test
+  public void testFoldToTrue() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      Expression expression = create("global['limit'] > 1 && runtime['mode'] == 'full'", engine);
+      Assert.assertEquals(Boolean.TRUE, expression.fold(constants()));
+      Assert.assertEquals("true", expression.getText());
+      Assert.assertTrue(expression.evaluateAsBoolean(record(0)));
+    }
+  }
+
+  @Test
+  public void testFoldToFalse() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      Expression expression = create("token['fixture']['key'] == 'other' || global['limit'] < 1", engine);
+      Assert.assertEquals(Boolean.FALSE, expression.fold(constants()));
+      Assert.assertEquals("false", expression.getText());
+      Assert.assertFalse(expression.evaluateAsBoolean(record(0)));
+    }
+  }
+
+  @Test
+  public void testPartialFold() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      Expression expression = create("input['x'] > global['limit'] * 2 && runtime['mode'] == 'full'", engine);
+      Assert.assertNull(expression.fold(constants()));
+      Assert.assertEquals("(input['x'] > 10)", expression.getText());
+      Assert.assertEquals(engine, expression.getEngine());
+      Assert.assertTrue(expression.evaluateAsBoolean(record(11)));
+      Assert.assertFalse(expression.evaluateAsBoolean(record(10)));
+    }
+  }
+
+  @Test
+  public void testShortCircuits() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      // the right operand is never evaluated, even though it fails
+      Assert.assertEquals(Boolean.FALSE, fold("global['no'] && input['x'] / 0 > 1", engine));
+      Assert.assertEquals(Boolean.TRUE, fold("global['yes'] || input['x'] / 0 > 1", engine));
+
+      Assert.assertEquals("(input['x'] > 1)", foldedText("global['yes'] && input['x'] > 1", engine));
+      Assert.assertEquals("(input['x'] > 1)", foldedText("global['no'] || input['x'] > 1", engine));
+      Assert.assertEquals("(input['x'] > 1)", foldedText("input['x'] > 1 && global['yes']", engine));
+      Assert.assertEquals("(input['x'] > 1)", foldedText("input['x'] > 1 || global['no']", engine));
+
+      Assert.assertEquals("(input['x'] > 1)", foldedText("global['yes'] ? input['x'] > 1 : input['x'] / 0", engine));
+      Assert.assertEquals("(input['x'] > 2)", foldedText("global['no'] ? input['x'] / 0 : input['x'] > 2", engine));
+      // a null condition selects the second branch
+      Assert.assertEquals("(input['x'] > 3)", foldedText("global['none'] ? input['x'] > 1 : input['x'] > 3", engine));
+    }
+  }
+
+  @Test
+  public void testFailureKept() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      // a constant operation that fails is evaluated, and fails, with every record
+      Expression expression = create("input['x'] > global['limit'] / global['zero']", engine);
+      Assert.assertNull(expression.fold(constants()));
+      Assert.assertEquals("(input['x'] > (5 / 0))", expression.getText());
+      try {
+        expression.evaluateAsBoolean(record(1));
+        Assert.fail("Division by zero evaluated with " + engine);
+      } catch (ExpressionException e) {
+        // expected
+      }
+
+      // so does a null operand of a boolean operator
+      Assert.assertEquals("(null && (input['x'] > 1))", foldedText("global['none'] && input['x'] > 1", engine));
+    }
+  }
+
+  @Test
+  public void testCallWithoutArguments() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      Assert.assertEquals("(math:random() < 1)", foldedText("math:random() < global['one']", engine));
+      Assert.assertEquals("(input['x'] > 5)", foldedText("input['x'] > math:abs(-global['limit'])", engine));
+    }
+  }
+
+  @Test
+  public void testFoldedValue() throws ExpressionException {
+    for (Engine engine : ENGINES) {
+      Assert.assertEquals("(input['x'] == 'abc5')", foldedText("input['x'] == global['name'] + global['limit']", engine));
+      Assert.assertEquals("(input['x'] == 2.5D)", foldedText("input['x'] == global['limit'] / 2.0", engine));
+      Assert.assertEquals("(input['x'] == 2)", foldedText("input['x'] == global['limit'] / 2", engine));
+      Assert.assertEquals("(input['x'] == 3.5B)", foldedText("input['x'] == global['decimal'] + 1", engine));
+      Assert.assertEquals("(input['x'] == 2147483648L)", foldedText("input['x'] == global['max'] + 1", engine));
+    }
+  }
+
+  @Test
+  public void testLiteralRoundTrip() throws ExpressionException {
+    Object[] values = {
+        0, 5, -5, Integer.MAX_VALUE, Integer.MIN_VALUE, 5L, -5L, Long.MAX_VALUE, Long.MIN_VALUE,
+        new BigInteger("-123456789012345678901234567890"), 2.5D, -2.5D, 0.0D, -0.0D, 1e300D, 1e-300D,
+        Double.MAX_VALUE, Double.MIN_VALUE, 0.1F, -0.1F, 3.4e38F, 1.4e-45F,
+        new BigDecimal("2.50"), new BigDecimal("-1.5"), new BigDecimal("5"), new BigDecimal("0.000"),
+        "", "abc", "it's", "\"quoted\"", "back\\slash", "\\u0041", "line\nbreak", "tab\t", "caf\u00e9", "a\\'b",
+        true, false, null};
+
+    ExpressionCompiler compiler = new ExpressionCompiler(FUNCTIONS);
+    for (Object value : values) {
+      String text = new Node.Literal(value).toString();
+
+      Object parsed = ExpressionCache.getInstance().compile(FUNCTIONS, text).execute(new Context());
+      assertSame(text, value, parsed);
+
+      Object compiled = compiler.compile(text).eval(new Context());
+      assertSame(text, value, compiled);
+    }
+  }
+
+  private static void assertSame(String text, Object expected, Object actual) {
+    Assert.assertEquals(text, expected, actual);
+    if (expected != null) {
+      Assert.assertEquals(text, expected.getClass(), actual.getClass());
+    }
+  }
+
+  private static Boolean fold(String text, Engine engine) throws ExpressionException {
+    return create(text, engine).fold(constants());
+  }
+
+  private static String foldedText(String text, Engine engine) throws ExpressionException {
+    Expression expression = create(text, engine);
+    expression.fold(constants());
+    return expression.getText();
+  }
+
+  private static Expression create(String text, Engine engine) throws ExpressionException {
+    Expression expression = new Expression(FUNCTIONS, engine);
+    expression.create(text);
+    return expression;
+  }
+
+  private static Context constants() {
+    ContextBuilder builder = new ContextBuilder()
+        .addVariable(VariableType.GLOBAL, "limit", 5)
+        .addVariable(VariableType.GLOBAL, "zero", 0)
+        .addVariable(VariableType.GLOBAL, "one", 1)
+        .addVariable(VariableType.GLOBAL, "max", Integer.MAX_VALUE)
+        .addVariable(VariableType.GLOBAL, "decimal", new BigDecimal("2.5"))
+        .addVariable(VariableType.GLOBAL, "name", "abc")
+        .addVariable(VariableType.GLOBAL, "yes", true)
+        .addVariable(VariableType.GLOBAL, "no", false)
+        .addVariable(VariableType.GLOBAL, "none", null)
+        .addVariable(VariableType.RUNTIME, "mode", "full")
+        .addTokens("fixture", Collections.singletonMap("key", "value"));
+    return builder.build();
+  }
+
+  private static Context record(Object x) {
+    return new ContextBuilder().addVariable(VariableType.INPUT, "x", x).build();
+  }
+}
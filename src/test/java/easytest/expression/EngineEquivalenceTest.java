@@ -0,0 +1,240 @@
+package easytest.expression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the same expressions through the JEXL and the compiled engines, and checks that they give
+ * the same value, of the same type, or both fail.
+ */
+public class EngineEquivalenceTest {
+
+  private static final Namespace FUNCTIONS = () -> {
+    Map<String, Object> functions = new HashMap<>();
+    functions.put(null, Global.class);
+    functions.put("math", Math.class);
+    return functions;
+  };
+
+  private static final Map<String, Object> INPUT = new LinkedHashMap<>();
+
+  static {
+    INPUT.put("n", null);
+    INPUT.put("i", 5);
+    INPUT.put("neg", -7);
+    INPUT.put("zero", 0);
+    INPUT.put("imax", Integer.MAX_VALUE);
+    INPUT.put("l", 5L);
+    INPUT.put("lmax", Long.MAX_VALUE);
+    INPUT.put("lmin", Long.MIN_VALUE);
+    INPUT.put("sh", (short) 3);
+    INPUT.put("by", (byte) 2);
+    INPUT.put("d", 2.5D);
+    INPUT.put("dzero", 0.0D);
+    INPUT.put("nan", Double.NaN);
+    INPUT.put("f", 2.5F);
+    INPUT.put("ftenth", 0.1F);
+    INPUT.put("bd", new BigDecimal("2.50"));
+    INPUT.put("bi", new BigInteger("123456789012345678901234567890"));
+    INPUT.put("s", "abc");
+    INPUT.put("s5", "5");
+    INPUT.put("sd", "1.5");
+    INPUT.put("strue", "true");
+    INPUT.put("sfalse", "false");
+    INPUT.put("blank", "");
+    INPUT.put("t", true);
+    INPUT.put("fa", false);
+  }
+
+  private static final String[] LITERALS = {
+      "0", "1", "-3", "2147483647", "5L", "7H", "2.5", "0.1F", "1.5B", "'5'", "'abc'", "''", "true", "null"
+  };
+
+  private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">=", "+", "-", "*", "/", "%"};
+
+  @Test
+  public void testBinaryOperators() {
+    List<String> operands = operands();
+    List<String> mismatches = new ArrayList<>();
+    for (String operator : OPERATORS) {
+      for (String left : operands) {
+        for (String right : operands) {
+          check(left + " " + operator + " " + right, mismatches);
+        }
+      }
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testUnaryOperators() {
+    List<String> mismatches = new ArrayList<>();
+    for (String operand : operands()) {
+      check("-" + operand, mismatches);
+      check("-(" + operand + ")", mismatches);
+      check("!" + operand, mismatches);
+      check("not " + operand, mismatches);
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testLogicalOperators() {
+    List<String> operands = operands();
+    List<String> mismatches = new ArrayList<>();
+    for (String left : operands) {
+      check(left + " ? 'then' : 'else'", mismatches);
+      for (String right : operands) {
+        check(left + " && " + right, mismatches);
+        check(left + " || " + right, mismatches);
+      }
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testLiterals() {
+    List<String> mismatches = new ArrayList<>();
+    for (String expression : new String[]{
+        "0", "7", "010", "0x1F", "0xFFFFFFFF", "0x7FL", "017L", "2147483648", "9223372036854775808",
+        "-2147483648", "-9223372036854775808", "5L", "5H", "1.5", "1.5D", "1.5F", "1.5B", "-1.5F", "-1.5B",
+        "5d", "5f", "5b", "1.5e3", "0.000001", "'a\\nb'", "'a\\'b'", "\"a\\\"b\"", "'a\\\\b'", "'\\u0041'",
+        "'a\\qb'", "\"it's\"", "true", "false", "null", "(1 + 2) * 3", "1 + 2 * 3", "7 - 2 - 1", "8 / 2 / 2",
+        "-7 % 3", "7 % -3", "-7 / 2", "2147483647 + 1", "9223372036854775807L + 1", "(-9223372036854775807L - 1) / -1",
+        "46341 * 46341", "3037000500L * 3037000500L", "0.1 + 0.2", "1.5B + 1", "1.5B * 2", "3B / 2",
+        "1B / 3", "7B % 2", "1 / 0", "1 / 0.0", "1.0 / 0", "1B / 0", "1 % 0", "1.5 % 0", "5 == 5.0",
+        "1 == true", "0 == false", "2 == true", "'1' == 1", "'abc' == 1", "'abc' < 1", "null + 'x'",
+        "null == null", "null < 1", "null <= null", "'a' + 1 + 2", "1 + 2 + 'a'", "'1.5' - 1", "'1' - 1"}) {
+      check(expression, mismatches);
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testFunctions() {
+    List<String> mismatches = new ArrayList<>();
+    for (String expression : new String[]{
+        "strlen(input.s)", "strlen(input.n)", "strlen(input.i)", "toDouble(input.s5)", "toDouble(input.i)",
+        "toDouble(input.s)", "toDouble(input.n)", "toFloat(input.sd)", "toLong(input.d)", "toInteger(input.lmax)",
+        "toInteger(input.s5) + 1", "isnull(input.n)", "isnull(input.i)", "isempty(input.blank)",
+        "isempty(input.n)", "concat(input.s, input.s5)", "concat(input.s, input.n)", "concat(input.s, '-', 'x')",
+        "coalesce(input.n, input.i)", "coalesce(input.n, input.n)", "rcoalesce(input.i, input.n, input.s)",
+        "format('%s-%s', input.s, input.i)", "unquote('\"abc\"')", "math:abs(input.neg)", "math:abs(input.d)",
+        "math:abs(input.l)", "math:abs(input.sh)", "math:abs(input.by)", "math:abs(input.f)", "math:abs(input.bd)",
+        "math:abs(input.s5)", "math:abs(input.n)", "math:max(input.i, input.l)", "math:max(input.i, input.d)",
+        "math:max(input.i, input.neg)", "math:max(input.sh, input.by)", "math:min(input.f, input.d)",
+        "math:pow(input.i, 2)", "math:sqrt(input.i)", "math:floorMod(input.l, 3)", "math:floorMod(input.neg, 3)",
+        "math:round(input.d)", "math:round(input.f)", "math:round(input.i)", "math:signum(input.neg * 1.0)",
+        "math:random() >= 0", "math:abs(math:abs(input.neg) - 10)", "strlen(concat(input.s, input.s)) > 5"}) {
+      check(expression, mismatches);
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testMembership() {
+    List<String> mismatches = new ArrayList<>();
+    for (String operand : operands()) {
+      for (String collection : new String[]{
+          "[1, 2, 5]", "[5L]", "[2.5, 'abc']", "[2.5F]", "['5', true]", "['abc', 'A']", "[]", "[-7, 0]"}) {
+        check(operand + " =~ " + collection, mismatches);
+        check(operand + " !~ " + collection, mismatches);
+      }
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  @Test
+  public void testResultAsBoolean() throws ExpressionException {
+    List<String> mismatches = new ArrayList<>();
+    List<String> expressions = new ArrayList<>(operands());
+    expressions.addAll(Arrays.asList("input.i > 1", "input.i + 1", "input.s + 'x'", "input.n ? true : 'true'",
+        "input.i ? input.strue : input.fa", "isnull(input.n)", "input.i == 5 && input.s", "concat('tr', 'ue')"));
+    for (String expression : expressions) {
+      Expression jexl = create(expression, Engine.JEXL);
+      Expression compiled = create(expression, Engine.COMPILED);
+      Assert.assertEquals(expression, Engine.COMPILED, compiled.getEngine());
+
+      String expected = outcome(() -> jexl.evaluateAsBoolean(context()));
+      String actual = outcome(() -> compiled.evaluateAsBoolean(context()));
+      if (!expected.equals(actual)) {
+        mismatches.add(String.format("%s: JEXL %s, compiled %s", expression, expected, actual));
+      }
+    }
+    assertNoMismatch(mismatches);
+  }
+
+  private static List<String> operands() {
+    List<String> operands = new ArrayList<>();
+    for (String name : INPUT.keySet()) {
+      operands.add("input." + name);
+    }
+    operands.addAll(Arrays.asList(LITERALS));
+    return operands;
+  }
+
+  private static void check(String expression, List<String> mismatches) {
+    CompiledScript script;
+    try {
+      script = ExpressionCache.getInstance().compile(FUNCTIONS, expression);
+    } catch (ExpressionException e) {
+      mismatches.add(String.format("%s: not parsed, %s", expression, e.getMessage()));
+      return;
+    }
+    Node tree;
+    try {
+      tree = new ExpressionCompiler(FUNCTIONS).compile(expression);
+    } catch (ExpressionException e) {
+      mismatches.add(String.format("%s: not compiled, %s", expression, e.getMessage()));
+      return;
+    }
+
+    String expected = outcome(() -> script.execute(context()));
+    String actual = outcome(() -> tree.eval(context()));
+    if (!expected.equals(actual)) {
+      mismatches.add(String.format("%s: JEXL %s, compiled %s", expression, expected, actual));
+    }
+  }
+
+  private static Expression create(String expression, Engine engine) throws ExpressionException {
+    Expression created = new Expression(FUNCTIONS, engine);
+    created.create(expression);
+    return created;
+  }
+
+  private static Context context() {
+    return new Context().add(VariableType.INPUT.toString(), new HashMap<>(INPUT));
+  }
+
+  /**
+   * @return the value with its type, or 'failure' whatever the error, as the engines report the
+   *         same errors differently.
+   */
+  private static String outcome(Evaluation evaluation) {
+    Object value;
+    try {
+      value = evaluation.evaluate();
+    } catch (Exception e) {
+      return "failure";
+    }
+    return value == null ? "null" : value + " (" + value.getClass().getSimpleName() + ")";
+  }
+
+  private static void assertNoMismatch(List<String> mismatches) {
+    Assert.assertTrue(mismatches.size() + " mismatches, e.g.\n"
+        + String.join("\n", mismatches.subList(0, Math.min(30, mismatches.size()))), mismatches.isEmpty());
+  }
+
+  private interface Evaluation {
+    Object evaluate() throws Exception;
+  }
+}
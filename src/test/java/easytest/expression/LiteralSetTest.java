@@ -0,0 +1,75 @@
+package easytest.expression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+public class LiteralSetTest {
+
+  @Test
+  public void testContains() {
+    LiteralSet set = new LiteralSet(new Object[]{"A01", "A02", true, 5});
+    Assert.assertTrue(set.contains("A01"));
+    Assert.assertTrue(set.contains("A02"));
+    Assert.assertTrue(set.contains(true));
+    Assert.assertTrue(set.contains(5));
+    Assert.assertFalse(set.contains("A03"));
+    Assert.assertFalse(set.contains("a01"));
+    Assert.assertFalse(set.contains(false));
+  }
+
+  @Test
+  public void testNoCoercion() {
+    LiteralSet numbers = new LiteralSet(new Object[]{5, 2.5D});
+    Assert.assertFalse(numbers.contains("5"));
+    Assert.assertFalse(numbers.contains(5L));
+    Assert.assertFalse(numbers.contains(5.0D));
+    Assert.assertFalse(numbers.contains(2.5F));
+    Assert.assertFalse(numbers.contains(new BigDecimal("2.5")));
+
+    LiteralSet strings = new LiteralSet(new Object[]{"5", "true"});
+    Assert.assertFalse(strings.contains(5));
+    Assert.assertFalse(strings.contains(true));
+  }
+
+  @Test
+  public void testMixedTypes() {
+    LiteralSet set = new LiteralSet(new Object[]{5, 5L, "5"});
+    Assert.assertTrue(set.contains(5));
+    Assert.assertTrue(set.contains(5L));
+    Assert.assertTrue(set.contains("5"));
+    Assert.assertFalse(set.contains(5.0D));
+  }
+
+  @Test
+  public void testNull() {
+    Assert.assertFalse(new LiteralSet(new Object[]{"A01"}).contains(null));
+    // null is never a member, even of a collection listing it
+    Assert.assertFalse(new LiteralSet(new Object[]{null, "A01"}).contains(null));
+    Assert.assertTrue(new LiteralSet(new Object[]{null, "A01"}).contains("A01"));
+  }
+
+  @Test
+  public void testEmpty() {
+    LiteralSet set = new LiteralSet(new Object[0]);
+    Assert.assertFalse(set.contains("A01"));
+    Assert.assertEquals("[]", set.toString());
+  }
+
+  @Test
+  public void testElements() {
+    Object[] elements = {"A02", "A01", "A02"};
+    LiteralSet set = new LiteralSet(elements);
+    elements[0] = "B01";
+
+    Assert.assertArrayEquals(new Object[]{"A02", "A01", "A02"}, set.elements());
+    Assert.assertFalse(set.contains("B01"));
+  }
+
+  @Test
+  public void testToString() {
+    LiteralSet set = new LiteralSet(new Object[]{"A'01", 5, 5L, true, null});
+    Assert.assertEquals("['A\\'01', 5, 5L, true, null]", set.toString());
+  }
+}
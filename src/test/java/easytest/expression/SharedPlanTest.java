@@ -0,0 +1,177 @@
+package easytest.expression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that evaluating expressions through a shared plan gives the same result as evaluating
+ * each expression on its own.
+ */
+public class SharedPlanTest {
+
+  private static final Namespace FUNCTIONS = () -> {
+    Map<String, Object> functions = new HashMap<>();
+    functions.put(null, Global.class);
+    functions.put("math", Math.class);
+    functions.put("counter", new Counter());
+    return functions;
+  };
+
+  private static final String[] RULES = {
+      "input.x > 1 && input.s == 'abc'",
+      "input.x > 1 || input.y > 1",
+      "input.d != 0 && input.x / input.d > 1",
+      "input.x / input.d > 1",
+      "input.d == 0 || input.x / input.d > 1",
+      "(input.x > 1 ? input.x / input.d : input.y) > 1",
+      "isnull(input.n) && strlen(input.s) > 2",
+      "strlen(input.s) > 2 || input.x + input.y > 3",
+      "input.x + input.y > 3 && input.x > 1",
+      "input.n > 1",
+      "!(input.x > 1) || input.s =~ ['abc', 'd']",
+      "input.s =~ ['abc', 'd'] && input.y >= 0"
+  };
+
+  @Test
+  public void testSameAsAlone() throws ExpressionException {
+    for (Engine engine : new Engine[]{Engine.COMPILED, Engine.JEXL}) {
+      List<Expression> expressions = create(engine, RULES);
+      SharedPlan plan = SharedPlan.of(expressions);
+      if (engine == Engine.COMPILED) {
+        Assert.assertTrue(plan.getSharedCount() > 0);
+      } else {
+        Assert.assertEquals(0, plan.getSharedCount());
+      }
+
+      for (Map<String, Object> record : records()) {
+        plan.bind(context(record));
+        for (int i = 0; i < RULES.length; i++) {
+          List<Expression> alone = create(engine, RULES[i]);
+          String message = String.format("%s with %s on %s", RULES[i], engine, record);
+          Assert.assertEquals(message, outcome(alone.get(0), record), outcome(plan, i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOrderOfEvaluation() throws ExpressionException {
+    // the shared division fails when 'd' is 0, but only for the rules that evaluate it
+    String[] rules = {"input.x / input.d > 1", "input.d != 0 && input.x / input.d > 1",
+        "input.d == 0 || input.x / input.d > 1"};
+    String[] reversed = {rules[2], rules[1], rules[0]};
+
+    Map<String, Object> record = new HashMap<>();
+    record.put("x", 4);
+    record.put("d", 0);
+    for (String[] order : new String[][]{rules, reversed}) {
+      List<Expression> expressions = create(Engine.COMPILED, order);
+      SharedPlan plan = SharedPlan.of(expressions);
+      plan.bind(context(record));
+      for (int i = 0; i < order.length; i++) {
+        Assert.assertEquals(order[i], outcome(expressions.get(i), record), outcome(plan, i));
+      }
+    }
+  }
+
+  @Test
+  public void testRecordsRebound() throws ExpressionException {
+    SharedPlan plan = SharedPlan.of(create(Engine.COMPILED, "input.x + input.y > 3", "input.x + input.y < 3"));
+    // the sum and both field reads
+    Assert.assertEquals(3, plan.getSharedCount());
+
+    for (int x = 0; x < 6; x++) {
+      Map<String, Object> record = new HashMap<>();
+      record.put("x", x);
+      record.put("y", 0);
+      plan.bind(context(record));
+      Assert.assertEquals(x > 3, plan.evaluateAsBoolean(0));
+      Assert.assertEquals(x < 3, plan.evaluateAsBoolean(1));
+    }
+  }
+
+  @Test
+  public void testCallsWithoutArguments() throws ExpressionException {
+    // a call without arguments is evaluated every time, within a rule and across rules
+    String[] rules = {"counter:next() != counter:next()", "counter:next() > counter:next()",
+        "counter:current() < counter:next()"};
+    for (Engine engine : new Engine[]{Engine.COMPILED, Engine.JEXL}) {
+      SharedPlan plan = SharedPlan.of(create(engine, rules));
+      Assert.assertEquals(0, plan.getSharedCount());
+      plan.bind(context(new HashMap<>()));
+      Assert.assertTrue(plan.evaluateAsBoolean(0));
+      Assert.assertFalse(plan.evaluateAsBoolean(1));
+      Assert.assertTrue(plan.evaluateAsBoolean(2));
+    }
+  }
+
+  private static List<Map<String, Object>> records() {
+    List<Map<String, Object>> records = new ArrayList<>();
+    Object[][] values = {
+        {5, 1, 2, "abc", null}, {0, 2, 1, "d", null}, {4, 0, 0, "", 3}, {2, -3, 1, "abcd", 0},
+        {null, 1, 1, "abc", null}, {3, 1, null, null, 2}, {7, 7, 0, "d", null}, {1.5, 2.5, 0.5, "abc", 1}
+    };
+    for (Object[] value : values) {
+      Map<String, Object> record = new HashMap<>();
+      record.put("x", value[0]);
+      record.put("y", value[1]);
+      record.put("d", value[2]);
+      record.put("s", value[3]);
+      record.put("n", value[4]);
+      records.add(record);
+    }
+    return records;
+  }
+
+  private static List<Expression> create(Engine engine, String... texts) throws ExpressionException {
+    List<Expression> expressions = new ArrayList<>();
+    for (String text : texts) {
+      Expression expression = new Expression(FUNCTIONS, engine);
+      expression.create(text);
+      Assert.assertEquals(text, engine, expression.getEngine());
+      expressions.add(expression);
+    }
+    return expressions;
+  }
+
+  private static Context context(Map<String, Object> record) {
+    return new Context().add(VariableType.INPUT.toString(), record);
+  }
+
+  private static String outcome(Expression expression, Map<String, Object> record) {
+    try {
+      return Boolean.toString(expression.evaluateAsBoolean(context(record)));
+    } catch (ExpressionException | RuntimeException e) {
+      return "failure";
+    }
+  }
+
+  private static String outcome(SharedPlan plan, int index) {
+    try {
+      return Boolean.toString(plan.evaluateAsBoolean(index));
+    } catch (ExpressionException | RuntimeException e) {
+      return "failure";
+    }
+  }
+
+  /**
+   * Functions whose result changes on every call.
+   */
+  public static final class Counter {
+
+    private int value = 0;
+
+    public int next() {
+      return ++this.value;
+    }
+
+    public int current() {
+      return this.value;
+    }
+  }
+}
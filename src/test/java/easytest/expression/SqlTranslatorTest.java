@@ -0,0 +1,174 @@
+package easytest.expression;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that a pushed down predicate passes and fails the same records as the expression does
+ * when it is evaluated per partition.
+ */
+public class SqlTranslatorTest {
+
+  private static final Namespace FUNCTIONS = () -> {
+    Map<String, Object> functions = new HashMap<>();
+    functions.put(null, Global.class);
+    functions.put("math", Math.class);
+    return functions;
+  };
+
+  private static final Map<String, Class<?>> COLUMNS = new LinkedHashMap<>();
+
+  static {
+    COLUMNS.put("i", Integer.class);
+    COLUMNS.put("l", Long.class);
+    COLUMNS.put("d", Double.class);
+    COLUMNS.put("s", String.class);
+    COLUMNS.put("t", Boolean.class);
+  }
+
+  private static final Object[][] RECORDS = {
+      {5, 5L, 1.5D, "abc", true},
+      {0, -1L, 0.0D, "", false},
+      {-7, 10L, -0.0D, "b", true},
+      {Integer.MAX_VALUE, Long.MAX_VALUE, Double.NaN, "\uD83D\uDE00", false},
+      {Integer.MIN_VALUE, Long.MIN_VALUE, Double.POSITIVE_INFINITY, "\uFFFD", true},
+      {1, 2L, Double.NEGATIVE_INFINITY, "caf\u00e9", false},
+      {3, 3L, 0.1D, "it's", true},
+      {6, 4L, 1e300D, "back\\slash", false}
+  };
+
+  private static SparkSession session;
+  private static Dataset<Row> rows;
+
+  @BeforeClass
+  public static void start() {
+    session = SparkSession.builder().master("local[1]").appName("SqlTranslatorTest")
+        .config("spark.ui.enabled", "false").getOrCreate();
+
+    StructType type = new StructType()
+        .add("i", DataTypes.IntegerType, false)
+        .add("l", DataTypes.LongType, false)
+        .add("d", DataTypes.DoubleType, false)
+        .add("s", DataTypes.StringType, false)
+        .add("t", DataTypes.BooleanType, false);
+    List<Row> values = new ArrayList<>();
+    for (Object[] record : RECORDS) {
+      values.add(RowFactory.create(record));
+    }
+    rows = session.createDataFrame(values, type);
+  }
+
+  @AfterClass
+  public static void stop() {
+    session.stop();
+  }
+
+  @Test
+  public void testComparisons() throws ExpressionException {
+    assertSameOutcomes(
+        "input.i > 5", "input.i <= input.l", "input.l >= global['limit']", "input.i == 5.0", "input.i != input.l",
+        "input.d < 1", "input.d <= 0", "input.d > input.i", "input.d >= input.d", "input.d < input.d",
+        "input.d == input.d", "input.d != 0", "input.d == -0.0", "input.d > global['half']", "1 < input.d",
+        "input.s == 'abc'", "input.s != ''", "input.s == \"it's\"", "input.s == 'back\\\\slash'",
+        "input.t == true", "input.t != input.t");
+  }
+
+  @Test
+  public void testLogic() throws ExpressionException {
+    assertSameOutcomes(
+        "!input.t && input.i > 0", "input.t || input.d > 0", "not (input.i < 0 or input.t)",
+        "isempty(input.s) || input.t", "isnull(input.s) || input.i > 2",
+        "input.t ? input.d > 0 : input.i < 0", "(input.t ? input.i : input.l) > 0",
+        "(input.i > 0 ? input.s : 'x') == 'abc'", "input.t ? input.t : global['yes']");
+  }
+
+  @Test
+  public void testArithmetic() throws ExpressionException {
+    assertSameOutcomes(
+        "input.d * 2 > input.l", "input.d + input.i < 10", "input.d - 1.5 == 0", "-input.d < 0",
+        "math:abs(input.d) >= 1", "toDouble(input.i) + input.d > 0", "toDouble(input.l) * 0.5 > 1",
+        "input.i * 1.0 > 2147483647", "input.d + global['half'] == 3");
+  }
+
+  @Test
+  public void testNotTranslated() throws ExpressionException {
+    for (String text : new String[]{
+        // null constants, absorbed by SQL and failing the expression
+        "global['none'] || input.t", "input.t ? global['none'] : true", "input.i == global['none']",
+        // nullable, float and decimal fields are not in the columns
+        "input.n > 1", "input.f > 1.5", "input.bd > 1",
+        // integer arithmetic wraps around in SQL
+        "input.i + 1 > input.i", "input.l * 2 > 0", "-input.i > 0", "input.i / 2 > 1", "input.d / 2 > 1",
+        "input.i % 2 == 0",
+        // strings are ordered and converted differently
+        "input.s < 'b'", "toLong(input.s) > 1", "toDouble(input.s) > 1.5", "toInteger(input.d) > 1",
+        "toFloat(input.d) > 1", "strlen(input.s) > 1", "input.s + 'x' == 'abcx'",
+        // comparisons across kinds, and values that are not booleans
+        "input.s == 5", "input.t == 1", "input.t > false", "input.i", "input.s", "input.t ? 1 : 'x'",
+        "input.i =~ [1, 2]", "math:abs(input.i) > 1", "input.d > 0.1F"}) {
+      Assert.assertNull(text, translate(text));
+    }
+  }
+
+  private static void assertSameOutcomes(String... texts) throws ExpressionException {
+    for (String text : texts) {
+      String predicate = translate(text);
+      Assert.assertNotNull(text, predicate);
+
+      // a null predicate is a failure, as the pushed down check counts it
+      List<Row> results = rows.selectExpr(String.format("coalesce(%s, false)", predicate)).collectAsList();
+      for (Engine engine : new Engine[]{Engine.JEXL, Engine.COMPILED}) {
+        Expression expression = new Expression(FUNCTIONS, engine);
+        expression.create(text);
+        for (int i = 0; i < RECORDS.length; i++) {
+          String message = String.format("%s, with %s on %s as %s", text, engine, Arrays.toString(RECORDS[i]),
+              predicate);
+          Assert.assertEquals(message, passes(expression, RECORDS[i]), results.get(i).getBoolean(0));
+        }
+      }
+    }
+  }
+
+  private static boolean passes(Expression expression, Object[] record) {
+    Map<String, Object> input = new HashMap<>();
+    int index = 0;
+    for (String column : COLUMNS.keySet()) {
+      input.put(column, record[index++]);
+    }
+    try {
+      return expression.evaluateAsBoolean(constants().add(VariableType.INPUT.toString(), input));
+    } catch (ExpressionException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static String translate(String text) throws ExpressionException {
+    Expression expression = new Expression(FUNCTIONS, Engine.COMPILED);
+    expression.create(text);
+    return expression.toSqlPredicate(constants(), COLUMNS);
+  }
+
+  private static Context constants() {
+    Map<String, Object> globals = new HashMap<>();
+    globals.put("limit", 5);
+    globals.put("half", 0.5D);
+    globals.put("yes", true);
+    globals.put("none", null);
+    return new Context().add(VariableType.GLOBAL.toString(), globals);
+  }
+}
@@ -0,0 +1,283 @@
+package easytest.plugin.assertion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DuplicateCounterTest {
+
+  // the smallest budget, a table of 16 slots spilled every 9 distinct hashes
+  private static final long TINY_BUDGET = 0L;
+  private static final long LARGE_BUDGET = 1024L * 1024L;
+
+  private int runsBefore;
+
+  @Before
+  public void countRuns() {
+    this.runsBefore = runs();
+  }
+
+  @After
+  public void checkRunsDeleted() {
+    Assert.assertEquals("runs left on disk", this.runsBefore, runs());
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(LARGE_BUDGET, 10)) {
+      for (long hash = 1; hash <= 1000; hash++) {
+        counter.add(hash);
+      }
+      counter.add(5L);
+      counter.add(7L);
+      counter.add(7L);
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(2L, summary.keys());
+    Assert.assertEquals(3L, summary.records());
+    Assert.assertEquals(sorted(5L, 7L), sorted(summary.samples()));
+  }
+
+  @Test
+  public void testNoDuplicate() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(LARGE_BUDGET, 10)) {
+      counter.add(0L);
+      counter.add(-1L);
+      counter.add(Long.MIN_VALUE);
+      counter.add(Long.MAX_VALUE);
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(0L, summary.keys());
+    Assert.assertEquals(0L, summary.records());
+    Assert.assertTrue(summary.samples().isEmpty());
+  }
+
+  @Test
+  public void testZeroHash() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(LARGE_BUDGET, 10)) {
+      counter.add(0L);
+      counter.add(1L);
+      counter.add(0L);
+      counter.add(0L);
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(1L, summary.keys());
+    Assert.assertEquals(2L, summary.records());
+    Assert.assertEquals(Collections.singletonList(0L), summary.samples());
+  }
+
+  @Test
+  public void testZeroHashSpilled() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(TINY_BUDGET, 10)) {
+      counter.add(0L);
+      for (long hash = 1; hash <= 100; hash++) {
+        counter.add(hash);
+      }
+      counter.add(0L);
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(1L, summary.keys());
+    Assert.assertEquals(1L, summary.records());
+    Assert.assertEquals(Collections.singletonList(0L), summary.samples());
+  }
+
+  @Test
+  public void testSpill() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(TINY_BUDGET, 10)) {
+      // a hash and its duplicate always fall in different runs
+      for (long hash = 1; hash <= 30; hash++) {
+        counter.add(hash);
+      }
+      for (long hash = 1; hash <= 30; hash += 3) {
+        counter.add(hash);
+      }
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(10L, summary.keys());
+    Assert.assertEquals(10L, summary.records());
+    Assert.assertEquals(10, summary.samples().size());
+  }
+
+  @Test
+  public void testMultiLevelMerge() throws IOException {
+    // spilled every 9 distinct hashes, several hundred runs are merged 64 at a time
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(TINY_BUDGET, 1000)) {
+      for (long hash = 1; hash <= 5000; hash++) {
+        counter.add(mix(hash));
+      }
+      for (long hash = 1; hash <= 5000; hash += 50) {
+        counter.add(mix(hash));
+        counter.add(mix(hash));
+      }
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(100L, summary.keys());
+    Assert.assertEquals(200L, summary.records());
+
+    List<Long> expected = new ArrayList<>();
+    for (long hash = 1; hash <= 5000; hash += 50) {
+      expected.add(mix(hash));
+    }
+    Assert.assertEquals(sorted(expected), sorted(summary.samples()));
+  }
+
+  @Test
+  public void testRepeatsBudget() throws IOException {
+    // a table of 64 slots, spilled once more than 4 hashes are repeated
+    long budget = 1024L;
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(budget, 100)) {
+      for (int round = 0; round < 3; round++) {
+        for (long hash = 1; hash <= 20; hash++) {
+          counter.add(hash);
+          counter.add(hash);
+        }
+      }
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(20L, summary.keys());
+    Assert.assertEquals(100L, summary.records());
+  }
+
+  @Test
+  public void testSampleSize() throws IOException {
+    DuplicateCounter.Summary summary;
+    try (DuplicateCounter counter = new DuplicateCounter(LARGE_BUDGET, 3)) {
+      for (long hash = 1; hash <= 10; hash++) {
+        counter.add(hash);
+        counter.add(hash);
+      }
+      summary = counter.summarize();
+    }
+
+    Assert.assertEquals(10L, summary.keys());
+    Assert.assertEquals(10L, summary.records());
+    Assert.assertEquals(3, summary.samples().size());
+  }
+
+  @Test
+  public void testCloseWithoutSummary() throws IOException {
+    try (DuplicateCounter counter = new DuplicateCounter(TINY_BUDGET, 10)) {
+      for (long hash = 1; hash <= 100; hash++) {
+        counter.add(hash);
+      }
+      Assert.assertTrue(runs() > this.runsBefore);
+    }
+  }
+
+  @Test
+  public void testMerge() {
+    DuplicateCounter.Summary first = new DuplicateCounter.Summary(3);
+    first.add(1L, 2L);
+    first.add(2L, 3L);
+
+    DuplicateCounter.Summary second = new DuplicateCounter.Summary(3);
+    second.add(3L, 2L);
+    second.add(4L, 4L);
+
+    DuplicateCounter.Summary merged = first.merge(second);
+    Assert.assertEquals(4L, merged.keys());
+    Assert.assertEquals(7L, merged.records());
+    Assert.assertEquals(Arrays.asList(1L, 2L, 3L), merged.samples());
+  }
+
+  @Test
+  public void testConfirm() {
+    DuplicateCounter.Summary summary = new DuplicateCounter.Summary(10);
+    // one key seen twice
+    summary.add(1L, 2L);
+    // two distinct keys colliding, neither of them duplicated
+    summary.add(2L, 2L);
+    // a duplicated key colliding with another key
+    summary.add(3L, 3L);
+    // two duplicated keys colliding
+    summary.add(4L, 5L);
+    Assert.assertEquals(4L, summary.keys());
+    Assert.assertEquals(8L, summary.records());
+
+    Map<Long, Map<String, Long>> keyCounts = new HashMap<>();
+    keyCounts.put(1L, counts("a", 2L));
+    keyCounts.put(2L, counts("b", 1L, "c", 1L));
+    keyCounts.put(3L, counts("d", 2L, "e", 1L));
+    keyCounts.put(4L, counts("f", 2L, "g", 3L));
+
+    List<String> duplicated = summary.confirm(keyCounts);
+    Assert.assertEquals(Arrays.asList("a", "d", "f", "g"), duplicated);
+    Assert.assertEquals(4L, summary.keys());
+    Assert.assertEquals(5L, summary.records());
+    Assert.assertEquals(1L, summary.collisions());
+    Assert.assertEquals(0L, summary.unconfirmed());
+  }
+
+  @Test
+  public void testConfirmUnsampled() {
+    DuplicateCounter.Summary summary = new DuplicateCounter.Summary(1);
+    summary.add(1L, 2L);
+    summary.add(2L, 2L);
+
+    Map<Long, Map<String, Long>> keyCounts = new HashMap<>();
+    keyCounts.put(1L, counts("a", 2L));
+
+    Assert.assertEquals(Collections.singletonList("a"), summary.confirm(keyCounts));
+    Assert.assertEquals(2L, summary.keys());
+    Assert.assertEquals(2L, summary.records());
+    Assert.assertEquals(0L, summary.collisions());
+    Assert.assertEquals(1L, summary.unconfirmed());
+  }
+
+  private static Map<String, Long> counts(Object... keyCounts) {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (int i = 0; i < keyCounts.length; i += 2) {
+      counts.put((String) keyCounts[i], (Long) keyCounts[i + 1]);
+    }
+    return counts;
+  }
+
+  private static long mix(long value) {
+    // spreads the hashes over the whole range, as real hashes are
+    long z = value * 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static List<Long> sorted(Long... values) {
+    return sorted(Arrays.asList(values));
+  }
+
+  private static List<Long> sorted(List<Long> values) {
+    List<Long> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  private static int runs() {
+    File[] runs = new File(System.getProperty("java.io.tmpdir"))
+        .listFiles((dir, name) -> name.startsWith("easytest-unique-") && name.endsWith(".run"));
+    return runs == null ? 0 : runs.length;
+  }
+}
@@ -0,0 +1,89 @@
+package easytest.plugin.assertion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailurePolicyTest {
+
+  @Test
+  public void testFromString() {
+    for (FailurePolicy policy : FailurePolicy.values()) {
+      Assert.assertEquals(policy, FailurePolicy.fromString(policy.toString()));
+      Assert.assertEquals(policy, FailurePolicy.fromString(policy.toString().toUpperCase()));
+    }
+    try {
+      FailurePolicy.fromString("fail-sometimes");
+      Assert.fail("Unknown policy accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFailFast() {
+    Assert.assertFalse(FailurePolicy.FAIL_FAST.hasThreshold());
+    Assert.assertFalse(FailurePolicy.FAIL_FAST.isExceeded(0, 1, 0));
+    Assert.assertFalse(FailurePolicy.FAIL_FAST.isExceeded(0, 1000000, 0));
+    Assert.assertTrue(FailurePolicy.FAIL_FAST.isExceeded(1, 1, 0));
+    Assert.assertTrue(FailurePolicy.FAIL_FAST.isExceeded(1, 1000000, 0));
+  }
+
+  @Test
+  public void testFailAfterN() {
+    Assert.assertTrue(FailurePolicy.FAIL_AFTER_N.hasThreshold());
+    Assert.assertFalse(FailurePolicy.FAIL_AFTER_N.isExceeded(0, 10, 3));
+    Assert.assertFalse(FailurePolicy.FAIL_AFTER_N.isExceeded(2, 2, 3));
+    Assert.assertTrue(FailurePolicy.FAIL_AFTER_N.isExceeded(3, 3, 3));
+    Assert.assertTrue(FailurePolicy.FAIL_AFTER_N.isExceeded(3, 1000000, 3));
+
+    FailurePolicy.FAIL_AFTER_N.checkThreshold("1");
+    FailurePolicy.FAIL_AFTER_N.checkThreshold("250");
+    assertInvalid(FailurePolicy.FAIL_AFTER_N, "");
+    assertInvalid(FailurePolicy.FAIL_AFTER_N, "0");
+    assertInvalid(FailurePolicy.FAIL_AFTER_N, "-1");
+    assertInvalid(FailurePolicy.FAIL_AFTER_N, "2.5");
+    assertInvalid(FailurePolicy.FAIL_AFTER_N, "many");
+  }
+
+  @Test
+  public void testFailIfRatioExceeds() {
+    FailurePolicy policy = FailurePolicy.FAIL_IF_RATIO_EXCEEDS;
+    long minimum = FailurePolicy.MINIMUM_RECORDS;
+    Assert.assertTrue(policy.hasThreshold());
+
+    // a partition with fewer records than the minimum never fails, whatever its ratio
+    Assert.assertFalse(policy.isExceeded(1, 1, 0.1));
+    Assert.assertFalse(policy.isExceeded(minimum - 1, minimum - 1, 0.1));
+
+    Assert.assertFalse(policy.isExceeded(100, minimum, 0.1));
+    Assert.assertTrue(policy.isExceeded(101, minimum, 0.1));
+    Assert.assertFalse(policy.isExceeded(0, minimum, 0));
+    Assert.assertTrue(policy.isExceeded(1, minimum, 0));
+
+    // the ratio is that of the records evaluated so far
+    Assert.assertTrue(policy.isExceeded(200, 1500, 0.1));
+    Assert.assertFalse(policy.isExceeded(200, 2000, 0.1));
+
+    policy.checkThreshold("0");
+    policy.checkThreshold("0.05");
+    assertInvalid(policy, "1");
+    assertInvalid(policy, "-0.1");
+    assertInvalid(policy, "5%");
+  }
+
+  @Test
+  public void testReportOnly() {
+    Assert.assertFalse(FailurePolicy.REPORT_ONLY.hasThreshold());
+    Assert.assertFalse(FailurePolicy.REPORT_ONLY.isExceeded(1, 1, 0));
+    Assert.assertFalse(FailurePolicy.REPORT_ONLY.isExceeded(1000000, 1000000, 0));
+  }
+
+  private static void assertInvalid(FailurePolicy policy, String threshold) {
+    try {
+      policy.checkThreshold(threshold);
+      Assert.fail(String.format("Threshold '%s' accepted for '%s'", threshold, policy));
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package easytest.plugin.assertion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+public class FieldStatisticsTest {
+
+  @Test
+  public void testCounts() {
+    FieldStatistics statistics = of(1, null, 3, null, null);
+    Assert.assertEquals(2L, statistics.count());
+    Assert.assertEquals(3L, statistics.nulls());
+
+    FieldStatistics empty = new FieldStatistics();
+    Assert.assertNull(empty.sum());
+    Assert.assertNull(empty.mean());
+    Assert.assertNull(empty.variance());
+    Assert.assertNull(empty.min());
+    Assert.assertNull(of(5).variance());
+  }
+
+  @Test
+  public void testWelfordMerge() {
+    Random random = new Random(3L);
+    double[] values = new double[10000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 1e6 + random.nextGaussian() * 10;
+    }
+
+    double mean = 0;
+    for (double value : values) {
+      mean += value;
+    }
+    mean /= values.length;
+    double squares = 0;
+    for (double value : values) {
+      squares += (value - mean) * (value - mean);
+    }
+    double variance = squares / (values.length - 1);
+
+    // split unevenly, as partitions are
+    int[] ends = {1, 17, 2500, 2501, 9000, values.length};
+    FieldStatistics merged = new FieldStatistics();
+    int start = 0;
+    for (int end : ends) {
+      FieldStatistics partition = new FieldStatistics();
+      for (int i = start; i < end; i++) {
+        partition.add(values[i]);
+      }
+      merged.merge(partition);
+      start = end;
+    }
+    merged.merge(new FieldStatistics());
+
+    Assert.assertEquals(mean, merged.mean(), 1e-9 * mean);
+    Assert.assertEquals(variance, merged.variance(), 1e-9 * variance);
+    Assert.assertEquals((long) values.length, merged.count());
+  }
+
+  @Test
+  public void testKahanSum() {
+    // adding 0.1 naively drifts by more than 1e-6 over a million values
+    FieldStatistics single = new FieldStatistics();
+    FieldStatistics merged = new FieldStatistics();
+    for (int partition = 0; partition < 10; partition++) {
+      FieldStatistics statistics = new FieldStatistics();
+      for (int i = 0; i < 100000; i++) {
+        statistics.add(0.1D);
+        single.add(0.1D);
+      }
+      merged.merge(statistics);
+    }
+    Assert.assertEquals(100000.0, (Double) single.sum(), 1e-9);
+    Assert.assertEquals(100000.0, (Double) merged.sum(), 1e-9);
+
+    // small values are not lost next to large ones
+    FieldStatistics mixed = of(1e16D, 1.0D, 1.0D, -1e16D);
+    Assert.assertEquals(2.0, (Double) mixed.sum(), 0.0);
+  }
+
+  @Test
+  public void testIntegralSum() {
+    Assert.assertEquals(6L, of(1, 2L, (short) 3).sum());
+    Assert.assertEquals(-4L, of(-5, 1).sum());
+  }
+
+  @Test
+  public void testOverflowToDecimal() {
+    FieldStatistics statistics = of(Long.MAX_VALUE, 1L, Long.MAX_VALUE);
+    BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)).add(BigDecimal.ONE);
+    Assert.assertEquals(expected, statistics.sum());
+
+    FieldStatistics merged = of(Long.MAX_VALUE).merge(of(Long.MAX_VALUE)).merge(of(Long.MIN_VALUE, -5L));
+    Assert.assertEquals(0, BigDecimal.valueOf(Long.MAX_VALUE - 6L).compareTo((BigDecimal) merged.sum()));
+
+    FieldStatistics negative = of(Long.MIN_VALUE).merge(of(-1L));
+    Assert.assertEquals(BigDecimal.valueOf(Long.MIN_VALUE).subtract(BigDecimal.ONE), negative.sum());
+  }
+
+  @Test
+  public void testDecimalSum() {
+    FieldStatistics statistics = of(new BigDecimal("0.10"), new BigDecimal("0.20"));
+    statistics.merge(of(new BigDecimal("1.005")));
+    Assert.assertEquals(new BigDecimal("1.305"), statistics.sum());
+    Assert.assertEquals(new BigDecimal("1.005"), statistics.max());
+    Assert.assertEquals(new BigDecimal("0.10"), statistics.min());
+
+    // a decimal field without any fraction is still summed as a decimal
+    Assert.assertEquals(BigDecimal.valueOf(3), of(new BigDecimal("1")).merge(of(2)).sum());
+  }
+
+  @Test
+  public void testFloatingWithIntegral() {
+    Object sum = of(1, 2.5D, 3L).merge(of(0.5F)).sum();
+    Assert.assertEquals(7.0, (Double) sum, 0.0);
+  }
+
+  @Test
+  public void testMinMax() {
+    FieldStatistics numbers = of(3, -2.5D, 10L).merge(of(new BigDecimal("9.5"))).merge(of(-3));
+    Assert.assertEquals(-3, numbers.min());
+    Assert.assertEquals(10L, numbers.max());
+
+    FieldStatistics strings = of("b", "abc").merge(of("c", null));
+    Assert.assertEquals("abc", strings.min());
+    Assert.assertEquals("c", strings.max());
+  }
+
+  private static FieldStatistics of(Object... values) {
+    FieldStatistics statistics = new FieldStatistics();
+    for (Object value : values) {
+      statistics.add(value);
+    }
+    return statistics;
+  }
+}
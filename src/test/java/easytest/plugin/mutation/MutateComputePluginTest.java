@@ -0,0 +1,93 @@
+package easytest.plugin.mutation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+public class MutateComputePluginTest {
+
+  @Test
+  public void testSplit() {
+    long[] sizes = {100, 0, 250, 1, 649};
+    for (long seed = 0; seed < 100; seed++) {
+      long[] quotas = MutateComputePlugin.split(sizes, 50, new SplittableRandom(seed));
+
+      Assert.assertEquals(sizes.length, quotas.length);
+      Assert.assertEquals(50L, sum(quotas));
+      for (int i = 0; i < sizes.length; i++) {
+        Assert.assertTrue(quotas[i] >= 0 && quotas[i] <= sizes[i]);
+      }
+      Assert.assertEquals(0L, quotas[1]);
+    }
+  }
+
+  @Test
+  public void testSplitWholePartitions() {
+    // a sample nearly as large as the input takes most of every partition
+    long[] sizes = {3, 5, 2};
+    long[] quotas = MutateComputePlugin.split(sizes, 9, new SplittableRandom(7L));
+    Assert.assertEquals(9L, sum(quotas));
+    for (int i = 0; i < sizes.length; i++) {
+      Assert.assertTrue(quotas[i] >= sizes[i] - 1 && quotas[i] <= sizes[i]);
+    }
+  }
+
+  @Test
+  public void testSplitSmallInput() {
+    long[] sizes = {3, 0, 5};
+    Assert.assertArrayEquals(sizes, MutateComputePlugin.split(sizes, 8, new SplittableRandom(1L)));
+    Assert.assertArrayEquals(sizes, MutateComputePlugin.split(sizes, 100, new SplittableRandom(1L)));
+  }
+
+  @Test
+  public void testSplitEmpty() {
+    Assert.assertArrayEquals(new long[0], MutateComputePlugin.split(new long[0], 10, new SplittableRandom(1L)));
+    Assert.assertArrayEquals(new long[]{0, 0}, MutateComputePlugin.split(new long[]{0, 0}, 10, new SplittableRandom(1L)));
+    Assert.assertArrayEquals(new long[]{0, 0}, MutateComputePlugin.split(new long[]{5, 7}, 0, new SplittableRandom(1L)));
+  }
+
+  @Test
+  public void testSplitSeeded() {
+    long[] sizes = {1000, 2000, 3000, 4000};
+    long[] first = MutateComputePlugin.split(sizes, 100, RandomStreams.forPartition(42L, -1));
+    long[] second = MutateComputePlugin.split(sizes, 100, RandomStreams.forPartition(42L, -1));
+    Assert.assertArrayEquals(first, second);
+  }
+
+  @Test
+  public void testSplitProportional() {
+    // every record is equally likely to be sampled, so the quotas follow the sizes of the partitions
+    long[] sizes = {10000, 30000, 60000};
+    long[] totals = new long[sizes.length];
+    for (long seed = 0; seed < 200; seed++) {
+      long[] quotas = MutateComputePlugin.split(sizes, 100, new SplittableRandom(seed));
+      for (int i = 0; i < quotas.length; i++) {
+        totals[i] += quotas[i];
+      }
+    }
+    Assert.assertEquals(2000.0, totals[0], 200.0);
+    Assert.assertEquals(6000.0, totals[1], 300.0);
+    Assert.assertEquals(12000.0, totals[2], 300.0);
+  }
+
+  @Test
+  public void testManifestRequiresSeed() {
+    new MutateComputeConfig(null, 10, 1L, "manifests", null, "name:Nullify", null).validate();
+    new MutateComputeConfig(null, 10, null, null, null, "name:Nullify", null).validate();
+    try {
+      new MutateComputeConfig(null, 10, null, "manifests", null, "name:Nullify", null).validate();
+      Assert.fail("Manifest accepted without a seed");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static long sum(long[] values) {
+    long sum = 0;
+    for (long value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
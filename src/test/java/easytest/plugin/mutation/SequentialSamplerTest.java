@@ -0,0 +1,112 @@
+package easytest.plugin.mutation;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+public class SequentialSamplerTest {
+
+  @Test
+  public void testSampleSize() {
+    SplittableRandom random = new SplittableRandom(11L);
+    long[][] cases = {{100, 10}, {100, 0}, {100, 100}, {100, 250}, {1, 1}, {0, 5}, {1000, 999}};
+    for (long[] sizes : cases) {
+      SequentialSampler sampler = new SequentialSampler(sizes[0], sizes[1], random);
+      long selected = 0;
+      for (long i = 0; i < sizes[0]; i++) {
+        if (sampler.next()) {
+          selected++;
+        }
+        Assert.assertEquals(i, sampler.position());
+      }
+      Assert.assertEquals(Math.min(sizes[0], sizes[1]), selected);
+      Assert.assertTrue(sampler.isDone());
+
+      // records beyond the population are never selected
+      for (int i = 0; i < 10; i++) {
+        Assert.assertFalse(sampler.next());
+      }
+    }
+  }
+
+  @Test
+  public void testPositionsUniform() {
+    int population = 20;
+    int sampleSize = 5;
+    int trials = 20000;
+    SplittableRandom random = new SplittableRandom(42L);
+
+    long[] counts = new long[population];
+    for (int trial = 0; trial < trials; trial++) {
+      SequentialSampler sampler = new SequentialSampler(population, sampleSize, random);
+      for (int i = 0; i < population; i++) {
+        if (sampler.next()) {
+          counts[i]++;
+        }
+      }
+    }
+
+    // every record is selected with probability n / N, the first ones as often as the last ones
+    double expected = (double) trials * sampleSize / population;
+    Assert.assertTrue(chiSquare(counts, expected) < critical(population - 1));
+  }
+
+  @Test
+  public void testSubsetsUniform() {
+    // the 10 subsets of 2 out of 5 records are drawn equally often
+    int population = 5;
+    int trials = 50000;
+    SplittableRandom random = new SplittableRandom(7L);
+
+    long[] counts = new long[1 << population];
+    for (int trial = 0; trial < trials; trial++) {
+      SequentialSampler sampler = new SequentialSampler(population, 2, random);
+      int subset = 0;
+      for (int i = 0; i < population; i++) {
+        if (sampler.next()) {
+          subset |= 1 << i;
+        }
+      }
+      counts[subset]++;
+    }
+
+    long[] pairs = new long[10];
+    int pair = 0;
+    for (int subset = 0; subset < counts.length; subset++) {
+      if (Integer.bitCount(subset) == 2) {
+        pairs[pair++] = counts[subset];
+      } else {
+        Assert.assertEquals(0L, counts[subset]);
+      }
+    }
+    Assert.assertTrue(chiSquare(pairs, trials / 10.0) < critical(pairs.length - 1));
+  }
+
+  @Test
+  public void testSeeded() {
+    SequentialSampler first = new SequentialSampler(1000, 30, new SplittableRandom(5L));
+    SequentialSampler second = new SequentialSampler(1000, 30, new SplittableRandom(5L));
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(first.next(), second.next());
+    }
+  }
+
+  private static double chiSquare(long[] counts, double expected) {
+    double statistic = 0;
+    for (long count : counts) {
+      statistic += (count - expected) * (count - expected) / expected;
+    }
+    return statistic;
+  }
+
+  /**
+   * @return a bound the chi-square statistic exceeds with a probability well below 0.001, from the
+   *         Wilson-Hilferty approximation.
+   */
+  private static double critical(int degrees) {
+    double z = 3.5;
+    double term = 1 - 2.0 / (9 * degrees) + z * Math.sqrt(2.0 / (9 * degrees));
+    return degrees * term * term * term;
+  }
+}
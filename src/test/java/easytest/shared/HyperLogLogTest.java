@@ -0,0 +1,91 @@
+package easytest.shared;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void testEmpty() {
+    Assert.assertEquals(0L, new HyperLogLog().estimate());
+  }
+
+  @Test
+  public void testSmallCardinalities() {
+    for (int cardinality : new int[]{1, 10, 100, 1000}) {
+      HyperLogLog counter = new HyperLogLog();
+      for (int i = 0; i < cardinality; i++) {
+        counter.add("value-" + i);
+      }
+      // linear counting is close to exact while few registers are set
+      Assert.assertEquals(cardinality, counter.estimate(), Math.max(1, cardinality * 0.01));
+    }
+  }
+
+  @Test
+  public void testErrorBound() {
+    for (int precision : new int[]{10, 14}) {
+      // the relative standard error is 1.04 / sqrt(2^precision), estimates stay within 4 of them
+      double bound = 4 * 1.04 / Math.sqrt(1 << precision);
+      for (long cardinality : new long[]{10000, 100000, 1000000}) {
+        HyperLogLog counter = new HyperLogLog(precision);
+        for (long i = 0; i < cardinality; i++) {
+          counter.add(i * 31 + 7);
+        }
+        double error = Math.abs(counter.estimate() - cardinality) / (double) cardinality;
+        Assert.assertTrue(String.format("%d values with precision %d, error %f", cardinality, precision, error),
+            error < bound);
+      }
+    }
+  }
+
+  @Test
+  public void testDuplicates() {
+    HyperLogLog once = new HyperLogLog();
+    HyperLogLog thrice = new HyperLogLog();
+    for (long i = 0; i < 50000; i++) {
+      once.add(i);
+      for (int repeat = 0; repeat < 3; repeat++) {
+        thrice.add(i);
+      }
+    }
+    Assert.assertEquals(once.estimate(), thrice.estimate());
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog all = new HyperLogLog();
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    for (long i = 0; i < 200000; i++) {
+      all.add(i);
+      // the halves overlap, values counted by both are only counted once once merged
+      if (i < 120000) {
+        first.add(i);
+      }
+      if (i >= 80000) {
+        second.add(i);
+      }
+    }
+    Assert.assertEquals(all.estimate(), first.merge(second).estimate());
+    Assert.assertEquals(all.estimate(), first.merge(new HyperLogLog()).estimate());
+  }
+
+  @Test
+  public void testPrecision() {
+    for (int precision : new int[]{3, 19}) {
+      try {
+        new HyperLogLog(precision);
+        Assert.fail("Precision " + precision + " accepted");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    try {
+      new HyperLogLog(10).merge(new HyperLogLog(12));
+      Assert.fail("Counters of different precisions merged");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}